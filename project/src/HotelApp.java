@@ -3,27 +3,44 @@ import logic.*;
 import ui.HotelManagementGUI;
 import utils.ExcelImporter;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class HotelApp {
+    private static final LocalTime NIGHT_AUDIT_TIME = LocalTime.of(3, 0);
 
     public static void main(String[] args) {
         try {
             System.out.println("Testing database connection...");
+            boolean online = true;
             try (Connection conn = DatabaseConnection.getConnection()) {
                 System.out.println("Connected to database successfully.");
+            } catch (SQLException e) {
+                // The GUI can still show the local snapshot read-only
+                System.err.println("Database connection failed: " + e.getMessage());
+                online = false;
             }
 
 //            clearDatabase();
 //            importRoomsBatch();
 //            Map<Integer, Guest> guestMap = importGuestsFromExcel();
 //            importBookingsBatch(guestMap);
+            // Or, instead of the four lines above, write only what changed in the sheets since the last sync:
+//            syncFromExcel();
+
+            if (online) {
+                // Daily end-of-day processing for the previous business date
+                new NightAuditJob().start(NIGHT_AUDIT_TIME);
+                HoldExpirySweeper.shared().start();
+            }
+            ParallelFilter.calibrateInBackground();
 
             javax.swing.SwingUtilities.invokeLater(() -> {
                 try {
@@ -40,7 +57,7 @@ public class HotelApp {
     }
 
     private static void clearDatabase() {
-        String[] tables = {"bookings", "rooms", "guests"};
+        String[] tables = {"room_holds", "bookings", "rooms", "guests", "deleted_rows", "night_audit_log", "daily_revenue_snapshots", "booking_archive_state", "import_row_hashes", "daily_room_type_stats", "monthly_guest_stats"};
         try (Connection conn = DatabaseConnection.getConnection();
              Statement stmt = conn.createStatement()) {
 
@@ -55,12 +72,40 @@ public class HotelApp {
             // Re-enable foreign key checks
             stmt.execute("SET CONSTRAINTS ALL IMMEDIATE");
 
+            // Detached months of the old data
+            stmt.execute("DROP SCHEMA booking_history CASCADE");
+            stmt.execute("CREATE SCHEMA booking_history");
+
+            // TRUNCATE writes no tombstones, so local snapshots of the old contents must not be patched up with deltas
+            stmt.executeUpdate("UPDATE database_epoch SET epoch = gen_random_uuid()");
+
+            // The archive file holds stays of the old data under ids that are now reused; start a new one
+            BookingArchive.rotateShared();
+
             System.out.println("Database cleared and sequences reset.");
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.err.println("Failed to clear database: " + e.getMessage());
         }
     }
 
+    // Applies the differences between the spreadsheets and the database, keeping everything else in place
+    private static void syncFromExcel() {
+        try {
+            List<Room> rooms = ExcelImporter.importRooms("data/rooms.xlsx");
+            List<Guest> guests = ExcelImporter.importGuests("data/guests.xlsx");
+            List<Booking> bookings = ExcelImporter.importBookings("data/bookings.xlsx");
+            for (ExcelSyncDAO.SheetResult result : new ExcelSyncDAO().sync(rooms, guests, bookings)) {
+                System.out.println(result);
+                for (String skipped : result.getSkipped()) {
+                    System.out.println("  Skipped: " + skipped);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error syncing from Excel: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     private static void importRoomsBatch() {
         try {
             List<Room> rooms = ExcelImporter.importRooms("data/rooms.xlsx");
@@ -97,12 +142,16 @@ public class HotelApp {
             List<Booking> bookings = ExcelImporter.importBookings("data/bookings.xlsx");
 
             List<Booking> bookingsToInsert = new ArrayList<>();
-            RoomDAO roomDAO = new RoomDAO();
+            // All rooms in one query instead of one lookup per booking
+            Map<Integer, Room> roomsByNumber = new HashMap<>();
+            for (Room room : new RoomDAO().getAllRooms()) {
+                roomsByNumber.put(room.getRoomNumber(), room);
+            }
 
             for (Booking b : bookings) {
                 int originalGuestId = b.getGuest().getId();
                 Guest actualGuest = guestMap.get(originalGuestId);
-                Room actualRoom = roomDAO.getRoomByNumber(b.getRoom().getRoomNumber());
+                Room actualRoom = roomsByNumber.get(b.getRoom().getRoomNumber());
 
                 Booking bookingToInsert = new Booking(
                         0,
@@ -123,8 +172,14 @@ public class HotelApp {
 
             if (!bookingsToInsert.isEmpty()) {
                 BookingDAO bookingDAO = new BookingDAO();
-                bookingDAO.addBookingsBatch(bookingsToInsert);
-                System.out.println("Imported " + bookingsToInsert.size() + " bookings.");
+                // addBookingsBatch does not check availability, so overlapping rows are filtered out first
+                BookingConflictValidator.ConflictReport report = bookingDAO.validateImport(bookingsToInsert);
+                System.out.println(report);
+                for (BookingConflictValidator.Conflict conflict : report.getConflicts()) {
+                    System.out.println("  Skipped: " + conflict);
+                }
+                bookingDAO.addBookingsBatch(report.getAccepted());
+                System.out.println("Imported " + report.getAccepted().size() + " bookings.");
             } else {
                 System.out.println("No bookings to insert.");
             }
@@ -0,0 +1,182 @@
+package db;
+
+import logic.Booking;
+import logic.BookingColumns;
+import logic.BookingConflictValidator;
+import logic.BookingStatus;
+import logic.Guest;
+import logic.Room;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking view of BookingDAO. Every method runs the matching BookingDAO call
+ * through an AsyncExecutor and returns a CompletableFuture for its result.
+ */
+public class AsyncBookingDAO {
+    private final BookingDAO bookingDAO;
+    private final AsyncExecutor executor;
+    private final Duration timeout;
+
+    public AsyncBookingDAO(BookingDAO bookingDAO) {
+        this(bookingDAO, AsyncExecutor.shared(), null);
+    }
+
+    public AsyncBookingDAO(BookingDAO bookingDAO, AsyncExecutor executor, Duration timeout) {
+        this.bookingDAO = bookingDAO;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    // Same DAO and executor, but every call fails with a TimeoutException after the given duration
+    public AsyncBookingDAO withTimeout(Duration timeout) {
+        return new AsyncBookingDAO(bookingDAO, executor, timeout);
+    }
+
+    public CompletableFuture<Void> insertBooking(Booking booking) {
+        return executor.submit(() -> { bookingDAO.insertBooking(booking); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> insertBooking(Booking booking, UUID holdToken) {
+        return executor.submit(() -> { bookingDAO.insertBooking(booking, holdToken); return null; }, timeout);
+    }
+
+    public CompletableFuture<List<Booking>> reserveRooms(Guest guest, List<RoomRequest> requests) {
+        return executor.submit(() -> bookingDAO.reserveRooms(guest, requests), timeout);
+    }
+
+    public CompletableFuture<Void> insertBookingWithoutCheck(Booking booking) {
+        return executor.submit(() -> { bookingDAO.insertBookingWithoutCheck(booking); return null; }, timeout);
+    }
+
+    public CompletableFuture<Booking> getBookingById(int id) {
+        return executor.submit(() -> bookingDAO.getBookingById(id), timeout);
+    }
+
+    public CompletableFuture<List<Booking>> getAllBookings() {
+        return executor.submit(bookingDAO::getAllBookings, timeout);
+    }
+
+    public CompletableFuture<ChangeSet<Booking>> findChangedSince(long watermark) {
+        return executor.submit(() -> bookingDAO.findChangedSince(watermark), timeout);
+    }
+
+    public CompletableFuture<Void> updateBooking(Booking booking) {
+        return executor.submit(() -> { bookingDAO.updateBooking(booking); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> deleteBooking(int bookingId, LocalDate checkInDate) {
+        return executor.submit(() -> { bookingDAO.deleteBooking(bookingId, checkInDate); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> checkIn(int bookingId) {
+        return executor.submit(() -> { bookingDAO.checkIn(bookingId); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> checkOut(int bookingId) {
+        return executor.submit(() -> { bookingDAO.checkOut(bookingId); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> cancelBooking(int bookingId) {
+        return executor.submit(() -> { bookingDAO.cancelBooking(bookingId); return null; }, timeout);
+    }
+
+    public CompletableFuture<BulkTransitionResult> checkInAll(Collection<Booking> bookings) {
+        return executor.submit(() -> bookingDAO.checkInAll(bookings), timeout);
+    }
+
+    public CompletableFuture<BulkTransitionResult> checkOutAll(Collection<Booking> bookings) {
+        return executor.submit(() -> bookingDAO.checkOutAll(bookings), timeout);
+    }
+
+    public CompletableFuture<BulkTransitionResult> cancelAll(Collection<Booking> bookings) {
+        return executor.submit(() -> bookingDAO.cancelAll(bookings), timeout);
+    }
+
+    public CompletableFuture<Void> updatePayment(int bookingId, LocalDate checkInDate, String method) {
+        return executor.submit(() -> { bookingDAO.updatePayment(bookingId, checkInDate, method); return null; }, timeout);
+    }
+
+    public CompletableFuture<Boolean> applyRoomAssignments(Map<Booking, Room> moves) {
+        return executor.submit(() -> bookingDAO.applyRoomAssignments(moves), timeout);
+    }
+
+    public CompletableFuture<Boolean> isRoomAvailable(int roomNumber, LocalDate checkIn, LocalDate checkOut,
+                                                      Integer excludeBookingId) {
+        return executor.submit(() -> bookingDAO.isRoomAvailable(roomNumber, checkIn, checkOut, excludeBookingId), timeout);
+    }
+
+    public CompletableFuture<List<Booking>> findByDateRange(LocalDate start, LocalDate end) {
+        return executor.submit(() -> bookingDAO.findByDateRange(start, end), timeout);
+    }
+
+    public CompletableFuture<List<Booking>> findByStatus(BookingStatus status) {
+        return executor.submit(() -> bookingDAO.findByStatus(status), timeout);
+    }
+
+    public CompletableFuture<List<Booking>> findByGuest(int guestId) {
+        return executor.submit(() -> bookingDAO.findByGuest(guestId), timeout);
+    }
+
+    // Streaming searches: the sink is called on the executor's thread as rows arrive; the future completes
+    // with the number of rows delivered, and the handle cancels the query
+    public CompletableFuture<Integer> streamByDateRange(LocalDate start, LocalDate end, QueryHandle handle,
+                                                        Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamByDateRange(start, end, handle, sink), timeout);
+    }
+
+    public CompletableFuture<Integer> streamByStatus(BookingStatus status, QueryHandle handle, Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamByStatus(status, handle, sink), timeout);
+    }
+
+    public CompletableFuture<Integer> streamByGuest(int guestId, QueryHandle handle, Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamByGuest(guestId, handle, sink), timeout);
+    }
+
+    public CompletableFuture<Integer> streamArrivals(LocalDate day, QueryHandle handle, Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamArrivals(day, handle, sink), timeout);
+    }
+
+    public CompletableFuture<Integer> streamDepartures(LocalDate day, QueryHandle handle, Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamDepartures(day, handle, sink), timeout);
+    }
+
+    public CompletableFuture<Integer> streamInHouse(LocalDate day, QueryHandle handle, Consumer<Booking> sink) {
+        return executor.submit(() -> bookingDAO.streamInHouse(day, handle, sink), timeout);
+    }
+
+    public CompletableFuture<BookingColumns> loadColumns(LocalDate startDate, LocalDate endDate) {
+        return executor.submit(() -> bookingDAO.loadColumns(startDate, endDate), timeout);
+    }
+
+    // The guest's stays in the shared booking archive, which are no longer in the bookings table
+    public CompletableFuture<BookingColumns> findArchivedByGuest(int guestId) {
+        return executor.submit(() -> bookingDAO.findArchivedByGuest(BookingArchive.shared(), guestId), timeout);
+    }
+
+    public CompletableFuture<BookingConflictValidator.ConflictReport> validateImport(List<Booking> bookings) {
+        return executor.submit(() -> bookingDAO.validateImport(bookings), timeout);
+    }
+
+    // Same, for bookings that replace existing rows: the stays in replacedBookingIds are left out of the check
+    public CompletableFuture<BookingConflictValidator.ConflictReport> validateImport(List<Booking> bookings,
+                                                                                    Collection<Integer> replacedBookingIds) {
+        return executor.submit(() -> bookingDAO.validateImport(bookings, replacedBookingIds), timeout);
+    }
+
+    // Moves the booking_history months that ended on or before the date into the shared booking archive
+    public CompletableFuture<Integer> archiveFinishedStays(LocalDate before) {
+        return executor.submit(() -> bookingDAO.archiveFinishedStays(BookingArchive.shared(), before), timeout);
+    }
+
+    public CompletableFuture<List<Booking>> addBookingsBatch(List<Booking> bookings) {
+        return executor.submit(() -> bookingDAO.addBookingsBatch(bookings), timeout);
+    }
+}
@@ -0,0 +1,70 @@
+package db;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Runs blocking DAO calls on virtual threads. Every call gets its own virtual thread,
+ * and a semaphore caps how many of them talk to the database at the same time,
+ * so a burst of searches waits for a permit instead of opening a connection each.
+ */
+public class AsyncExecutor {
+    // Matches the number of connections the database is expected to serve for this app
+    private static final int DEFAULT_MAX_CONCURRENT_QUERIES = 10;
+    private static final AsyncExecutor SHARED = new AsyncExecutor(DEFAULT_MAX_CONCURRENT_QUERIES);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+
+    public AsyncExecutor(int maxConcurrentQueries) {
+        if (maxConcurrentQueries <= 0) {
+            throw new IllegalArgumentException("maxConcurrentQueries must be positive");
+        }
+        this.permits = new Semaphore(maxConcurrentQueries, true);
+    }
+
+    public static AsyncExecutor shared() { return SHARED; }
+
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        return submit(call, null);
+    }
+
+    /**
+     * Runs the call on a virtual thread once a permit is free.
+     * If the timeout passes first, or the returned future is cancelled, the future completes
+     * at once and the worker thread is interrupted. The permit is only given back when the
+     * call really returns, so a stuck query still counts against the limit.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new CancellationException("Cancelled while waiting for a database permit"));
+                return;
+            }
+            try {
+                if (!result.isDone()) {
+                    result.complete(call.call());
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                permits.release();
+            }
+        });
+
+        if (timeout != null) {
+            result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        result.whenComplete((value, error) -> {
+            if (error instanceof TimeoutException || error instanceof CancellationException) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public int getAvailablePermits() { return permits.availablePermits(); }
+}
@@ -0,0 +1,79 @@
+package db;
+
+import logic.Guest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking view of GuestDAO. Every method runs the matching GuestDAO call
+ * through an AsyncExecutor and returns a CompletableFuture for its result.
+ */
+public class AsyncGuestDAO {
+    private final GuestDAO guestDAO;
+    private final AsyncExecutor executor;
+    private final Duration timeout;
+
+    public AsyncGuestDAO(GuestDAO guestDAO) {
+        this(guestDAO, AsyncExecutor.shared(), null);
+    }
+
+    public AsyncGuestDAO(GuestDAO guestDAO, AsyncExecutor executor, Duration timeout) {
+        this.guestDAO = guestDAO;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    // Same DAO and executor, but every call fails with a TimeoutException after the given duration
+    public AsyncGuestDAO withTimeout(Duration timeout) {
+        return new AsyncGuestDAO(guestDAO, executor, timeout);
+    }
+
+    public CompletableFuture<Void> addGuest(Guest guest) {
+        return executor.submit(() -> { guestDAO.addGuest(guest); return null; }, timeout);
+    }
+
+    public CompletableFuture<List<Guest>> getAllGuests() {
+        return executor.submit(guestDAO::getAllGuests, timeout);
+    }
+
+    public CompletableFuture<ChangeSet<Guest>> findChangedSince(long watermark) {
+        return executor.submit(() -> guestDAO.findChangedSince(watermark), timeout);
+    }
+
+    public CompletableFuture<Guest> getGuest(int guestId) {
+        return executor.submit(() -> guestDAO.getGuest(guestId), timeout);
+    }
+
+    public CompletableFuture<Void> updateGuest(Guest guest) {
+        return executor.submit(() -> { guestDAO.updateGuest(guest); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> deleteGuest(int guestId) {
+        return executor.submit(() -> { guestDAO.deleteGuest(guestId); return null; }, timeout);
+    }
+
+    public CompletableFuture<List<Guest>> searchByName(String namePart) {
+        return executor.submit(() -> guestDAO.searchByName(namePart), timeout);
+    }
+
+    // The sink is called on the executor's thread as rows arrive; the future completes with the number delivered
+    public CompletableFuture<Integer> streamByName(String namePart, QueryHandle handle, Consumer<Guest> sink) {
+        return executor.submit(() -> guestDAO.streamByName(namePart, handle, sink), timeout);
+    }
+
+    public CompletableFuture<List<Guest>> findVIPGuests() {
+        return executor.submit(guestDAO::findVIPGuests, timeout);
+    }
+
+    public CompletableFuture<Guest> findByEmail(String email) {
+        return executor.submit(() -> guestDAO.findByEmail(email), timeout);
+    }
+
+    public CompletableFuture<Map<Integer, Guest>> addGuestsBatch(List<Guest> excelGuests) {
+        return executor.submit(() -> guestDAO.addGuestsBatch(excelGuests), timeout);
+    }
+}
@@ -0,0 +1,78 @@
+package db;
+
+import logic.Room;
+import logic.RoomType;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view of RoomDAO. Every method runs the matching RoomDAO call
+ * through an AsyncExecutor and returns a CompletableFuture for its result.
+ */
+public class AsyncRoomDAO {
+    private final RoomDAO roomDAO;
+    private final AsyncExecutor executor;
+    private final Duration timeout;
+
+    public AsyncRoomDAO(RoomDAO roomDAO) {
+        this(roomDAO, AsyncExecutor.shared(), null);
+    }
+
+    public AsyncRoomDAO(RoomDAO roomDAO, AsyncExecutor executor, Duration timeout) {
+        this.roomDAO = roomDAO;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    // Same DAO and executor, but every call fails with a TimeoutException after the given duration
+    public AsyncRoomDAO withTimeout(Duration timeout) {
+        return new AsyncRoomDAO(roomDAO, executor, timeout);
+    }
+
+    public CompletableFuture<Void> addRoom(Room room) {
+        return executor.submit(() -> { roomDAO.addRoom(room); return null; }, timeout);
+    }
+
+    public CompletableFuture<List<Room>> getAllRooms() {
+        return executor.submit(roomDAO::getAllRooms, timeout);
+    }
+
+    public CompletableFuture<ChangeSet<Room>> findChangedSince(long watermark) {
+        return executor.submit(() -> roomDAO.findChangedSince(watermark), timeout);
+    }
+
+    public CompletableFuture<Room> getRoomByNumber(int roomNumber) {
+        return executor.submit(() -> roomDAO.getRoomByNumber(roomNumber), timeout);
+    }
+
+    public CompletableFuture<Void> updateRoom(Room room) {
+        return executor.submit(() -> { roomDAO.updateRoom(room); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> updateAvailability(int roomNumber, boolean isAvailable) {
+        return executor.submit(() -> { roomDAO.updateAvailability(roomNumber, isAvailable); return null; }, timeout);
+    }
+
+    public CompletableFuture<Void> deleteRoom(int roomNumber) {
+        return executor.submit(() -> { roomDAO.deleteRoom(roomNumber); return null; }, timeout);
+    }
+
+    public CompletableFuture<List<Room>> findRoomsByType(RoomType type) {
+        return executor.submit(() -> roomDAO.findRoomsByType(type), timeout);
+    }
+
+    public CompletableFuture<List<Room>> findAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
+        return executor.submit(() -> roomDAO.findAvailableRooms(checkIn, checkOut), timeout);
+    }
+
+    public CompletableFuture<List<Room>> findRoomsByPriceRange(double min, double max) {
+        return executor.submit(() -> roomDAO.findRoomsByPriceRange(min, max), timeout);
+    }
+
+    public CompletableFuture<Void> addRoomsBatch(List<Room> rooms) {
+        return executor.submit(() -> { roomDAO.addRoomsBatch(rooms); return null; }, timeout);
+    }
+}
@@ -0,0 +1,633 @@
+package db;
+
+import logic.Booking;
+import logic.BookingColumns;
+import logic.BookingStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only file of finished bookings, for history that is too large to load as Booking objects.
+ * Every booking is a fixed-width record, so record i sits at a known offset, and the file is read through
+ * memory mapping: opening reads only the header and the small indexes, and the OS pages in just the parts
+ * of the file a query touches, outside the Java heap.
+ * Two indexes keep queries from reading the whole file:
+ * - check-in: lowest and highest check-in day per block of records. This is a sparse index; blocks that
+ *   cannot match a date range are skipped, and since stays are archived roughly in date order the blocks stay narrow.
+ * - guest: (guest id, record) pairs sorted by guest. Records appended since it was last rebuilt are scanned.
+ * Appending is two-phase: append() writes records after the committed end and commit() makes them visible
+ * by updating the record count in the header, so a crash in between leaves the archive as it was.
+ * Both indexes can be derived from the records and are brought up to date on open if they are behind.
+ * The header also records the database_epoch of the database the records came from: after clearDatabase
+ * the booking and guest ids start over, so an archive from before it must not be mixed with the new data.
+ */
+public class BookingArchive implements AutoCloseable {
+    private static final String DATA_FILE = "bookings.dat";
+    private static final String CHECK_IN_INDEX_FILE = "checkin.idx";
+    private static final String GUEST_INDEX_PREFIX = "guest-";
+    private static final String GUEST_INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x48424131; // "HBA1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT_OFFSET = 8;
+    // Two longs; zero in archives written before the epoch was recorded
+    private static final int EPOCH_OFFSET = 24;
+    private static final int RECORD_SIZE = 40;
+
+    // Field offsets within a record. Status is the BookingStatus ordinal, so new statuses go at the end of the enum.
+    private static final int F_ID = 0;
+    private static final int F_GUEST = 4;
+    private static final int F_ROOM = 8;
+    private static final int F_CHECK_IN = 12;
+    private static final int F_CHECK_OUT = 16;
+    private static final int F_GUESTS = 20;
+    private static final int F_PRICE = 24;
+    private static final int F_STATUS = 32;
+    private static final int F_PAID = 33;
+
+    // A MappedByteBuffer is limited to 2 GB, so the file is mapped in chunks of 2^24 records (640 MB)
+    private static final int CHUNK_SHIFT = 24;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    // Records per check-in index entry; a chunk holds a whole number of blocks
+    private static final int BLOCK_SIZE = 4096;
+    // Records the guest lookup may scan before the guest index is rebuilt to include them
+    private static final int GUEST_INDEX_MAX_TAIL = 65_536;
+    private static final int WRITE_BATCH = 4096;
+
+    // The archive the night audit fills and the guest history reads; opened on first use
+    private static final Path SHARED_DIRECTORY = Path.of("data", "archive");
+    private static BookingArchive shared;
+
+    private final Path directory;
+    private final FileChannel data;
+    // Committed records; readers only look below this
+    private volatile long size;
+    // Records written by append() but not committed yet
+    private long pending;
+    private volatile UUID epoch;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile CheckInIndex checkInIndex;
+    private volatile GuestIndex guestIndex;
+
+    // Lowest and highest check-in day of each block; a few bytes per 4096 records, so it lives on the heap
+    private static class CheckInIndex {
+        final int[] minDay;
+        final int[] maxDay;
+        final long covered;
+
+        CheckInIndex(int[] minDay, int[] maxDay, long covered) {
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+            this.covered = covered;
+        }
+    }
+
+    // Keys are (guest id << 32 | record), sorted, covering the records below covered
+    private static class GuestIndex {
+        final int generation;
+        final long covered;
+        final LongBuffer keys;
+
+        GuestIndex(int generation, long covered, LongBuffer keys) {
+            this.generation = generation;
+            this.covered = covered;
+            this.keys = keys;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(ByteBuffer chunk, int offset);
+    }
+
+    private BookingArchive(Path directory, FileChannel data) {
+        this.directory = directory;
+        this.data = data;
+    }
+
+    // Opens the archive in the directory, creating an empty one if there is none
+    public static BookingArchive open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel channel = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BookingArchive archive = new BookingArchive(directory, channel);
+        try {
+            archive.readHeader();
+            archive.loadCheckInIndex();
+            archive.loadGuestIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    public static synchronized BookingArchive shared() throws IOException {
+        if (shared == null) {
+            shared = open(SHARED_DIRECTORY);
+        }
+        return shared;
+    }
+
+    /**
+     * Closes the shared archive and moves its directory aside (data/archive-<timestamp>), so the next use
+     * starts an empty one. For when the database it belongs to is cleared; the old history stays on disk.
+     */
+    public static synchronized void rotateShared() throws IOException {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+        if (Files.exists(SHARED_DIRECTORY)) {
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path rotated = SHARED_DIRECTORY.resolveSibling(SHARED_DIRECTORY.getFileName() + "-" + stamp);
+            Files.move(SHARED_DIRECTORY, rotated, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Booking archive moved to " + rotated);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.size() == 0) {
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(0).putInt(RECORD_SIZE).rewind();
+            writeFully(header, 0);
+            data.force(true);
+        } else {
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION || header.getInt(16) != RECORD_SIZE) {
+                throw new IOException("Not a booking archive, or a different format: " + directory.resolve(DATA_FILE));
+            }
+        }
+        size = header.getLong(COUNT_OFFSET);
+        pending = size;
+        long msb = header.getLong(EPOCH_OFFSET);
+        long lsb = header.getLong(EPOCH_OFFSET + Long.BYTES);
+        epoch = msb == 0 && lsb == 0 ? null : new UUID(msb, lsb);
+    }
+
+    // The database_epoch the records belong to, or null if none was recorded yet
+    public UUID getEpoch() {
+        return epoch;
+    }
+
+    // Records the database the archive belongs to; only for an archive without one
+    public synchronized void setEpoch(UUID databaseEpoch) throws IOException {
+        if (epoch != null && !epoch.equals(databaseEpoch)) {
+            throw new IllegalStateException("Archive " + directory + " already belongs to database epoch " + epoch);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(0, databaseEpoch.getMostSignificantBits())
+                .putLong(Long.BYTES, databaseEpoch.getLeastSignificantBits());
+        writeFully(buffer, EPOCH_OFFSET);
+        data.force(false);
+        epoch = databaseEpoch;
+    }
+
+    // Committed records
+    public long size() {
+        return size;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void append(List<Booking> bookings) throws IOException {
+        append(BookingColumns.of(bookings));
+    }
+
+    // Writes the rows after the last appended record; they are not visible until commit()
+    public synchronized void append(BookingColumns rows) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BATCH * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long position = HEADER_SIZE + pending * RECORD_SIZE;
+        for (int row = 0; row < rows.size(); row++) {
+            int offset = buffer.position();
+            buffer.putInt(offset + F_ID, rows.getBookingId(row))
+                    .putInt(offset + F_GUEST, rows.getGuestId(row))
+                    .putInt(offset + F_ROOM, rows.getRoomNumber(row))
+                    .putInt(offset + F_CHECK_IN, (int) rows.getCheckInDate(row).toEpochDay())
+                    .putInt(offset + F_CHECK_OUT, (int) rows.getCheckOutDate(row).toEpochDay())
+                    .putInt(offset + F_GUESTS, rows.getNumberOfGuests(row))
+                    .putLong(offset + F_PRICE, rows.getPriceCents(row))
+                    .put(offset + F_STATUS, (byte) rows.getStatus(row).ordinal())
+                    .put(offset + F_PAID, (byte) (rows.isPaid(row) ? 1 : 0));
+            buffer.position(offset + RECORD_SIZE);
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                position += writeFully(buffer, position);
+                buffer.clear();
+            }
+        }
+        buffer.flip();
+        writeFully(buffer, position);
+        pending += rows.size();
+    }
+
+    /**
+     * Makes the appended records visible: they are flushed to disk, then the record count in the header
+     * is updated and flushed, then the indexes are brought up to date. Returns the new size.
+     */
+    public synchronized long commit() throws IOException {
+        if (pending == size) {
+            return size;
+        }
+        data.force(false);
+        writeCount(pending);
+
+        CheckInIndex checkIns = extendCheckInIndex(checkInIndex, pending);
+        saveCheckInIndex(checkIns);
+        checkInIndex = checkIns;
+        if (pending - guestIndex.covered >= GUEST_INDEX_MAX_TAIL) {
+            rebuildGuestIndex(pending);
+        }
+        size = pending;
+        return size;
+    }
+
+    // Drops the records appended since the last commit
+    public synchronized void rollback() {
+        pending = size;
+    }
+
+    /**
+     * Cuts the archive back to its first records. Used when a batch was committed here but the matching
+     * database transaction was not, see BookingDAO.archiveFinishedStays. The space is reused by the next append.
+     */
+    public synchronized void truncate(long records) throws IOException {
+        if (records < 0 || records > size) {
+            throw new IllegalArgumentException("Cannot truncate an archive of " + size + " records to " + records);
+        }
+        if (records == size) {
+            pending = size;
+            return;
+        }
+        writeCount(records);
+        size = records;
+        pending = records;
+        CheckInIndex checkIns = extendCheckInIndex(trimCheckInIndex(checkInIndex, records), records);
+        saveCheckInIndex(checkIns);
+        checkInIndex = checkIns;
+        rebuildGuestIndex(records);
+    }
+
+    private void writeCount(long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, count);
+        writeFully(buffer, COUNT_OFFSET);
+        data.force(false);
+    }
+
+    // ---- queries ----
+
+    // Total price of the stays in the status mask (see BookingColumns.statusMask) checking in on or between the dates
+    public long revenueCents(int statusMask, LocalDate from, LocalDate to) {
+        long[] sum = new long[1];
+        scanCheckInBetween(from, to, (chunk, offset) -> {
+            sum[0] += chunk.getLong(offset + F_PRICE) * ((statusMask >>> chunk.get(offset + F_STATUS)) & 1);
+        });
+        return sum[0];
+    }
+
+    // Stays per status checking in on or between the dates, indexed by BookingStatus ordinal
+    public int[] countByStatus(LocalDate from, LocalDate to) {
+        int[] counts = new int[BookingStatus.values().length];
+        scanCheckInBetween(from, to, (chunk, offset) -> counts[chunk.get(offset + F_STATUS)]++);
+        return counts;
+    }
+
+    // The stays checking in on or between the dates, as a column snapshot
+    public BookingColumns findCheckInBetween(LocalDate from, LocalDate to) {
+        BookingColumns.Builder builder = new BookingColumns.Builder(1024);
+        scanCheckInBetween(from, to, (chunk, offset) -> addRecord(builder, chunk, offset));
+        return builder.build();
+    }
+
+    // A guest's archived stays in the order they were archived
+    public BookingColumns findByGuest(int guestId) {
+        long n = size;
+        GuestIndex index = guestIndex;
+        BookingColumns.Builder builder = new BookingColumns.Builder(16);
+
+        LongBuffer keys = index.keys;
+        long firstKey = (long) guestId << 32;
+        int low = 0;
+        int high = keys.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys.get(mid) < firstKey) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < keys.limit() && (int) (keys.get(i) >>> 32) == guestId; i++) {
+            long record = keys.get(i) & 0xFFFFFFFFL;
+            if (record < n) {
+                addRecord(builder, chunkFor(record), chunkOffset(record));
+            }
+        }
+
+        // Records appended since the index was built
+        for (long record = Math.min(index.covered, n); record < n; record++) {
+            ByteBuffer chunk = chunkFor(record);
+            int offset = chunkOffset(record);
+            if (chunk.getInt(offset + F_GUEST) == guestId) {
+                addRecord(builder, chunk, offset);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void addRecord(BookingColumns.Builder builder, ByteBuffer chunk, int offset) {
+        builder.add(chunk.getInt(offset + F_ID),
+                chunk.getInt(offset + F_GUEST),
+                chunk.getInt(offset + F_ROOM),
+                LocalDate.ofEpochDay(chunk.getInt(offset + F_CHECK_IN)),
+                LocalDate.ofEpochDay(chunk.getInt(offset + F_CHECK_OUT)),
+                chunk.getInt(offset + F_GUESTS),
+                chunk.getLong(offset + F_PRICE) / 100.0,
+                BookingStatus.values()[chunk.get(offset + F_STATUS)],
+                chunk.get(offset + F_PAID) != 0);
+    }
+
+    // Visits every committed record checking in on or between the dates, skipping blocks the index rules out
+    private void scanCheckInBetween(LocalDate from, LocalDate to, RecordVisitor visitor) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        long n = size;
+        CheckInIndex index = checkInIndex;
+        long blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        for (int block = 0; block < blocks; block++) {
+            if (index.maxDay[block] < fromDay || index.minDay[block] > toDay) {
+                continue;
+            }
+            long first = (long) block * BLOCK_SIZE;
+            long end = Math.min(first + BLOCK_SIZE, n);
+            ByteBuffer chunk = chunkFor(end - 1);
+            for (int offset = chunkOffset(first), last = chunkOffset(end - 1); offset <= last; offset += RECORD_SIZE) {
+                int day = chunk.getInt(offset + F_CHECK_IN);
+                if (day >= fromDay && day <= toDay) {
+                    visitor.visit(chunk, offset);
+                }
+            }
+        }
+    }
+
+    // ---- mapping ----
+
+    private static int chunkOffset(long record) {
+        return (int) (record & CHUNK_MASK) * RECORD_SIZE;
+    }
+
+    // The mapped chunk holding the record, mapped far enough to include it
+    private ByteBuffer chunkFor(long record) {
+        int chunk = (int) (record >>> CHUNK_SHIFT);
+        ByteBuffer[] mapped = chunks;
+        if (chunk < mapped.length && mapped[chunk] != null && mapped[chunk].capacity() >= chunkOffset(record) + RECORD_SIZE) {
+            return mapped[chunk];
+        }
+        return remap(chunk, record);
+    }
+
+    // Maps the chunk up to the last appended record; the file only grows, so earlier mappings stay valid
+    private synchronized ByteBuffer remap(int chunk, long record) {
+        ByteBuffer[] mapped = chunks;
+        if (chunk < mapped.length && mapped[chunk] != null && mapped[chunk].capacity() >= chunkOffset(record) + RECORD_SIZE) {
+            return mapped[chunk];
+        }
+        long chunkStart = (long) chunk << CHUNK_SHIFT;
+        long records = Math.min(1L << CHUNK_SHIFT, Math.max(pending, record + 1) - chunkStart);
+        try {
+            ByteBuffer buffer = data.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + chunkStart * RECORD_SIZE, records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer[] next = Arrays.copyOf(mapped, Math.max(mapped.length, chunk + 1));
+            next[chunk] = buffer;
+            chunks = next;
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map booking archive", e);
+        }
+    }
+
+    // ---- check-in index ----
+
+    private void loadCheckInIndex() throws IOException {
+        CheckInIndex loaded = new CheckInIndex(new int[0], new int[0], 0);
+        Path file = directory.resolve(CHECK_IN_INDEX_FILE);
+        if (Files.exists(file)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            long covered = buffer.getLong();
+            int blocks = buffer.remaining() / (2 * Integer.BYTES);
+            int[] minDay = new int[blocks];
+            int[] maxDay = new int[blocks];
+            for (int block = 0; block < blocks; block++) {
+                minDay[block] = buffer.getInt();
+                maxDay[block] = buffer.getInt();
+            }
+            if (blocks == (covered + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+                loaded = trimCheckInIndex(new CheckInIndex(minDay, maxDay, covered), size);
+            }
+        }
+        CheckInIndex current = extendCheckInIndex(loaded, size);
+        if (current != loaded) {
+            saveCheckInIndex(current);
+        }
+        checkInIndex = current;
+    }
+
+    // Keeps only the blocks that are complete within the first records
+    private static CheckInIndex trimCheckInIndex(CheckInIndex index, long records) {
+        if (index.covered <= records) {
+            return index;
+        }
+        int blocks = (int) (records / BLOCK_SIZE);
+        return new CheckInIndex(Arrays.copyOf(index.minDay, blocks), Arrays.copyOf(index.maxDay, blocks),
+                (long) blocks * BLOCK_SIZE);
+    }
+
+    // Adds the records from index.covered up to records; the last, partial block is recomputed from its start
+    private CheckInIndex extendCheckInIndex(CheckInIndex index, long records) {
+        if (index.covered == records) {
+            return index;
+        }
+        int firstBlock = (int) (index.covered / BLOCK_SIZE);
+        int blocks = (int) ((records + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int[] minDay = Arrays.copyOf(index.minDay, blocks);
+        int[] maxDay = Arrays.copyOf(index.maxDay, blocks);
+        for (int block = firstBlock; block < blocks; block++) {
+            long first = (long) block * BLOCK_SIZE;
+            long end = Math.min(first + BLOCK_SIZE, records);
+            ByteBuffer chunk = chunkFor(end - 1);
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int offset = chunkOffset(first), last = chunkOffset(end - 1); offset <= last; offset += RECORD_SIZE) {
+                int day = chunk.getInt(offset + F_CHECK_IN);
+                min = Math.min(min, day);
+                max = Math.max(max, day);
+            }
+            minDay[block] = min;
+            maxDay[block] = max;
+        }
+        return new CheckInIndex(minDay, maxDay, records);
+    }
+
+    private void saveCheckInIndex(CheckInIndex index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + index.minDay.length * 2 * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(index.covered);
+        for (int block = 0; block < index.minDay.length; block++) {
+            buffer.putInt(index.minDay[block]).putInt(index.maxDay[block]);
+        }
+        Path temp = directory.resolve(CHECK_IN_INDEX_FILE + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, directory.resolve(CHECK_IN_INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ---- guest index ----
+
+    // Each rebuild writes a new generation instead of replacing the file, because a mapped file cannot be
+    // replaced on every platform. Older generations are deleted once they are no longer mapped.
+    private void loadGuestIndex() throws IOException {
+        int generation = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, GUEST_INDEX_PREFIX + "*" + GUEST_INDEX_SUFFIX)) {
+            for (Path file : files) {
+                generation = Math.max(generation, guestIndexGeneration(file));
+            }
+        }
+        deleteOldGuestIndexes(generation);
+
+        guestIndex = generation < 0 ? new GuestIndex(-1, 0, LongBuffer.allocate(0)) : mapGuestIndex(generation);
+        if (guestIndex.covered > size || size - guestIndex.covered >= GUEST_INDEX_MAX_TAIL) {
+            rebuildGuestIndex(size);
+        }
+    }
+
+    private static int guestIndexGeneration(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(GUEST_INDEX_PREFIX.length(), name.length() - GUEST_INDEX_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path guestIndexFile(int generation) {
+        return directory.resolve(GUEST_INDEX_PREFIX + generation + GUEST_INDEX_SUFFIX);
+    }
+
+    private GuestIndex mapGuestIndex(int generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(guestIndexFile(generation), StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            long covered = mapped.getLong(0);
+            LongBuffer keys = mapped.position(Long.BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            return new GuestIndex(generation, covered, keys);
+        }
+    }
+
+    private void deleteOldGuestIndexes(int currentGeneration) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, GUEST_INDEX_PREFIX + "*" + GUEST_INDEX_SUFFIX)) {
+            for (Path file : files) {
+                if (guestIndexGeneration(file) < currentGeneration) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Still mapped somewhere (Windows); deleted on the next open
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not clean up old guest indexes: " + e.getMessage());
+        }
+    }
+
+    // Merges the existing index (without records at or past records) with the sorted keys of the records it is missing
+    private void rebuildGuestIndex(long records) throws IOException {
+        GuestIndex old = guestIndex;
+        long tailStart = Math.min(old.covered, records);
+        long[] tail = new long[(int) (records - tailStart)];
+        for (long record = tailStart; record < records; record++) {
+            tail[(int) (record - tailStart)] = ((long) chunkFor(record).getInt(chunkOffset(record) + F_GUEST) << 32) | record;
+        }
+        Arrays.sort(tail);
+
+        // Written under a temporary name and moved into place once complete, so a crash mid-write never
+        // leaves a short file that loadGuestIndex would pick as the newest generation
+        int generation = old.generation + 1;
+        Path file = guestIndexFile(generation);
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BATCH * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(records);
+            LongBuffer existing = old.keys;
+            int i = 0;
+            int j = 0;
+            while (i < existing.limit() || j < tail.length) {
+                long key;
+                if (j == tail.length || (i < existing.limit() && existing.get(i) < tail[j])) {
+                    key = existing.get(i++);
+                    if ((key & 0xFFFFFFFFL) >= records) {
+                        continue;
+                    }
+                } else {
+                    key = tail[j++];
+                }
+                buffer.putLong(key);
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        guestIndex = mapGuestIndex(generation);
+        deleteOldGuestIndexes(generation);
+    }
+
+    // ---- file helpers ----
+
+    private int writeFully(ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += data.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Booking archive header is truncated");
+            }
+        }
+    }
+
+    // Appended but uncommitted records are dropped. Mapped chunks are released by the garbage collector.
+    @Override
+    public synchronized void close() throws IOException {
+        pending = size;
+        data.close();
+    }
+}
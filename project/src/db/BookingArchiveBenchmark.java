@@ -0,0 +1,100 @@
+package db;
+
+import logic.BookingColumns;
+import logic.BookingStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Fills a temporary archive with synthetic history and times opening it and querying it,
+ * together with the heap the open archive holds on to. The archive is deleted afterwards.
+ */
+public class BookingArchiveBenchmark {
+    private static final int BATCH_SIZE = 100_000;
+    private static final int BOOKINGS_PER_DAY = 400;
+
+    public static String run(int bookingCount) throws IOException {
+        Path directory = Files.createTempDirectory("booking-archive");
+        StringBuilder report = new StringBuilder();
+        try {
+            Random random = new Random(42);
+            LocalDate firstDay = LocalDate.now().minusDays(bookingCount / BOOKINGS_PER_DAY + 1);
+            long start = System.nanoTime();
+            try (BookingArchive archive = BookingArchive.open(directory)) {
+                BookingStatus[] statuses = {BookingStatus.CHECKED_OUT, BookingStatus.CANCELLED, BookingStatus.NO_SHOW};
+                for (int first = 0; first < bookingCount; first += BATCH_SIZE) {
+                    BookingColumns.Builder batch = new BookingColumns.Builder(BATCH_SIZE);
+                    for (int i = first; i < Math.min(first + BATCH_SIZE, bookingCount); i++) {
+                        // Roughly in check-in order, the way stays are archived after checking out
+                        LocalDate checkIn = firstDay.plusDays(i / BOOKINGS_PER_DAY + random.nextInt(14));
+                        batch.add(i + 1, 1 + random.nextInt(200_000), 1 + random.nextInt(500), checkIn,
+                                checkIn.plusDays(1 + random.nextInt(7)), 1 + random.nextInt(4),
+                                60 + random.nextInt(900), statuses[random.nextInt(100) < 90 ? 0 : 1 + random.nextInt(2)], true);
+                    }
+                    archive.append(batch.build());
+                    archive.commit();
+                }
+            }
+            report.append(String.format("Booking archive, %,d stays: written in %.0f ms, %,d MB on disk%n",
+                    bookingCount, (System.nanoTime() - start) / 1_000_000.0, directorySize(directory) / (1024 * 1024)));
+
+            System.gc();
+            long heapBefore = usedHeap();
+            start = System.nanoTime();
+            try (BookingArchive archive = BookingArchive.open(directory)) {
+                double openMs = (System.nanoTime() - start) / 1_000_000.0;
+                System.gc();
+                report.append(String.format("  open: %.2f ms, heap held: %,d KB%n", openMs, Math.max(0, usedHeap() - heapBefore) / 1024));
+
+                LocalDate to = LocalDate.now().minusYears(1);
+                LocalDate from = to.minusDays(90);
+                int revenueMask = BookingColumns.statusMask(BookingStatus.CHECKED_OUT);
+                start = System.nanoTime();
+                long revenue = archive.revenueCents(revenueMask, from, to);
+                report.append(String.format("  revenue for one quarter: %,.2f in %.2f ms%n",
+                        revenue / 100.0, (System.nanoTime() - start) / 1_000_000.0));
+
+                start = System.nanoTime();
+                int[] counts = archive.countByStatus(firstDay, LocalDate.now());
+                report.append(String.format("  status counts over all history: %,d checked out in %.2f ms%n",
+                        counts[BookingStatus.CHECKED_OUT.ordinal()], (System.nanoTime() - start) / 1_000_000.0));
+
+                start = System.nanoTime();
+                int stays = 0;
+                for (int guestId = 1; guestId <= 1_000; guestId++) {
+                    stays += archive.findByGuest(guestId).size();
+                }
+                report.append(String.format("  1,000 guest histories: %,d stays in %.2f ms%n",
+                        stays, (System.nanoTime() - start) / 1_000_000.0));
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+        return report.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Could not delete " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,56 +1,363 @@
 package db;
 import logic.*;
 
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 public class BookingDAO {
+    // Rows per round trip when streaming results; small enough that the first screenful arrives quickly
+    private static final int STREAM_FETCH_SIZE = 200;
+    private static final int ARCHIVE_BATCH_SIZE = 10_000;
 
-    // Inserts a new booking into the database.
+    private final RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+    /**
+     * Inserts a new booking into the database.
+     * The booking's request key makes this idempotent: if the booking has none, one is assigned,
+     * and calling insertBooking again with the same booking (e.g. after a timeout) returns the
+     * booking that was already created instead of inserting a second one.
+     */
     public void insertBooking(Booking booking) throws RoomNotAvailableException, SQLException {
-        // Validating availability
-        if (!isRoomAvailable(booking.getRoom().getRoomNumber(), booking.getCheckInDate(), booking.getCheckOutDate(), null)) {
-            throw new RoomNotAvailableException("Room " + booking.getRoom().getRoomNumber() +" is not available from " + booking.getCheckInDate() + " to " + booking.getCheckOutDate());
+        insertBooking(booking, null);
+    }
+
+    /**
+     * Inserts the booking and consumes the given room hold in the same statement.
+     * The hold's own dates do not block the insert; holds of other desks do.
+     * The hold is only removed if the booking was actually created.
+     */
+    public void insertBooking(Booking booking, UUID holdToken) throws RoomNotAvailableException, SQLException {
+        if (booking.getRequestKey() == null) {
+            booking.setRequestKey(UUID.randomUUID());
+        }
+        // The availability check and the insert hold the room's lock, so two desks in this
+        // process cannot both pass the check for the same room
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(booking.getRoom().getRoomNumber());
+        try {
+            insertBookingLocked(booking, holdToken);
+        } finally {
+            held.unlock();
         }
+    }
 
+    private void insertBookingLocked(Booking booking, UUID holdToken) throws RoomNotAvailableException, SQLException {
         booking.recalculateTotalPrice();
 
-        String sql = "INSERT INTO bookings (guests_guest_id, room_room_number, check_in_date, check_out_date, " +
-                "number_of_guests, total_price, status, is_paid, payment_method) " +
-                "VALUES (?, ?, ?, ?, ?, ?, CAST(? AS booking_status), ?, ?) RETURNING booking_id";
+        // The overlap check is part of the insert, so a replayed request is recognised by its key
+        // instead of being rejected because its own first attempt now occupies the room. Only the hold for
+        // exactly this room and these dates is consumed; a token held for another stay stays in place.
+        String sql = """
+        WITH inserted AS (
+            INSERT INTO bookings (guests_guest_id, room_room_number, check_in_date, check_out_date,
+                                  number_of_guests, total_price, status, is_paid, payment_method, request_key)
+            SELECT ?, ?, ?, ?, ?, ?, CAST(? AS booking_status), ?, ?, ?
+            WHERE NOT EXISTS (
+                SELECT 1 FROM bookings o
+                WHERE o.room_room_number = ? AND o.status NOT IN ('Cancelled', 'No-show')
+                  AND o.stay && daterange(?, ?)
+                  AND o.check_in_date > CAST(? AS date) - max_stay_nights())
+              AND NOT EXISTS (
+                SELECT 1 FROM room_holds h
+                WHERE h.room_number = ? AND h.expires_at > now() AND h.hold_token IS DISTINCT FROM ?
+                  AND h.check_in_date < ? AND h.check_out_date > ?)
+            ON CONFLICT (request_key, check_in_date) DO NOTHING
+            RETURNING booking_id
+        ), consumed AS (
+            DELETE FROM room_holds
+            WHERE hold_token = ? AND room_number = ? AND check_in_date = ? AND check_out_date = ?
+              AND EXISTS (SELECT 1 FROM inserted)
+        )
+        SELECT booking_id FROM inserted
+        """;
+
+        Integer bookingId;
+        try {
+            bookingId = retryPolicy.run(() -> {
+                try (Connection conn = DatabaseConnection.getConnection();
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                    pstmt.setInt(1, booking.getGuest().getId());
+                    pstmt.setInt(2, booking.getRoom().getRoomNumber());
+                    pstmt.setDate(3, Date.valueOf(booking.getCheckInDate()));
+                    pstmt.setDate(4, Date.valueOf(booking.getCheckOutDate()));
+                    pstmt.setInt(5, booking.getNumberOfGuests());
+                    pstmt.setDouble(6, booking.getTotalPrice());
+                    pstmt.setString(7, booking.getStatus().getDbValue());
+                    pstmt.setBoolean(8, booking.isPaid());
+                    pstmt.setString(9, booking.getPaymentMethod());
+                    pstmt.setObject(10, booking.getRequestKey());
+                    pstmt.setInt(11, booking.getRoom().getRoomNumber());
+                    pstmt.setDate(12, Date.valueOf(booking.getCheckInDate()));
+                    pstmt.setDate(13, Date.valueOf(booking.getCheckOutDate()));
+                    pstmt.setDate(14, Date.valueOf(booking.getCheckInDate()));
+                    pstmt.setInt(15, booking.getRoom().getRoomNumber());
+                    pstmt.setObject(16, holdToken, Types.OTHER);
+                    pstmt.setDate(17, Date.valueOf(booking.getCheckOutDate()));
+                    pstmt.setDate(18, Date.valueOf(booking.getCheckInDate()));
+                    pstmt.setObject(19, holdToken, Types.OTHER);
+                    pstmt.setInt(20, booking.getRoom().getRoomNumber());
+                    pstmt.setDate(21, Date.valueOf(booking.getCheckInDate()));
+                    pstmt.setDate(22, Date.valueOf(booking.getCheckOutDate()));
+
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            return rs.getInt("booking_id");
+                        }
+                    }
+                }
+                return findIdByRequestKey(booking.getRequestKey(), booking.getCheckInDate());
+            });
+        } catch (SQLException e) {
+            // Rethrow foreign key violations with clearer message
+            if ("23503".equals(e.getSQLState())) {
+                throw new SQLException("Referenced guest or room does not exist.", e);
+            }
+            if ("23514".equals(e.getSQLState()) && String.valueOf(e.getMessage()).contains("check_stay_length")) {
+                throw new SQLException("Stay is longer than the maximum number of nights (see max_stay_nights).", e);
+            }
+            throw e;
+        }
+
+        if (bookingId == null) {
+            throw new RoomNotAvailableException("Room " + booking.getRoom().getRoomNumber() +" is not available from " + booking.getCheckInDate() + " to " + booking.getCheckOutDate());
+        }
+        booking.setBookingId(bookingId);
+        System.out.println("Booking inserted with ID: " + bookingId);
+    }
 
+    // Id of the booking created earlier with this request key, or null if there is none.
+    // The check-in date is part of the key, so only the partition holding it is searched.
+    private Integer findIdByRequestKey(UUID requestKey, LocalDate checkIn) throws SQLException {
+        String sql = "SELECT booking_id FROM bookings WHERE request_key = ? AND check_in_date = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, booking.getGuest().getId());
-            pstmt.setInt(2, booking.getRoom().getRoomNumber());
-            pstmt.setDate(3, Date.valueOf(booking.getCheckInDate()));
-            pstmt.setDate(4, Date.valueOf(booking.getCheckOutDate()));
-            pstmt.setInt(5, booking.getNumberOfGuests());
-            pstmt.setDouble(6, booking.getTotalPrice());
-            pstmt.setString(7, booking.getStatus().getDbValue());
-            pstmt.setBoolean(8, booking.isPaid());
-            pstmt.setString(9, booking.getPaymentMethod());
+            pstmt.setObject(1, requestKey);
+            pstmt.setDate(2, Date.valueOf(checkIn));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("booking_id") : null;
+            }
+        }
+    }
+
+    /**
+     * Books several rooms for one guest, all or nothing. Conflicts for all requested rooms are found
+     * with one query; taken rooms are replaced by a free room of the same type when the request allows it.
+     * The chosen rooms are then locked, re-checked and inserted with one statement in one transaction.
+     * Returns the bookings in request order; a booking's room differs from the request's if it was substituted.
+     */
+    public List<Booking> reserveRooms(Guest guest, List<RoomRequest> requests) throws RoomNotAvailableException, SQLException {
+        if (requests.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Room> rooms = new ArrayList<>();
+        for (RoomRequest request : requests) {
+            rooms.add(request.getRoom());
+        }
 
-            // Executing the query and get the returned ID
+        Set<Integer> conflicts;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conflicts = findGroupConflicts(conn, rooms, requests);
+        }
+        if (!conflicts.isEmpty()) {
+            chooseSubstitutes(rooms, requests, conflicts);
+        }
+
+        int[] roomNumbers = rooms.stream().mapToInt(Room::getRoomNumber).toArray();
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(roomNumbers);
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Another process may have booked one of the rooms since the first check
+                conflicts = findGroupConflicts(conn, rooms, requests);
+                if (!conflicts.isEmpty()) {
+                    conn.rollback();
+                    int first = conflicts.iterator().next();
+                    throw new RoomNotAvailableException("Room " + rooms.get(first).getRoomNumber() + " was taken while reserving " +
+                            requests.get(first) + "; nothing was booked.");
+                }
+                List<Booking> bookings = insertGroup(conn, guest, rooms, requests);
+                conn.commit();
+                return bookings;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // Indexes of the requests whose room is booked, held, or claimed twice within the group
+    private Set<Integer> findGroupConflicts(Connection conn, List<Room> rooms, List<RoomRequest> requests) throws SQLException {
+        String sql = """
+        SELECT t.idx FROM unnest(?::integer[], ?::date[], ?::date[]) WITH ORDINALITY AS t(room, check_in, check_out, idx)
+        WHERE EXISTS (
+            SELECT 1 FROM bookings b
+            WHERE b.room_room_number = t.room AND b.status NOT IN ('Cancelled', 'No-show')
+              AND b.stay && daterange(t.check_in, t.check_out)
+              AND b.check_in_date > t.check_in - max_stay_nights())
+           OR EXISTS (
+            SELECT 1 FROM room_holds h
+            WHERE h.room_number = t.room AND h.expires_at > now()
+              AND h.check_in_date < t.check_out AND h.check_out_date > t.check_in)
+        """;
+
+        Integer[] roomNumbers = new Integer[requests.size()];
+        Date[] checkIns = new Date[requests.size()];
+        Date[] checkOuts = new Date[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            roomNumbers[i] = rooms.get(i).getRoomNumber();
+            checkIns[i] = Date.valueOf(requests.get(i).getCheckIn());
+            checkOuts[i] = Date.valueOf(requests.get(i).getCheckOut());
+        }
+
+        Set<Integer> conflicts = new LinkedHashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setArray(1, conn.createArrayOf("integer", roomNumbers));
+            pstmt.setArray(2, conn.createArrayOf("date", checkIns));
+            pstmt.setArray(3, conn.createArrayOf("date", checkOuts));
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    int generatedId = rs.getInt("booking_id");
-                    booking.setBookingId(generatedId);
-                    System.out.println("Booking inserted with ID: " + generatedId);
-                } else {
-                    throw new SQLException("Creating booking failed, no ID returned.");
+                while (rs.next()) {
+                    // ORDINALITY counts from 1
+                    conflicts.add(rs.getInt("idx") - 1);
                 }
             }
-        } catch (SQLException e) {
-            // Rethrow foreign key violations with clearer message
-            if ("23503".equals(e.getSQLState())) {
-                throw new SQLException("Referenced guest or room does not exist.", e);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            if (overlapsEarlierInGroup(rooms, requests, i, rooms.get(i).getRoomNumber())) {
+                conflicts.add(i);
+            }
+        }
+        return conflicts;
+    }
+
+    private boolean overlapsEarlierInGroup(List<Room> rooms, List<RoomRequest> requests, int index, int roomNumber) {
+        RoomRequest request = requests.get(index);
+        for (int j = 0; j < index; j++) {
+            RoomRequest other = requests.get(j);
+            if (rooms.get(j).getRoomNumber() == roomNumber
+                    && other.getCheckIn().isBefore(request.getCheckOut())
+                    && other.getCheckOut().isAfter(request.getCheckIn())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Replaces each conflicting room in place, or throws if a request has no acceptable substitute
+    private void chooseSubstitutes(List<Room> rooms, List<RoomRequest> requests, Set<Integer> conflicts)
+            throws RoomNotAvailableException {
+        RoomDAO roomDAO = new RoomDAO();
+        // Requests of one group usually share their dates, so each date range is looked up once
+        Map<String, List<Room>> freeByDates = new HashMap<>();
+
+        for (int i : conflicts) {
+            RoomRequest request = requests.get(i);
+            if (!request.isAllowSubstitute()) {
+                throw new RoomNotAvailableException(request + " is not available; nothing was booked.");
+            }
+            List<Room> free = freeByDates.computeIfAbsent(request.getCheckIn() + "/" + request.getCheckOut(),
+                    key -> roomDAO.findAvailableRooms(request.getCheckIn(), request.getCheckOut()));
+
+            Room substitute = null;
+            for (Room candidate : free) {
+                if (candidate.getRoomType() == request.getRoom().getRoomType()
+                        && candidate.getMaxOccupancy() >= request.getNumberOfGuests()
+                        && !isChosenInGroup(rooms, requests, i, candidate.getRoomNumber())) {
+                    substitute = candidate;
+                    break;
+                }
+            }
+            if (substitute == null) {
+                throw new RoomNotAvailableException("No " + request.getRoom().getRoomType() + " room is free instead of " +
+                        request + "; nothing was booked.");
+            }
+            rooms.set(i, substitute);
+        }
+    }
+
+    // True if another request of the group already uses this room on overlapping nights
+    private boolean isChosenInGroup(List<Room> rooms, List<RoomRequest> requests, int index, int roomNumber) {
+        RoomRequest request = requests.get(index);
+        for (int j = 0; j < requests.size(); j++) {
+            RoomRequest other = requests.get(j);
+            if (j != index && rooms.get(j).getRoomNumber() == roomNumber
+                    && other.getCheckIn().isBefore(request.getCheckOut())
+                    && other.getCheckOut().isAfter(request.getCheckIn())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Inserts the whole group with one statement; request keys map the returned ids back to the bookings
+    private List<Booking> insertGroup(Connection conn, Guest guest, List<Room> rooms, List<RoomRequest> requests) throws SQLException {
+        String sql = """
+        INSERT INTO bookings (guests_guest_id, room_room_number, check_in_date, check_out_date,
+                              number_of_guests, total_price, status, is_paid, payment_method, request_key)
+        SELECT ?, t.room, t.check_in, t.check_out, t.guests, t.price, CAST(? AS booking_status), false, '', t.request_key
+        FROM unnest(?::integer[], ?::date[], ?::date[], ?::integer[], ?::numeric[], ?::uuid[])
+             AS t(room, check_in, check_out, guests, price, request_key)
+        RETURNING booking_id, request_key
+        """;
+
+        int n = requests.size();
+        List<Booking> bookings = new ArrayList<>();
+        Map<UUID, Booking> byKey = new HashMap<>();
+        Integer[] roomNumbers = new Integer[n];
+        Date[] checkIns = new Date[n];
+        Date[] checkOuts = new Date[n];
+        Integer[] guestCounts = new Integer[n];
+        Double[] prices = new Double[n];
+        UUID[] keys = new UUID[n];
+        for (int i = 0; i < n; i++) {
+            RoomRequest request = requests.get(i);
+            Booking booking = new Booking(0, guest, rooms.get(i), request.getCheckIn(), request.getCheckOut(),
+                    request.getNumberOfGuests());
+            booking.setRequestKey(UUID.randomUUID());
+            bookings.add(booking);
+            byKey.put(booking.getRequestKey(), booking);
+
+            roomNumbers[i] = booking.getRoom().getRoomNumber();
+            checkIns[i] = Date.valueOf(booking.getCheckInDate());
+            checkOuts[i] = Date.valueOf(booking.getCheckOutDate());
+            guestCounts[i] = booking.getNumberOfGuests();
+            prices[i] = booking.getTotalPrice();
+            keys[i] = booking.getRequestKey();
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, guest.getId());
+            pstmt.setString(2, BookingStatus.CONFIRMED.getDbValue());
+            pstmt.setArray(3, conn.createArrayOf("integer", roomNumbers));
+            pstmt.setArray(4, conn.createArrayOf("date", checkIns));
+            pstmt.setArray(5, conn.createArrayOf("date", checkOuts));
+            pstmt.setArray(6, conn.createArrayOf("integer", guestCounts));
+            pstmt.setArray(7, conn.createArrayOf("float8", prices));
+            pstmt.setArray(8, conn.createArrayOf("uuid", keys));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    byKey.get((UUID) rs.getObject("request_key")).setBookingId(rs.getInt("booking_id"));
+                }
             }
-            throw e;
         }
+        System.out.println("Group reservation inserted: " + n + " bookings for guest " + guest.getId());
+        return bookings;
     }
 
     public void insertBookingWithoutCheck(Booking booking) throws SQLException {
@@ -129,57 +436,189 @@ public class BookingDAO {
         return bookings;
     }
 
-    // Updates an existing booking. If dates have changed, it rechecks availability (excluding the current booking)
-    public void updateBooking(Booking booking) throws RoomNotAvailableException, SQLException {
-        // Fetching the current booking from DB to compare dates
-        Booking current = getBookingById(booking.getBookingId());
-        if (current == null) {
-            throw new SQLException("Booking with ID " + booking.getBookingId() + " not found.");
-        }
-
-        boolean datesChanged = !current.getCheckInDate().equals(booking.getCheckInDate()) || !current.getCheckOutDate().equals(booking.getCheckOutDate());
-        boolean roomChanged = current.getRoom().getRoomNumber() != booking.getRoom().getRoomNumber();
+    /**
+     * Returns the bookings inserted, updated or deleted since the given watermark (see ChangeSet).
+     * Only the booking's own row_version is compared, so edits to a guest or room alone
+     * do not re-send every booking that references them.
+     */
+    public ChangeSet<Booking> findChangedSince(long watermark) throws SQLException {
+        ChangeSet<Booking> changes = new ChangeSet<>(watermark);
+        String sql = """
+        SELECT b.*, g.*,
+               r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
+               r.amenities, r.is_available, r.status AS room_status
+        FROM bookings b
+        JOIN guests g ON b.guests_guest_id = g.guest_id
+        JOIN rooms r ON b.room_room_number = r.room_number
+        WHERE b.row_version >= ?
+        ORDER BY b.row_version
+        """;
 
-        if (datesChanged || roomChanged) {
-            if (!isRoomAvailable(booking.getRoom().getRoomNumber(),
-                    booking.getCheckInDate(),
-                    booking.getCheckOutDate(),
-                    booking.getBookingId())) {
-                throw new RoomNotAvailableException("Room " + booking.getRoom().getRoomNumber() +
-                        " is not available for the new dates.");
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            changes.readWatermark(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, watermark);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.addUpsert(extractBookingFromResultSet(rs));
+                    }
+                }
             }
-            booking.recalculateTotalPrice();
+            changes.collectDeletions(conn, "bookings", watermark);
+            conn.commit();
         }
+        return changes;
+    }
 
-        String sql = "UPDATE bookings SET check_in_date = ?, check_out_date = ?, number_of_guests = ?, " +
-                "total_price = ?, status = CAST(? AS booking_status), is_paid = ?, payment_method = ? " +
-                "WHERE booking_id = ?";
+    /**
+     * Updates an existing booking in one statement, without reading it first.
+     * The update only applies if the row still has the version the caller read; if another desk
+     * changed it in the meantime, a StaleBookingException carrying the fresh row is thrown instead.
+     * When the room or dates change, the same statement checks the new stay against the room's other
+     * bookings and recalculates the price; otherwise the stored price is kept.
+     * On success the booking's version and total price are updated to what was written; on failure the
+     * booking is left as the caller passed it.
+     */
+    public void updateBooking(Booking booking) throws RoomNotAvailableException, StaleBookingException, SQLException {
+        // Only the target room needs its lock: moving out of a room cannot create an overlap there
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(booking.getRoom().getRoomNumber());
+        try {
+            updateBookingLocked(booking);
+        } finally {
+            held.unlock();
+        }
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    private void updateBookingLocked(Booking booking) throws RoomNotAvailableException, StaleBookingException, SQLException {
+        String sql = """
+        UPDATE bookings b SET
+            room_room_number = ?, check_in_date = ?, check_out_date = ?, number_of_guests = ?,
+            total_price = CASE WHEN b.room_room_number = ? AND b.check_in_date = ? AND b.check_out_date = ?
+                               THEN b.total_price ELSE ? END,
+            status = CAST(? AS booking_status), is_paid = ?, payment_method = ?
+        WHERE b.booking_id = ? AND b.version = ? AND b.check_in_date = ?
+          AND ((b.room_room_number = ? AND b.check_in_date = ? AND b.check_out_date = ?)
+               OR NOT EXISTS (
+                   SELECT 1 FROM bookings o
+                   WHERE o.room_room_number = ? AND o.booking_id <> b.booking_id
+                     AND o.status NOT IN ('Cancelled', 'No-show')
+                     AND o.stay && daterange(?, ?)
+                     AND o.check_in_date > CAST(? AS date) - max_stay_nights())
+               AND NOT EXISTS (
+                   SELECT 1 FROM room_holds h
+                   WHERE h.room_number = ? AND h.expires_at > now()
+                     AND h.check_in_date < ? AND h.check_out_date > ?))
+        RETURNING b.version, b.total_price
+        """;
 
-            pstmt.setDate(1, Date.valueOf(booking.getCheckInDate()));
-            pstmt.setDate(2, Date.valueOf(booking.getCheckOutDate()));
-            pstmt.setInt(3, booking.getNumberOfGuests());
-            pstmt.setDouble(4, booking.getTotalPrice());
-            pstmt.setString(5, booking.getStatus().getDbValue());
-            pstmt.setBoolean(6, booking.isPaid());
-            pstmt.setString(7, booking.getPaymentMethod());
-            pstmt.setInt(8, booking.getBookingId());
+        int roomNumber = booking.getRoom().getRoomNumber();
+        Date checkIn = Date.valueOf(booking.getCheckInDate());
+        Date checkOut = Date.valueOf(booking.getCheckOutDate());
+        // The row is found in the partition of the check-in it was stored with, not the edited one
+        Date storedCheckIn = Date.valueOf(booking.getStoredCheckInDate());
+        double price = booking.calculateTotalPrice();
+        int[] attempts = {0};
+
+        boolean written = retryPolicy.run(() -> {
+            attempts[0]++;
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                pstmt.setInt(1, roomNumber);
+                pstmt.setDate(2, checkIn);
+                pstmt.setDate(3, checkOut);
+                pstmt.setInt(4, booking.getNumberOfGuests());
+                pstmt.setInt(5, roomNumber);
+                pstmt.setDate(6, checkIn);
+                pstmt.setDate(7, checkOut);
+                pstmt.setDouble(8, price);
+                pstmt.setString(9, booking.getStatus().getDbValue());
+                pstmt.setBoolean(10, booking.isPaid());
+                pstmt.setString(11, booking.getPaymentMethod());
+                pstmt.setInt(12, booking.getBookingId());
+                pstmt.setInt(13, booking.getVersion());
+                pstmt.setDate(14, storedCheckIn);
+                pstmt.setInt(15, roomNumber);
+                pstmt.setDate(16, checkIn);
+                pstmt.setDate(17, checkOut);
+                pstmt.setInt(18, roomNumber);
+                pstmt.setDate(19, checkIn);
+                pstmt.setDate(20, checkOut);
+                pstmt.setDate(21, checkIn);
+                pstmt.setInt(22, roomNumber);
+                pstmt.setDate(23, checkOut);
+                pstmt.setDate(24, checkIn);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        booking.setVersion(rs.getInt("version"));
+                        booking.setTotalPrice(rs.getDouble("total_price"));
+                        booking.setStoredCheckInDate(booking.getCheckInDate());
+                        return true;
+                    }
+                }
+                // A retry after a dropped connection finds the version already moved on if the
+                // first attempt was committed; that is our own write, not someone else's
+                return attempts[0] > 1 && appliedEarlier(conn, booking, roomNumber, checkIn, checkOut);
+            }
+        });
+        if (written) {
+            return;
+        }
 
-            pstmt.executeUpdate();
+        // Nothing was written; only now is the row read, to tell the caller why
+        Booking current = getBookingById(booking.getBookingId());
+        if (current == null) {
+            throw new SQLException("Booking with ID " + booking.getBookingId() + " not found.");
         }
+        if (current.getVersion() != booking.getVersion()) {
+            throw new StaleBookingException("Booking " + booking.getBookingId() + " was changed by someone else (version " +
+                    booking.getVersion() + " is now " + current.getVersion() + ").", current);
+        }
+        throw new RoomNotAvailableException("Room " + roomNumber + " is not available for the new dates.");
     }
 
-    // Deletes a booking by its ID
-    public void deleteBooking(int bookingId) throws SQLException {
-        String sql = "DELETE FROM bookings WHERE booking_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // Whether the row is exactly one version past the booking's and holds the values the update sent;
+    // if so the booking takes over the written version and price
+    private boolean appliedEarlier(Connection conn, Booking booking, int roomNumber, Date checkIn, Date checkOut)
+            throws SQLException {
+        String sql = """
+        SELECT version, total_price FROM bookings
+        WHERE booking_id = ? AND version = ? AND room_room_number = ? AND check_in_date = ? AND check_out_date = ?
+          AND number_of_guests = ? AND status = CAST(? AS booking_status) AND is_paid = ?
+          AND payment_method IS NOT DISTINCT FROM ?
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, booking.getBookingId());
+            pstmt.setInt(2, booking.getVersion() + 1);
+            pstmt.setInt(3, roomNumber);
+            pstmt.setDate(4, checkIn);
+            pstmt.setDate(5, checkOut);
+            pstmt.setInt(6, booking.getNumberOfGuests());
+            pstmt.setString(7, booking.getStatus().getDbValue());
+            pstmt.setBoolean(8, booking.isPaid());
+            pstmt.setString(9, booking.getPaymentMethod());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                booking.setVersion(rs.getInt("version"));
+                booking.setTotalPrice(rs.getDouble("total_price"));
+                booking.setStoredCheckInDate(booking.getCheckInDate());
+                return true;
+            }
+        }
+    }
 
+    // Deletes a booking by its ID; the check-in date picks its partition
+    public void deleteBooking(int bookingId, LocalDate checkInDate) throws SQLException {
+        String sql = "DELETE FROM bookings WHERE booking_id = ? AND check_in_date = ?";
+        executeWrite(sql, pstmt -> {
             pstmt.setInt(1, bookingId);
-            pstmt.executeUpdate();
-        }
+            pstmt.setDate(2, Date.valueOf(checkInDate));
+        });
     }
 
     // Checks a guest into the hotel.
@@ -196,14 +635,12 @@ public class BookingDAO {
         }
 
         // Updating booking status
-        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
+        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ? AND check_in_date = ?";
+        executeWrite(sql, pstmt -> {
             pstmt.setString(1, BookingStatus.CHECKED_IN.getDbValue());
             pstmt.setInt(2, bookingId);
-            pstmt.executeUpdate();
-        }
+            pstmt.setDate(3, Date.valueOf(booking.getStoredCheckInDate()));
+        });
 
         // Updating room availability
         updateRoomAvailability(booking.getRoom().getRoomNumber(), false);
@@ -219,16 +656,14 @@ public class BookingDAO {
             throw new IllegalStateException("Only checked-in bookings can be checked out.");
         }
 
-        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
+        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ? AND check_in_date = ?";
+        executeWrite(sql, pstmt -> {
             pstmt.setString(1, BookingStatus.CHECKED_OUT.getDbValue());
             pstmt.setInt(2, bookingId);
-            pstmt.executeUpdate();
-        }
+            pstmt.setDate(3, Date.valueOf(booking.getStoredCheckInDate()));
+        });
 
-        updateRoomAvailability(booking.getRoom().getRoomNumber(), true);
+        markVacated(booking.getRoom().getRoomNumber());
     }
 
     // Cancels a booking.
@@ -242,54 +677,330 @@ public class BookingDAO {
             throw new IllegalStateException("Cannot cancel a booking that is already checked in or out.");
         }
 
-        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
+        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) WHERE booking_id = ? AND check_in_date = ?";
+        executeWrite(sql, pstmt -> {
             pstmt.setString(1, BookingStatus.CANCELLED.getDbValue());
             pstmt.setInt(2, bookingId);
-            pstmt.executeUpdate();
-        }
+            pstmt.setDate(3, Date.valueOf(booking.getStoredCheckInDate()));
+        });
 
         updateRoomAvailability(booking.getRoom().getRoomNumber(), true);
     }
 
-    // Updates the payment information for a booking.
-    public void updatePayment(int bookingId, String method) throws SQLException {
-        String sql = "UPDATE bookings SET is_paid = ?, payment_method = ? WHERE booking_id = ?";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * Checks in a group of bookings in one transaction and one round trip: the bookings that are
+     * confirmed and due are switched to Checked-in and their rooms marked unavailable by a single
+     * statement. The rest are reported with the reason checkIn(int) would have given.
+     * The bookings' check-in dates limit the statements to their partitions.
+     */
+    public BulkTransitionResult checkInAll(Collection<Booking> bookings) throws SQLException {
+        String sql = """
+        WITH moved AS (
+            UPDATE bookings SET status = CAST(? AS booking_status)
+            WHERE booking_id = ANY(?) AND check_in_date = ANY(?)
+              AND status = CAST(? AS booking_status) AND check_in_date <= ?
+            RETURNING booking_id, room_room_number
+        ), rooms_updated AS (
+            UPDATE rooms SET is_available = false
+            WHERE room_number IN (SELECT room_room_number FROM moved)
+        )
+        SELECT booking_id FROM moved
+        """;
+        LocalDate today = LocalDate.now();
+        return transitionAll(bookings, sql, (pstmt, ids, checkIns) -> {
+            pstmt.setString(1, BookingStatus.CHECKED_IN.getDbValue());
+            pstmt.setArray(2, ids);
+            pstmt.setArray(3, checkIns);
+            pstmt.setString(4, BookingStatus.CONFIRMED.getDbValue());
+            pstmt.setDate(5, Date.valueOf(today));
+        }, (status, checkInDate) -> status != BookingStatus.CONFIRMED
+                ? "Only confirmed bookings can be checked in."
+                : "Cannot check in before the check-in date.");
+    }
+
+    // Bulk variant of checkOut(int), e.g. for the morning checkout rush
+    public BulkTransitionResult checkOutAll(Collection<Booking> bookings) throws SQLException {
+        String sql = """
+        WITH moved AS (
+            UPDATE bookings SET status = CAST(? AS booking_status)
+            WHERE booking_id = ANY(?) AND check_in_date = ANY(?) AND status = CAST(? AS booking_status)
+            RETURNING booking_id, room_room_number
+        ), rooms_updated AS (
+            UPDATE rooms SET is_available = true,
+                status = CASE WHEN status = CAST(? AS room_status) THEN status ELSE CAST(? AS room_status) END
+            WHERE room_number IN (SELECT room_room_number FROM moved)
+        )
+        SELECT booking_id FROM moved
+        """;
+        return transitionAll(bookings, sql, (pstmt, ids, checkIns) -> {
+            pstmt.setString(1, BookingStatus.CHECKED_OUT.getDbValue());
+            pstmt.setArray(2, ids);
+            pstmt.setArray(3, checkIns);
+            pstmt.setString(4, BookingStatus.CHECKED_IN.getDbValue());
+            pstmt.setString(5, RoomStatus.MAINTENANCE.getDbValue());
+            pstmt.setString(6, RoomStatus.DIRTY.getDbValue());
+        }, (status, checkInDate) -> "Only checked-in bookings can be checked out.");
+    }
+
+    // Bulk variant of cancelBooking(int)
+    public BulkTransitionResult cancelAll(Collection<Booking> bookings) throws SQLException {
+        String sql = """
+        WITH moved AS (
+            UPDATE bookings SET status = CAST(? AS booking_status)
+            WHERE booking_id = ANY(?) AND check_in_date = ANY(?)
+              AND status NOT IN (CAST(? AS booking_status), CAST(? AS booking_status))
+            RETURNING booking_id, room_room_number
+        ), rooms_updated AS (
+            UPDATE rooms SET is_available = true
+            WHERE room_number IN (SELECT room_room_number FROM moved)
+        )
+        SELECT booking_id FROM moved
+        """;
+        return transitionAll(bookings, sql, (pstmt, ids, checkIns) -> {
+            pstmt.setString(1, BookingStatus.CANCELLED.getDbValue());
+            pstmt.setArray(2, ids);
+            pstmt.setArray(3, checkIns);
+            pstmt.setString(4, BookingStatus.CHECKED_IN.getDbValue());
+            pstmt.setString(5, BookingStatus.CHECKED_OUT.getDbValue());
+        }, (status, checkInDate) -> "Cannot cancel a booking that is already checked in or out.");
+    }
+
+    // Binds a bulk transition statement; ids is the SQL integer[] of booking ids, checkIns the date[] of their check-ins
+    @FunctionalInterface
+    private interface TransitionBinder {
+        void bind(PreparedStatement pstmt, Array ids, Array checkIns) throws SQLException;
+    }
+
+    // Explains why a booking in the given state was not transitioned
+    @FunctionalInterface
+    private interface FailureReason {
+        String explain(BookingStatus status, LocalDate checkInDate);
+    }
+
+    private BulkTransitionResult transitionAll(Collection<Booking> bookings, String sql, TransitionBinder binder,
+                                               FailureReason reason) throws SQLException {
+        // The whole transaction is rolled back on failure and the status guards make it safe to rerun
+        return retryPolicy.run(() -> transitionAllOnce(bookings, sql, binder, reason));
+    }
+
+    private BulkTransitionResult transitionAllOnce(Collection<Booking> bookings, String sql, TransitionBinder binder,
+                                                   FailureReason reason) throws SQLException {
+        BulkTransitionResult result = new BulkTransitionResult();
+        Set<Integer> requested = new LinkedHashSet<>();
+        Set<Date> checkInDates = new HashSet<>();
+        for (Booking booking : bookings) {
+            requested.add(booking.getBookingId());
+            checkInDates.add(Date.valueOf(booking.getStoredCheckInDate()));
+        }
+        if (requested.isEmpty()) {
+            return result;
+        }
 
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Array ids = conn.createArrayOf("integer", requested.toArray());
+                Array checkIns = conn.createArrayOf("date", checkInDates.toArray());
+                Set<Integer> moved = new HashSet<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    binder.bind(pstmt, ids, checkIns);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            moved.add(rs.getInt("booking_id"));
+                        }
+                    }
+                }
+
+                // Only look at the rejected bookings when there are any
+                if (moved.size() < requested.size()) {
+                    Map<Integer, String> reasons = new HashMap<>();
+                    String lookup = "SELECT booking_id, status, check_in_date FROM bookings " +
+                            "WHERE booking_id = ANY(?) AND check_in_date = ANY(?)";
+                    try (PreparedStatement pstmt = conn.prepareStatement(lookup)) {
+                        List<Integer> rejected = new ArrayList<>(requested);
+                        rejected.removeAll(moved);
+                        pstmt.setArray(1, conn.createArrayOf("integer", rejected.toArray()));
+                        pstmt.setArray(2, checkIns);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                reasons.put(rs.getInt("booking_id"), reason.explain(
+                                        BookingStatus.fromDbValue(rs.getString("status")),
+                                        rs.getDate("check_in_date").toLocalDate()));
+                            }
+                        }
+                    }
+                    for (int id : requested) {
+                        if (!moved.contains(id)) {
+                            result.addFailure(id, reasons.getOrDefault(id, "Booking not found."));
+                        }
+                    }
+                }
+                for (int id : requested) {
+                    if (moved.contains(id)) {
+                        result.addSuccess(id);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves bookings to other rooms in one transaction, e.g. a plan from RoomAssignmentOptimizer.
+     * Each move only applies if the booking still has the version it was read with; if any booking
+     * changed, or a move would now overlap another stay or a live hold, nothing is applied and false is returned.
+     * Prices are kept as booked. On success the bookings get their new room and version.
+     */
+    public boolean applyRoomAssignments(Map<Booking, Room> moves) throws SQLException {
+        if (moves.isEmpty()) {
+            return true;
+        }
+        String update = """
+        UPDATE bookings b SET room_room_number = t.room
+        FROM unnest(?::integer[], ?::integer[], ?::integer[], ?::date[]) AS t(booking_id, room, version, check_in)
+        WHERE b.booking_id = t.booking_id AND b.version = t.version AND b.check_in_date = t.check_in
+        RETURNING b.booking_id, b.version
+        """;
+        String overlaps = """
+        SELECT 1 FROM bookings a
+        WHERE a.booking_id = ANY(?) AND a.check_in_date = ANY(?)
+          AND (EXISTS (
+                SELECT 1 FROM bookings o
+                WHERE o.room_room_number = a.room_room_number AND o.booking_id <> a.booking_id
+                  AND o.status NOT IN ('Cancelled', 'No-show')
+                  AND o.stay && a.stay
+                  AND o.check_in_date > a.check_in_date - max_stay_nights())
+            OR EXISTS (
+                SELECT 1 FROM room_holds h
+                WHERE h.room_number = a.room_room_number AND h.expires_at > now()
+                  AND h.check_in_date < a.check_out_date AND h.check_out_date > a.check_in_date))
+        LIMIT 1
+        """;
+
+        int n = moves.size();
+        Integer[] ids = new Integer[n];
+        Integer[] rooms = new Integer[n];
+        Integer[] versions = new Integer[n];
+        Date[] checkIns = new Date[n];
+        int[] lockedRooms = new int[n * 2];
+        int i = 0;
+        for (Map.Entry<Booking, Room> move : moves.entrySet()) {
+            Booking booking = move.getKey();
+            ids[i] = booking.getBookingId();
+            rooms[i] = move.getValue().getRoomNumber();
+            versions[i] = booking.getVersion();
+            checkIns[i] = Date.valueOf(booking.getStoredCheckInDate());
+            lockedRooms[2 * i] = booking.getRoom().getRoomNumber();
+            lockedRooms[2 * i + 1] = rooms[i];
+            i++;
+        }
+
+        Map<Integer, Integer> newVersions = new HashMap<>();
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(lockedRooms);
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(update)) {
+                    pstmt.setArray(1, conn.createArrayOf("integer", ids));
+                    pstmt.setArray(2, conn.createArrayOf("integer", rooms));
+                    pstmt.setArray(3, conn.createArrayOf("integer", versions));
+                    pstmt.setArray(4, conn.createArrayOf("date", checkIns));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            newVersions.put(rs.getInt("booking_id"), rs.getInt("version"));
+                        }
+                    }
+                }
+                boolean clash = false;
+                if (newVersions.size() == n) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(overlaps)) {
+                        pstmt.setArray(1, conn.createArrayOf("integer", ids));
+                        pstmt.setArray(2, conn.createArrayOf("date", checkIns));
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            clash = rs.next();
+                        }
+                    }
+                }
+                if (newVersions.size() < n || clash) {
+                    conn.rollback();
+                    return false;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            held.unlock();
+        }
+
+        for (Map.Entry<Booking, Room> move : moves.entrySet()) {
+            Booking booking = move.getKey();
+            booking.setRoom(move.getValue());
+            booking.setVersion(newVersions.get(booking.getBookingId()));
+        }
+        return true;
+    }
+
+    // Updates the payment information for a booking; the check-in date picks its partition
+    public void updatePayment(int bookingId, LocalDate checkInDate, String method) throws SQLException {
+        String sql = "UPDATE bookings SET is_paid = ?, payment_method = ? WHERE booking_id = ? AND check_in_date = ?";
+        executeWrite(sql, pstmt -> {
             pstmt.setBoolean(1, true);
             pstmt.setString(2, method);
             pstmt.setInt(3, bookingId);
-            pstmt.executeUpdate();
-        }
+            pstmt.setDate(4, Date.valueOf(checkInDate));
+        });
+    }
+
+    // Runs a single write that gives the same result when repeated, retrying transient failures
+    private int executeWrite(String sql, StatementBinder binder) throws SQLException {
+        return retryPolicy.run(() -> {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                binder.bind(pstmt);
+                return pstmt.executeUpdate();
+            }
+        });
     }
 
     // Checks if a room is available for a given date range. Excludes a specific booking ID
-    private boolean isRoomAvailable(int roomNumber, LocalDate checkIn, LocalDate checkOut,
-                                    Integer excludeBookingId) throws SQLException {
+    public boolean isRoomAvailable(int roomNumber, LocalDate checkIn, LocalDate checkOut,
+                                   Integer excludeBookingId) throws SQLException {
         String sql = "SELECT COUNT(*) FROM bookings " +
                 "WHERE room_room_number = ? " +
-                "AND status NOT IN ('Cancelled') " +
-                "AND check_in_date < ? " +
-                "AND check_out_date > ?";
+                "AND status NOT IN ('Cancelled', 'No-show') " +
+                "AND stay && daterange(?, ?) " +
+                "AND check_in_date > CAST(? AS date) - max_stay_nights()";
 
         if (excludeBookingId != null) {
             sql += " AND booking_id != ?";
         }
 
+        // Live holds from other desks count as occupied too
+        sql = "SELECT (" + sql + ") + (SELECT COUNT(*) FROM room_holds " +
+                "WHERE room_number = ? AND expires_at > now() AND check_in_date < ? AND check_out_date > ?)";
+
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, roomNumber);
-            pstmt.setDate(2, Date.valueOf(checkOut));
-            pstmt.setDate(3, Date.valueOf(checkIn));
+            pstmt.setDate(2, Date.valueOf(checkIn));
+            pstmt.setDate(3, Date.valueOf(checkOut));
+            pstmt.setDate(4, Date.valueOf(checkIn));
 
+            int next = 5;
             if (excludeBookingId != null) {
-                pstmt.setInt(4, excludeBookingId);
+                pstmt.setInt(next++, excludeBookingId);
             }
+            pstmt.setInt(next++, roomNumber);
+            pstmt.setDate(next++, Date.valueOf(checkOut));
+            pstmt.setDate(next, Date.valueOf(checkIn));
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -302,6 +1013,18 @@ public class BookingDAO {
     }
 
     //Helper to update the availability of a room
+    // A vacated room is available again and needs cleaning, unless it is under maintenance
+    private void markVacated(int roomNumber) throws SQLException {
+        String sql = "UPDATE rooms SET is_available = true, " +
+                "status = CASE WHEN status = CAST(? AS room_status) THEN status ELSE CAST(? AS room_status) END " +
+                "WHERE room_number = ?";
+        executeWrite(sql, pstmt -> {
+            pstmt.setString(1, RoomStatus.MAINTENANCE.getDbValue());
+            pstmt.setString(2, RoomStatus.DIRTY.getDbValue());
+            pstmt.setInt(3, roomNumber);
+        });
+    }
+
     private void updateRoomAvailability(int roomNumber, boolean available) throws SQLException {
         String sql = "UPDATE rooms SET is_available = ? WHERE room_number = ?";
         try (Connection conn = DatabaseConnection.getConnection();
@@ -314,11 +1037,63 @@ public class BookingDAO {
     }
 
     public List<Booking> findByDateRange(LocalDate start, LocalDate end) {
+        return findByDateRange(start, end, new QueryHandle());
+    }
+
+    // The running statement is attached to the handle, so a superseded search can be cancelled mid-query
+    public List<Booking> findByDateRange(LocalDate start, LocalDate end, QueryHandle handle) {
         List<Booking> bookings = new ArrayList<>();
-        if (start == null || end == null || !end.isAfter(start)) {
-            return bookings;
+        try {
+            streamByDateRange(start, end, handle, bookings::add);
+        } catch (SQLException e) {
+            if (!handle.isCancelled()) {
+                e.printStackTrace();
+            }
         }
+        return bookings;
+    }
+
+    public List<Booking> findByStatus(BookingStatus status) {
+        return findByStatus(status, new QueryHandle());
+    }
 
+    public List<Booking> findByStatus(BookingStatus status, QueryHandle handle) {
+        List<Booking> bookings = new ArrayList<>();
+        try {
+            streamByStatus(status, handle, bookings::add);
+        } catch (SQLException e) {
+            if (!handle.isCancelled()) {
+                e.printStackTrace();
+            }
+        }
+        return bookings;
+    }
+
+    public List<Booking> findByGuest(int guestId) {
+        return findByGuest(guestId, new QueryHandle());
+    }
+
+    public List<Booking> findByGuest(int guestId, QueryHandle handle) {
+        List<Booking> bookings = new ArrayList<>();
+        try {
+            streamByGuest(guestId, handle, bookings::add);
+        } catch (SQLException e) {
+            if (!handle.isCancelled()) {
+                e.printStackTrace();
+            }
+        }
+        return bookings;
+    }
+
+    /**
+     * Streaming variants of the searches above: each booking is handed to the sink as soon as
+     * its row arrives, instead of after the whole result has been read. Return the number of rows delivered.
+     */
+    public int streamByDateRange(LocalDate start, LocalDate end, QueryHandle handle,
+                                 Consumer<Booking> sink) throws SQLException {
+        if (start == null || end == null || !end.isAfter(start)) {
+            return 0;
+        }
         String sql = """
         SELECT b.*, g.*,
             r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
@@ -326,30 +1101,18 @@ public class BookingDAO {
         FROM bookings b
         JOIN guests g ON b.guests_guest_id = g.guest_id
         JOIN rooms r ON b.room_room_number = r.room_number
-        WHERE b.check_in_date < ? AND b.check_out_date > ?
-                ORDER BY b.check_in_date
+        WHERE b.stay && daterange(?, ?)
+          AND b.check_in_date > CAST(? AS date) - max_stay_nights()
+        ORDER BY b.check_in_date
         """;
-
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setDate(1, Date.valueOf(end));
-            pstmt.setDate(2, Date.valueOf(start));
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    bookings.add(extractBookingFromResultSet(rs));
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return bookings;
-
+        return streamBookings(sql, pstmt -> {
+            pstmt.setDate(1, Date.valueOf(start));
+            pstmt.setDate(2, Date.valueOf(end));
+            pstmt.setDate(3, Date.valueOf(start));
+        }, handle, sink);
     }
 
-    public List<Booking> findByStatus(BookingStatus status) {
-        List<Booking> bookings = new ArrayList<>();
+    public int streamByStatus(BookingStatus status, QueryHandle handle, Consumer<Booking> sink) throws SQLException {
         String sql = """
         SELECT b.*, g.*,
                r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
@@ -360,25 +1123,10 @@ public class BookingDAO {
         WHERE b.status = CAST(? AS booking_status)
         ORDER BY b.check_in_date
         """;
-
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, status.getDbValue());
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    bookings.add(extractBookingFromResultSet(rs));
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return bookings;
+        return streamBookings(sql, pstmt -> pstmt.setString(1, status.getDbValue()), handle, sink);
     }
 
-    public List<Booking> findByGuest(int guestId) {
-        List<Booking> bookings = new ArrayList<>();
+    public int streamByGuest(int guestId, QueryHandle handle, Consumer<Booking> sink) throws SQLException {
         String sql = """
         SELECT b.*, g.*,
                r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
@@ -389,21 +1137,92 @@ public class BookingDAO {
         WHERE b.guests_guest_id = ?
         ORDER BY b.check_in_date DESC
         """;
+        return streamBookings(sql, pstmt -> pstmt.setInt(1, guestId), handle, sink);
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // Guests due to arrive on the day, including those already checked in
+    public int streamArrivals(LocalDate day, QueryHandle handle, Consumer<Booking> sink) throws SQLException {
+        String sql = """
+        SELECT b.*, g.*,
+               r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
+               r.amenities, r.is_available, r.status AS room_status
+        FROM bookings b
+        JOIN guests g ON b.guests_guest_id = g.guest_id
+        JOIN rooms r ON b.room_room_number = r.room_number
+        WHERE b.check_in_date = ? AND b.status IN ('Confirmed', 'Checked-in')
+        ORDER BY r.room_number
+        """;
+        return streamBookings(sql, pstmt -> pstmt.setDate(1, Date.valueOf(day)), handle, sink);
+    }
+
+    // Guests due to leave on the day, including those already checked out
+    public int streamDepartures(LocalDate day, QueryHandle handle, Consumer<Booking> sink) throws SQLException {
+        String sql = """
+        SELECT b.*, g.*,
+               r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
+               r.amenities, r.is_available, r.status AS room_status
+        FROM bookings b
+        JOIN guests g ON b.guests_guest_id = g.guest_id
+        JOIN rooms r ON b.room_room_number = r.room_number
+        WHERE b.check_out_date = ? AND b.status IN ('Checked-in', 'Checked-out')
+          AND b.check_in_date >= CAST(? AS date) - max_stay_nights()
+        ORDER BY r.room_number
+        """;
+        return streamBookings(sql, pstmt -> {
+            pstmt.setDate(1, Date.valueOf(day));
+            pstmt.setDate(2, Date.valueOf(day));
+        }, handle, sink);
+    }
 
-            pstmt.setInt(1, guestId);
+    // Checked-in guests staying the night of the day
+    public int streamInHouse(LocalDate day, QueryHandle handle, Consumer<Booking> sink) throws SQLException {
+        String sql = """
+        SELECT b.*, g.*,
+               r.room_number, r.room_type, r.price_per_night, r.max_occupancy, r.has_balcony,
+               r.amenities, r.is_available, r.status AS room_status
+        FROM bookings b
+        JOIN guests g ON b.guests_guest_id = g.guest_id
+        JOIN rooms r ON b.room_room_number = r.room_number
+        WHERE b.stay @> CAST(? AS date) AND b.status = 'Checked-in'
+          AND b.check_in_date > CAST(? AS date) - max_stay_nights()
+        ORDER BY r.room_number
+        """;
+        return streamBookings(sql, pstmt -> {
+            pstmt.setDate(1, Date.valueOf(day));
+            pstmt.setDate(2, Date.valueOf(day));
+        }, handle, sink);
+    }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    bookings.add(extractBookingFromResultSet(rs));
+    // Binds the parameters of a prepared query
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+
+    // Runs a joined booking query through a server-side cursor and feeds the rows to the sink one by one
+    private int streamBookings(String sql, StatementBinder binder, QueryHandle handle,
+                               Consumer<Booking> sink) throws SQLException {
+        int count = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // The driver only fetches in chunks (instead of buffering the whole result) inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                binder.bind(pstmt);
+
+                handle.attach(pstmt);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next() && !handle.isCancelled()) {
+                        sink.accept(extractBookingFromResultSet(rs));
+                        count++;
+                    }
+                } finally {
+                    handle.detach();
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            conn.commit();
         }
-        return bookings;
+        return count;
     }
 
      // Extracts a Booking object from a ResultSet that contains joined data from bookings, guests, and rooms.
@@ -448,10 +1267,264 @@ public class BookingDAO {
         booking.setStatus(BookingStatus.fromDbValue(rs.getString("status")));
         booking.setIsPaid(rs.getBoolean("is_paid"));
         booking.setPaymentMethod(rs.getString("payment_method"));
+        booking.setVersion(rs.getInt("version"));
 
         return booking;
     }
 
+    /**
+     * Reads the bookings checking in on or between the two dates straight into a column snapshot.
+     * Only the bookings table is read (no guest or room join) and rows are streamed in chunks,
+     * so no Booking, Guest or Room objects are created.
+     */
+    public BookingColumns loadColumns(LocalDate startDate, LocalDate endDate) throws SQLException {
+        String sql = "SELECT booking_id, guests_guest_id, room_room_number, check_in_date, check_out_date, " +
+                "number_of_guests, total_price, status, is_paid FROM bookings " +
+                "WHERE check_in_date BETWEEN ? AND ? ORDER BY booking_id";
+
+        BookingColumns.Builder builder = new BookingColumns.Builder(1024);
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // The driver only honours the fetch size inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setDate(1, Date.valueOf(startDate));
+                pstmt.setDate(2, Date.valueOf(endDate));
+                pstmt.setFetchSize(STREAM_FETCH_SIZE * 10);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        builder.add(rs.getInt("booking_id"),
+                                rs.getInt("guests_guest_id"),
+                                rs.getInt("room_room_number"),
+                                rs.getDate("check_in_date").toLocalDate(),
+                                rs.getDate("check_out_date").toLocalDate(),
+                                rs.getInt("number_of_guests"),
+                                rs.getDouble("total_price"),
+                                BookingStatus.fromDbValue(rs.getString("status")),
+                                rs.getBoolean("is_paid"));
+                    }
+                }
+            }
+            conn.commit();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Moves the stays of the months in booking_history that ended on or before the given date into the
+     * archive, in batches, and returns how many were moved. Those tables were detached from bookings once
+     * all their stays were over (see NightAuditJob), so the archive only takes the oldest history; a table
+     * is dropped once it is empty.
+     * Each batch is committed to the archive file first and then deleted in a transaction that also stores the
+     * archive's new size in booking_archive_state. If the process dies in between, the next run finds the file
+     * ahead of the stored size and cuts the unconfirmed batch off again, so no stay is lost or archived twice.
+     * There is one archive per database; opening a different one is refused. An archive is tied to the
+     * database_epoch it was first filled under, so after clearDatabase an old archive is refused as well
+     * instead of being cut back to the reset size; BookingArchive.rotateShared() starts a new one.
+     */
+    public int archiveFinishedStays(BookingArchive archive, LocalDate before) throws SQLException, IOException {
+        // Detached partitions are named bookings_YYYY_MM after their check-in month
+        String months = """
+        SELECT c.oid::regclass::text AS tbl FROM pg_class c
+        WHERE c.relnamespace = 'booking_history'::regnamespace AND c.relkind = 'r'
+          AND c.relname ~ '^bookings_[0-9]{4}_[0-9]{2}$'
+          AND to_date(substring(c.relname FROM 10), 'YYYY_MM') + INTERVAL '1 month' <= ?
+        ORDER BY c.relname
+        """;
+        String select = "SELECT booking_id, guests_guest_id, room_room_number, check_in_date, check_out_date, " +
+                "number_of_guests, total_price, status, is_paid FROM %s ORDER BY check_out_date, booking_id LIMIT ? FOR UPDATE";
+        String delete = "DELETE FROM %s WHERE booking_id = ANY(?)";
+        String saveState = "UPDATE booking_archive_state SET records = ?";
+
+        UUID epoch = DatabaseConnection.currentEpoch();
+        int archived = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Deque<String> tables = new ArrayDeque<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(months)) {
+                pstmt.setDate(1, Date.valueOf(before));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        tables.add(rs.getString("tbl"));
+                    }
+                }
+            }
+            conn.commit();
+
+            while (true) {
+                try {
+                    long recorded = lockArchiveState(conn);
+                    if (!epoch.equals(archive.getEpoch())) {
+                        // A new archive, or one from before epochs were recorded that matches this database
+                        if (archive.getEpoch() != null || archive.size() != recorded) {
+                            throw new IllegalStateException("Archive " + archive.getDirectory() + " belongs to " +
+                                    "another database or one that was cleared since; rotate it before archiving");
+                        }
+                        archive.setEpoch(epoch);
+                    }
+                    if (archive.size() > recorded) {
+                        archive.truncate(recorded);
+                    } else if (archive.size() < recorded) {
+                        throw new IllegalStateException("Archive " + archive.getDirectory() + " has " + archive.size() +
+                                " records but the database has moved " + recorded + " there; wrong archive?");
+                    }
+
+                    if (tables.isEmpty()) {
+                        conn.commit();
+                        return archived;
+                    }
+                    String table = tables.peek();
+
+                    BookingColumns.Builder builder = new BookingColumns.Builder(ARCHIVE_BATCH_SIZE);
+                    List<Integer> ids = new ArrayList<>();
+                    try (PreparedStatement pstmt = conn.prepareStatement(String.format(select, table))) {
+                        pstmt.setInt(1, ARCHIVE_BATCH_SIZE);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                ids.add(rs.getInt("booking_id"));
+                                builder.add(rs.getInt("booking_id"),
+                                        rs.getInt("guests_guest_id"),
+                                        rs.getInt("room_room_number"),
+                                        rs.getDate("check_in_date").toLocalDate(),
+                                        rs.getDate("check_out_date").toLocalDate(),
+                                        rs.getInt("number_of_guests"),
+                                        rs.getDouble("total_price"),
+                                        BookingStatus.fromDbValue(rs.getString("status")),
+                                        rs.getBoolean("is_paid"));
+                            }
+                        }
+                    }
+                    if (ids.isEmpty()) {
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute("DROP TABLE " + table);
+                        }
+                        conn.commit();
+                        tables.poll();
+                        continue;
+                    }
+
+                    archive.append(builder.build());
+                    long records = archive.commit();
+                    // Archived stays keep counting in the rollup tables (see apply_booking_rollups)
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("SELECT set_config('hotel.archiving', 'on', true)");
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(String.format(delete, table))) {
+                        pstmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+                        pstmt.executeUpdate();
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(saveState)) {
+                        pstmt.setLong(1, records);
+                        pstmt.executeUpdate();
+                    }
+                    conn.commit();
+                    archived += ids.size();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    conn.rollback();
+                    // The next run would cut the batch off anyway; doing it now keeps the archive from showing it
+                    // meanwhile. Never for an archive of another epoch, whose records the stored size does not describe.
+                    if (epoch.equals(archive.getEpoch())) {
+                        try {
+                            archive.truncate(Math.min(archive.size(), readArchiveState(conn)));
+                        } catch (SQLException | IOException | IllegalArgumentException ignored) {
+                        }
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * A guest's stays in the archive. After clearDatabase the guest ids start over, so records archived from
+     * the cleared data would show up under new guests; an archive of another epoch is refused.
+     */
+    public BookingColumns findArchivedByGuest(BookingArchive archive, int guestId) throws SQLException {
+        if (archive.size() > 0 && !Objects.equals(archive.getEpoch(), DatabaseConnection.currentEpoch())) {
+            throw new IllegalStateException("Archive " + archive.getDirectory() + " belongs to another database");
+        }
+        return archive.findByGuest(guestId);
+    }
+
+    // Archive size stored in the database, locked until the end of the transaction so archivers run one at a time
+    private long lockArchiveState(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO booking_archive_state (archive_id, records) VALUES (1, 0) ON CONFLICT DO NOTHING");
+            try (ResultSet rs = stmt.executeQuery("SELECT records FROM booking_archive_state FOR UPDATE")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private long readArchiveState(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(records), 0) FROM booking_archive_state")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Checks bookings about to be imported for overlaps with each other and with the database.
+     * The live stays of all rooms involved are fetched with one query over the import's date range,
+     * then BookingConflictValidator sweeps them in memory; insert report.getAccepted() afterwards.
+     */
+    public BookingConflictValidator.ConflictReport validateImport(List<Booking> bookings) throws SQLException {
+        return validateImport(bookings, Set.of());
+    }
+
+    // Same, for bookings that replace existing rows: the stays in replacedBookingIds are left out of the check
+    public BookingConflictValidator.ConflictReport validateImport(List<Booking> bookings,
+                                                                  Collection<Integer> replacedBookingIds) throws SQLException {
+        Set<Integer> roomNumbers = new HashSet<>();
+        LocalDate from = null;
+        LocalDate to = null;
+        for (Booking booking : bookings) {
+            roomNumbers.add(booking.getRoom().getRoomNumber());
+            if (from == null || booking.getCheckInDate().isBefore(from)) {
+                from = booking.getCheckInDate();
+            }
+            if (to == null || booking.getCheckOutDate().isAfter(to)) {
+                to = booking.getCheckOutDate();
+            }
+        }
+        List<BookingConflictValidator.ExistingStay> existing = roomNumbers.isEmpty()
+                ? new ArrayList<>() : findStays(roomNumbers, from, to);
+        if (!replacedBookingIds.isEmpty()) {
+            existing.removeIf(stay -> replacedBookingIds.contains(stay.getBookingId()));
+        }
+        return new BookingConflictValidator().validate(bookings, existing);
+    }
+
+    // Live stays in the given rooms that overlap [from, to)
+    private List<BookingConflictValidator.ExistingStay> findStays(Collection<Integer> roomNumbers, LocalDate from,
+                                                                  LocalDate to) throws SQLException {
+        String sql = "SELECT booking_id, room_room_number, check_in_date, check_out_date FROM bookings " +
+                "WHERE room_room_number = ANY(?) AND status NOT IN ('Cancelled', 'No-show') " +
+                "AND stay && daterange(?, ?) AND check_in_date > CAST(? AS date) - max_stay_nights()";
+
+        List<BookingConflictValidator.ExistingStay> stays = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setArray(1, conn.createArrayOf("integer", roomNumbers.toArray()));
+            pstmt.setDate(2, Date.valueOf(from));
+            pstmt.setDate(3, Date.valueOf(to));
+            pstmt.setDate(4, Date.valueOf(from));
+            pstmt.setFetchSize(STREAM_FETCH_SIZE * 10);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stays.add(new BookingConflictValidator.ExistingStay(
+                            rs.getInt("booking_id"),
+                            rs.getInt("room_room_number"),
+                            rs.getDate("check_in_date").toLocalDate().toEpochDay(),
+                            rs.getDate("check_out_date").toLocalDate().toEpochDay()));
+                }
+            }
+        }
+        return stays;
+    }
+
     public List<Booking> addBookingsBatch(List<Booking> bookings) throws SQLException {
         String sql = "INSERT INTO bookings (guests_guest_id, room_room_number, check_in_date, check_out_date, " +
                 "number_of_guests, total_price, status, is_paid, payment_method) " +
@@ -0,0 +1,31 @@
+package db;
+
+import java.util.*;
+
+/**
+ * Outcome of a bulk status change: which booking ids were transitioned,
+ * and why each of the others was left untouched.
+ */
+public class BulkTransitionResult {
+    private final List<Integer> succeeded = new ArrayList<>();
+    private final Map<Integer, String> failures = new LinkedHashMap<>();
+
+    void addSuccess(int bookingId) {
+        succeeded.add(bookingId);
+    }
+
+    void addFailure(int bookingId, String reason) {
+        failures.put(bookingId, reason);
+    }
+
+    public List<Integer> getSucceeded() { return succeeded; }
+    public Map<Integer, String> getFailures() { return failures; }
+
+    public boolean isSuccess(int bookingId) { return succeeded.contains(bookingId); }
+    public boolean allSucceeded() { return failures.isEmpty(); }
+
+    @Override
+    public String toString() {
+        return "Bulk transition succeeded: " + succeeded.size() + ", failed: " + failures.size();
+    }
+}
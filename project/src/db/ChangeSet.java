@@ -0,0 +1,73 @@
+package db;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows changed since a given watermark: inserted/updated rows (upserts),
+ * keys of deleted rows (tombstones) and the new watermark to pass to the next
+ * findChangedSince call. The new watermark is not the highest version seen but the
+ * oldest transaction still running at the time of the read (change_watermark() in
+ * query.sql): a transaction that committed after the read may have stamped its rows
+ * with an older version, and the next read has to pick those up.
+ */
+public class ChangeSet<T> {
+    private final List<T> upserts = new ArrayList<>();
+    private final List<Integer> deletedKeys = new ArrayList<>();
+    private long watermark;
+
+    ChangeSet(long since) {
+        this.watermark = since;
+    }
+
+    public List<T> getUpserts() { return upserts; }
+    public List<Integer> getDeletedKeys() { return deletedKeys; }
+    public long getWatermark() { return watermark; }
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && deletedKeys.isEmpty();
+    }
+
+    void addUpsert(T row) {
+        upserts.add(row);
+    }
+
+    void addDeletion(int key) {
+        deletedKeys.add(key);
+    }
+
+    /**
+     * Starts the read: must be the first statement of the REPEATABLE READ transaction, so the watermark
+     * belongs to the snapshot the rows are then read from.
+     */
+    void readWatermark(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT change_watermark()")) {
+            rs.next();
+            // Never step back, even if the caller passed a watermark from a newer snapshot
+            watermark = Math.max(watermark, rs.getLong(1));
+        }
+    }
+
+    // Reads the tombstones recorded by the delete triggers for one table
+    void collectDeletions(Connection conn, String tableName, long since) throws SQLException {
+        String sql = "SELECT row_key, row_version FROM deleted_rows " +
+                "WHERE table_name = ? AND row_version >= ? ORDER BY row_version";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, tableName);
+            pstmt.setLong(2, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    addDeletion(rs.getInt("row_key"));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet upserts: " + upserts.size() + ", deletions: " + deletedKeys.size() + ", watermark: " + watermark;
+    }
+}
@@ -2,7 +2,10 @@ package db;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
 
 public class DatabaseConnection {
 
@@ -22,6 +25,25 @@ public class DatabaseConnection {
         return DriverManager.getConnection(URL, USER, PASSWORD);
     }
 
+    // Watermark for a full load: read it before loading and pass it to the first delta read. Changes of
+    // transactions still running now are read again by that delta even if the load already saw them.
+    public static long currentChangeVersion() throws SQLException {
+        String sql = "SELECT change_watermark()";
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Identity of the database contents; changes whenever the tables are cleared (see HotelApp.clearDatabase)
+    public static UUID currentEpoch() throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT epoch FROM database_epoch")) {
+            return rs.next() ? (UUID) rs.getObject(1) : null;
+        }
+    }
 
 //    public static void closeConnection() {
 //        if (connection != null) {
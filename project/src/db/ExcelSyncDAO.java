@@ -0,0 +1,740 @@
+package db;
+
+import logic.*;
+import utils.RowHash;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Brings the database in line with the rooms, guests and bookings spreadsheets without clearing it first.
+ * Every sheet row is hashed and compared with the hash stored in import_row_hashes for its natural key
+ * (room number, guest email, booking id in the sheet) when it was last synced, so only new, changed and
+ * removed rows are written and guest ids and work done in the app survive a re-import.
+ * The first sync matches rows that are already in the database (rooms by number, guests by email, bookings by
+ * guest, room and dates), so switching over from a full import does not duplicate anything.
+ * Each sheet is synced in its own transaction together with its hashes. Rooms and guests removed from their
+ * sheet are deleted last, and only once no booking refers to them.
+ */
+public class ExcelSyncDAO {
+    private static final String ROOMS = "rooms";
+    private static final String GUESTS = "guests";
+    private static final String BOOKINGS = "bookings";
+
+    private final BookingDAO bookingDAO = new BookingDAO();
+
+    // What syncing one sheet did; skipped rows are left as they are and retried on the next sync
+    public static class SheetResult {
+        private final String sheet;
+        private int inserted;
+        private int updated;
+        private int deleted;
+        private int unchanged;
+        private final List<String> skipped = new ArrayList<>();
+
+        SheetResult(String sheet) {
+            this.sheet = sheet;
+        }
+
+        public String getSheet() { return sheet; }
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getDeleted() { return deleted; }
+        public int getUnchanged() { return unchanged; }
+        public List<String> getSkipped() { return skipped; }
+
+        @Override
+        public String toString() {
+            return sheet + ": " + inserted + " inserted, " + updated + " updated, " + deleted + " deleted, " +
+                    unchanged + " unchanged, " + skipped.size() + " skipped";
+        }
+    }
+
+    // Hash and database key a sheet row had when it was last synced
+    private static class StoredRow {
+        final long hash;
+        final int targetKey;
+
+        StoredRow(long hash, int targetKey) {
+            this.hash = hash;
+            this.targetKey = targetKey;
+        }
+    }
+
+    /**
+     * Syncs the three sheets as read by ExcelImporter. Bookings refer to guests by their id in the guests
+     * sheet, which is translated to the database id through the guest's email.
+     */
+    public List<SheetResult> sync(List<Room> rooms, List<Guest> guests, List<Booking> bookings) throws SQLException {
+        long start = System.nanoTime();
+        SheetResult roomResult = new SheetResult(ROOMS);
+        SheetResult guestResult = new SheetResult(GUESTS);
+        SheetResult bookingResult = new SheetResult(BOOKINGS);
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<Integer> removedRooms = syncRooms(conn, rooms, roomResult);
+                conn.commit();
+                Map<Integer, Integer> guestIds = new HashMap<>();
+                List<Integer> removedGuests = syncGuests(conn, guests, guestIds, guestResult);
+                conn.commit();
+                syncBookings(conn, bookings, guestIds, bookingResult);
+                deleteUnreferenced(conn, ROOMS, "rooms", "room_number", "room_room_number", removedRooms, roomResult);
+                deleteUnreferenced(conn, GUESTS, "guests", "guest_id", "guests_guest_id", removedGuests, guestResult);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        System.out.println("Excel sync took: " + (System.nanoTime() - start) / 1000000.0 + " ms");
+        return List.of(roomResult, guestResult, bookingResult);
+    }
+
+    // Upserts new and changed rooms by room number; returns the rooms that are no longer in the sheet
+    private List<Integer> syncRooms(Connection conn, List<Room> rooms, SheetResult result) throws SQLException {
+        String upsert = """
+        INSERT INTO rooms (room_number, room_type, price_per_night, max_occupancy, has_balcony, amenities,
+                           is_available, status)
+        SELECT t.number, CAST(t.type AS room_type), t.price, t.occupancy, t.balcony, t.amenities,
+               t.available, CAST(t.status AS room_status)
+        FROM unnest(?::integer[], ?::text[], ?::numeric[], ?::integer[], ?::boolean[], ?::text[], ?::boolean[], ?::text[])
+             AS t(number, type, price, occupancy, balcony, amenities, available, status)
+        ON CONFLICT (room_number) DO UPDATE SET
+            room_type = EXCLUDED.room_type, price_per_night = EXCLUDED.price_per_night,
+            max_occupancy = EXCLUDED.max_occupancy, has_balcony = EXCLUDED.has_balcony,
+            amenities = EXCLUDED.amenities, is_available = EXCLUDED.is_available, status = EXCLUDED.status
+        RETURNING room_number, (xmax = 0) AS inserted
+        """;
+
+        Map<String, StoredRow> stored = loadHashes(conn, ROOMS);
+        Map<String, Room> incoming = new LinkedHashMap<>();
+        for (Room room : rooms) {
+            if (incoming.put(String.valueOf(room.getRoomNumber()), room) != null) {
+                result.skipped.add("Room " + room.getRoomNumber() + " appears twice, the last row is used");
+            }
+        }
+
+        List<Room> changed = new ArrayList<>();
+        Map<String, Long> hashes = new HashMap<>();
+        for (Map.Entry<String, Room> entry : incoming.entrySet()) {
+            Room room = entry.getValue();
+            long hash = RowHash.of(room.getRoomType(), room.getRoomPricePerNight(), room.getMaxOccupancy(),
+                    room.hasBalcony(), String.join(",", room.getAmenities()), room.isAvailable(), room.getStatus());
+            StoredRow row = stored.get(entry.getKey());
+            if (row != null && row.hash == hash) {
+                result.unchanged++;
+            } else {
+                changed.add(room);
+                hashes.put(entry.getKey(), hash);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            int n = changed.size();
+            Integer[] numbers = new Integer[n];
+            String[] types = new String[n];
+            Double[] prices = new Double[n];
+            Integer[] occupancies = new Integer[n];
+            Boolean[] balconies = new Boolean[n];
+            String[] amenities = new String[n];
+            Boolean[] available = new Boolean[n];
+            String[] statuses = new String[n];
+            for (int i = 0; i < n; i++) {
+                Room room = changed.get(i);
+                numbers[i] = room.getRoomNumber();
+                types[i] = room.getRoomType().name();
+                prices[i] = room.getRoomPricePerNight();
+                occupancies[i] = room.getMaxOccupancy();
+                balconies[i] = room.hasBalcony();
+                amenities[i] = String.join(",", room.getAmenities());
+                available[i] = room.isAvailable();
+                statuses[i] = room.getStatus().getDbValue();
+            }
+            Map<String, Integer> targets = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(upsert)) {
+                pstmt.setArray(1, conn.createArrayOf("integer", numbers));
+                pstmt.setArray(2, conn.createArrayOf("text", types));
+                pstmt.setArray(3, conn.createArrayOf("float8", prices));
+                pstmt.setArray(4, conn.createArrayOf("integer", occupancies));
+                pstmt.setArray(5, conn.createArrayOf("boolean", balconies));
+                pstmt.setArray(6, conn.createArrayOf("text", amenities));
+                pstmt.setArray(7, conn.createArrayOf("boolean", available));
+                pstmt.setArray(8, conn.createArrayOf("text", statuses));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int number = rs.getInt("room_number");
+                        targets.put(String.valueOf(number), number);
+                        if (rs.getBoolean("inserted")) {
+                            result.inserted++;
+                        } else {
+                            result.updated++;
+                        }
+                    }
+                }
+            }
+            saveHashes(conn, ROOMS, hashes, targets);
+        }
+        return removedTargets(stored, incoming.keySet());
+    }
+
+    /**
+     * Upserts new and changed guests by email and fills guestIds (id in the sheet to database id) for every
+     * guest in the sheet. Guests without an email are keyed by their id in the sheet instead.
+     * Returns the guests that are no longer in the sheet.
+     */
+    private List<Integer> syncGuests(Connection conn, List<Guest> guests, Map<Integer, Integer> guestIds,
+                                     SheetResult result) throws SQLException {
+        String upsert = """
+        INSERT INTO guests (first_name, last_name, email, phone, loyalty_points, nationality)
+        SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::integer[], ?::text[])
+        ON CONFLICT (email) DO UPDATE SET
+            first_name = EXCLUDED.first_name, last_name = EXCLUDED.last_name, phone = EXCLUDED.phone,
+            loyalty_points = GREATEST(guests.loyalty_points, EXCLUDED.loyalty_points), nationality = EXCLUDED.nationality
+        RETURNING guest_id, email, (xmax = 0) AS inserted
+        """;
+        // Guests without an email cannot be matched by the upsert; they are updated by id, or inserted
+        // Points earned in the app are kept: like GuestDAO's merge, the sheet can only raise them
+        String updateById = "UPDATE guests SET first_name = ?, last_name = ?, phone = ?, " +
+                "loyalty_points = GREATEST(loyalty_points, ?), " +
+                "nationality = ? WHERE guest_id = ?";
+        String insertWithoutEmail = "INSERT INTO guests (first_name, last_name, email, phone, loyalty_points, nationality) " +
+                "VALUES (?, ?, NULL, ?, ?, ?)";
+
+        Map<String, StoredRow> stored = loadHashes(conn, GUESTS);
+        Map<String, Guest> incoming = new LinkedHashMap<>();
+        Map<String, List<Integer>> sheetIds = new HashMap<>();
+        for (Guest guest : guests) {
+            String key = guestKey(guest);
+            if (incoming.put(key, guest) != null) {
+                result.skipped.add("Guest " + key + " appears twice, the last row is used");
+            }
+            sheetIds.computeIfAbsent(key, k -> new ArrayList<>()).add(guest.getId());
+        }
+
+        List<Guest> changedByEmail = new ArrayList<>();
+        List<Guest> changedWithoutEmail = new ArrayList<>();
+        Map<String, Long> hashes = new HashMap<>();
+        Map<String, Integer> targets = new HashMap<>();
+        for (Map.Entry<String, Guest> entry : incoming.entrySet()) {
+            Guest guest = entry.getValue();
+            long hash = RowHash.of(guest.getFirstName(), guest.getLastName(), guest.getEmail(), guest.getPhone(),
+                    guest.getLoyaltyPoints(), guest.getNationality());
+            StoredRow row = stored.get(entry.getKey());
+            if (row != null) {
+                targets.put(entry.getKey(), row.targetKey);
+            }
+            if (row != null && row.hash == hash) {
+                result.unchanged++;
+                continue;
+            }
+            hashes.put(entry.getKey(), hash);
+            if (hasEmail(guest)) {
+                changedByEmail.add(guest);
+            } else {
+                changedWithoutEmail.add(guest);
+            }
+        }
+
+        if (!changedByEmail.isEmpty()) {
+            int n = changedByEmail.size();
+            String[][] columns = new String[5][n];
+            Integer[] points = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                Guest guest = changedByEmail.get(i);
+                columns[0][i] = guest.getFirstName();
+                columns[1][i] = guest.getLastName();
+                columns[2][i] = guest.getEmail().trim();
+                columns[3][i] = guest.getPhone();
+                columns[4][i] = guest.getNationality();
+                points[i] = guest.getLoyaltyPoints();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(upsert)) {
+                pstmt.setArray(1, conn.createArrayOf("text", columns[0]));
+                pstmt.setArray(2, conn.createArrayOf("text", columns[1]));
+                pstmt.setArray(3, conn.createArrayOf("text", columns[2]));
+                pstmt.setArray(4, conn.createArrayOf("text", columns[3]));
+                pstmt.setArray(5, conn.createArrayOf("integer", points));
+                pstmt.setArray(6, conn.createArrayOf("text", columns[4]));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        targets.put(rs.getString("email"), rs.getInt("guest_id"));
+                        if (rs.getBoolean("inserted")) {
+                            result.inserted++;
+                        } else {
+                            result.updated++;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!changedWithoutEmail.isEmpty()) {
+            // Updates first; a guest whose row was deleted in the meantime is inserted again
+            List<Guest> toInsert = new ArrayList<>();
+            List<Guest> toUpdate = new ArrayList<>();
+            for (Guest guest : changedWithoutEmail) {
+                (targets.containsKey(guestKey(guest)) ? toUpdate : toInsert).add(guest);
+            }
+            if (!toUpdate.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(updateById)) {
+                    for (Guest guest : toUpdate) {
+                        pstmt.setString(1, guest.getFirstName());
+                        pstmt.setString(2, guest.getLastName());
+                        pstmt.setString(3, guest.getPhone());
+                        pstmt.setInt(4, guest.getLoyaltyPoints());
+                        pstmt.setString(5, guest.getNationality());
+                        pstmt.setInt(6, targets.get(guestKey(guest)));
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            toInsert.add(toUpdate.get(i));
+                        } else {
+                            result.updated++;
+                        }
+                    }
+                }
+            }
+            if (!toInsert.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(insertWithoutEmail, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Guest guest : toInsert) {
+                        pstmt.setString(1, guest.getFirstName());
+                        pstmt.setString(2, guest.getLastName());
+                        pstmt.setString(3, guest.getPhone());
+                        pstmt.setInt(4, guest.getLoyaltyPoints());
+                        pstmt.setString(5, guest.getNationality());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    // One generated key per batched row, in batch order
+                    try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                        for (int i = 0; keys.next() && i < toInsert.size(); i++) {
+                            targets.put(guestKey(toInsert.get(i)), keys.getInt(1));
+                            result.inserted++;
+                        }
+                    }
+                }
+            }
+        }
+
+        saveHashes(conn, GUESTS, hashes, targets);
+        for (Map.Entry<String, List<Integer>> entry : sheetIds.entrySet()) {
+            Integer target = targets.get(entry.getKey());
+            if (target != null) {
+                for (int sheetId : entry.getValue()) {
+                    guestIds.put(sheetId, target);
+                }
+            }
+        }
+        return removedTargets(stored, incoming.keySet());
+    }
+
+    /**
+     * Updates changed bookings, inserts new ones and deletes those no longer in the sheet. New and changed
+     * bookings are checked for double bookings first, against each other and the stays already in the database;
+     * bookings that would overlap, or whose guest or room is unknown, are skipped.
+     * Commits the bookings transaction itself, before the rooms it writes to are unlocked.
+     */
+    private void syncBookings(Connection conn, List<Booking> bookings, Map<Integer, Integer> guestIds,
+                              SheetResult result) throws SQLException {
+        String adopt = """
+        SELECT t.ord, MIN(b.booking_id) AS booking_id
+        FROM unnest(?::integer[], ?::integer[], ?::date[], ?::date[]) WITH ORDINALITY AS t(guest, room, check_in, check_out, ord)
+        JOIN bookings b ON b.guests_guest_id = t.guest AND b.room_room_number = t.room
+                       AND b.check_in_date = t.check_in AND b.check_out_date = t.check_out
+        GROUP BY t.ord
+        """;
+        String update = "UPDATE bookings SET guests_guest_id = ?, room_room_number = ?, check_in_date = ?, " +
+                "check_out_date = ?, number_of_guests = ?, total_price = ?, status = CAST(? AS booking_status), " +
+                "is_paid = ?, payment_method = ? WHERE booking_id = ? AND check_in_date = ?";
+        String insert = """
+        INSERT INTO bookings (guests_guest_id, room_room_number, check_in_date, check_out_date,
+                              number_of_guests, total_price, status, is_paid, payment_method, request_key)
+        SELECT t.guest, t.room, t.check_in, t.check_out, t.guests, t.price, CAST(t.status AS booking_status),
+               t.paid, t.method, t.request_key
+        FROM unnest(?::integer[], ?::integer[], ?::date[], ?::date[], ?::integer[], ?::numeric[], ?::text[],
+                    ?::boolean[], ?::text[], ?::uuid[])
+             AS t(guest, room, check_in, check_out, guests, price, status, paid, method, request_key)
+        RETURNING booking_id, request_key
+        """;
+
+        Map<Integer, Room> roomsByNumber = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT room_number, room_type, price_per_night FROM rooms")) {
+            while (rs.next()) {
+                Room room = new Room(rs.getInt("room_number"), RoomType.valueOf(rs.getString("room_type")),
+                        rs.getDouble("price_per_night"), 1, false, true);
+                roomsByNumber.put(room.getRoomNumber(), room);
+            }
+        }
+
+        Map<String, StoredRow> stored = loadHashes(conn, BOOKINGS);
+        Set<String> inSheet = new HashSet<>();
+        // The booking to write for each changed key, with the database id it replaces (0 for a new booking)
+        Map<String, Booking> changed = new LinkedHashMap<>();
+        Map<String, Long> hashes = new HashMap<>();
+        for (Booking sheetBooking : bookings) {
+            String key = String.valueOf(sheetBooking.getBookingId());
+            if (!inSheet.add(key)) {
+                result.skipped.add("Booking " + key + " appears twice, the first row is used");
+                continue;
+            }
+            Integer guestId = guestIds.get(sheetBooking.getGuest().getId());
+            Room room = roomsByNumber.get(sheetBooking.getRoom().getRoomNumber());
+            if (guestId == null || room == null) {
+                result.skipped.add("Booking " + key + ": " + (guestId == null
+                        ? "guest " + sheetBooking.getGuest().getId() + " is not in the guests sheet"
+                        : "room " + sheetBooking.getRoom().getRoomNumber() + " does not exist"));
+                continue;
+            }
+            // Same as a full import: the price follows from the room, the sheet's total is not used
+            Booking booking = new Booking(0, new Guest(guestId, "", "", "", "", 0, ""), room,
+                    sheetBooking.getCheckInDate(), sheetBooking.getCheckOutDate(), sheetBooking.getNumberOfGuests());
+            booking.setStatus(sheetBooking.getStatus());
+            booking.setIsPaid(sheetBooking.isPaid());
+            booking.setPaymentMethod(sheetBooking.getPaymentMethod());
+
+            long hash = RowHash.of(guestId, room.getRoomNumber(), booking.getCheckInDate(), booking.getCheckOutDate(),
+                    booking.getNumberOfGuests(), booking.getStatus(), booking.isPaid(), booking.getPaymentMethod());
+            StoredRow row = stored.get(key);
+            if (row != null && row.hash == hash) {
+                result.unchanged++;
+                continue;
+            }
+            if (row != null) {
+                booking.setBookingId(row.targetKey);
+            }
+            changed.put(key, booking);
+            hashes.put(key, hash);
+        }
+
+        // Bookings seen for the first time may already be in the database from a full import
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, Booking> entry : changed.entrySet()) {
+            if (entry.getValue().getBookingId() == 0) {
+                unknown.add(entry.getKey());
+            }
+        }
+        if (!unknown.isEmpty()) {
+            int n = unknown.size();
+            Integer[] guests = new Integer[n];
+            Integer[] rooms = new Integer[n];
+            java.sql.Date[] checkIns = new java.sql.Date[n];
+            java.sql.Date[] checkOuts = new java.sql.Date[n];
+            for (int i = 0; i < n; i++) {
+                Booking booking = changed.get(unknown.get(i));
+                guests[i] = booking.getGuest().getId();
+                rooms[i] = booking.getRoom().getRoomNumber();
+                checkIns[i] = java.sql.Date.valueOf(booking.getCheckInDate());
+                checkOuts[i] = java.sql.Date.valueOf(booking.getCheckOutDate());
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(adopt)) {
+                pstmt.setArray(1, conn.createArrayOf("integer", guests));
+                pstmt.setArray(2, conn.createArrayOf("integer", rooms));
+                pstmt.setArray(3, conn.createArrayOf("date", checkIns));
+                pstmt.setArray(4, conn.createArrayOf("date", checkOuts));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changed.get(unknown.get(rs.getInt("ord") - 1)).setBookingId(rs.getInt("booking_id"));
+                    }
+                }
+            }
+        }
+
+        // A changed booking may overlap its own current row, so those rows are left out of the check
+        Set<Integer> replaced = new HashSet<>();
+        for (Booking booking : changed.values()) {
+            if (booking.getBookingId() != 0) {
+                replaced.add(booking.getBookingId());
+            }
+        }
+        // The rooms the sheet writes to stay locked from the overlap check until the commit below,
+        // so no desk in this process can book one of them in between
+        int[] lockedRooms = changed.values().stream().mapToInt(booking -> booking.getRoom().getRoomNumber()).toArray();
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(lockedRooms);
+        try {
+            BookingConflictValidator.ConflictReport report = changed.isEmpty()
+                    ? new BookingConflictValidator.ConflictReport()
+                    : bookingDAO.validateImport(new ArrayList<>(changed.values()), replaced);
+            Set<Booking> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+            accepted.addAll(report.getAccepted());
+            for (BookingConflictValidator.Conflict conflict : report.getConflicts()) {
+                result.skipped.add("Booking " + conflict);
+            }
+
+            List<Booking> toUpdate = new ArrayList<>();
+            List<Booking> toInsert = new ArrayList<>();
+            Map<String, Integer> targets = new HashMap<>();
+            Map<Booking, String> keys = new IdentityHashMap<>();
+            for (Map.Entry<String, Booking> entry : changed.entrySet()) {
+                Booking booking = entry.getValue();
+                if (!accepted.contains(booking)) {
+                    hashes.remove(entry.getKey());
+                    continue;
+                }
+                keys.put(booking, entry.getKey());
+                (booking.getBookingId() != 0 ? toUpdate : toInsert).add(booking);
+            }
+
+            // Bookings are partitioned by check-in, so the updates and deletes name the stored check-in as well.
+            // One lookup by id for the whole sheet finds them, instead of every statement searching all partitions.
+            List<Integer> removed = removedTargets(stored, inSheet);
+            List<Integer> lookup = new ArrayList<>(removed);
+            for (Booking booking : toUpdate) {
+                lookup.add(booking.getBookingId());
+            }
+            Map<Integer, java.sql.Date> storedCheckIns = storedCheckIns(conn, lookup);
+            // Deleted in the app since the last sync: the sheet brings them back
+            for (Iterator<Booking> it = toUpdate.iterator(); it.hasNext(); ) {
+                Booking booking = it.next();
+                if (!storedCheckIns.containsKey(booking.getBookingId())) {
+                    it.remove();
+                    toInsert.add(booking);
+                }
+            }
+
+            if (!toUpdate.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(update)) {
+                    for (Booking booking : toUpdate) {
+                        pstmt.setInt(1, booking.getGuest().getId());
+                        pstmt.setInt(2, booking.getRoom().getRoomNumber());
+                        pstmt.setDate(3, java.sql.Date.valueOf(booking.getCheckInDate()));
+                        pstmt.setDate(4, java.sql.Date.valueOf(booking.getCheckOutDate()));
+                        pstmt.setInt(5, booking.getNumberOfGuests());
+                        pstmt.setDouble(6, booking.getTotalPrice());
+                        pstmt.setString(7, booking.getStatus().getDbValue());
+                        pstmt.setBoolean(8, booking.isPaid());
+                        pstmt.setString(9, booking.getPaymentMethod());
+                        pstmt.setInt(10, booking.getBookingId());
+                        pstmt.setDate(11, storedCheckIns.get(booking.getBookingId()));
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        Booking booking = toUpdate.get(i);
+                        if (counts[i] == 0) {
+                            // Deleted in the app since the last sync: the sheet brings it back
+                            toInsert.add(booking);
+                        } else {
+                            targets.put(keys.get(booking), booking.getBookingId());
+                            result.updated++;
+                        }
+                    }
+                }
+            }
+
+            if (!toInsert.isEmpty()) {
+                int n = toInsert.size();
+                Integer[] guests = new Integer[n];
+                Integer[] rooms = new Integer[n];
+                java.sql.Date[] checkIns = new java.sql.Date[n];
+                java.sql.Date[] checkOuts = new java.sql.Date[n];
+                Integer[] guestCounts = new Integer[n];
+                Double[] prices = new Double[n];
+                String[] statuses = new String[n];
+                Boolean[] paid = new Boolean[n];
+                String[] methods = new String[n];
+                UUID[] requestKeys = new UUID[n];
+                Map<UUID, Booking> byRequestKey = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    Booking booking = toInsert.get(i);
+                    booking.setRequestKey(UUID.randomUUID());
+                    byRequestKey.put(booking.getRequestKey(), booking);
+                    guests[i] = booking.getGuest().getId();
+                    rooms[i] = booking.getRoom().getRoomNumber();
+                    checkIns[i] = java.sql.Date.valueOf(booking.getCheckInDate());
+                    checkOuts[i] = java.sql.Date.valueOf(booking.getCheckOutDate());
+                    guestCounts[i] = booking.getNumberOfGuests();
+                    prices[i] = booking.getTotalPrice();
+                    statuses[i] = booking.getStatus().getDbValue();
+                    paid[i] = booking.isPaid();
+                    methods[i] = booking.getPaymentMethod();
+                    requestKeys[i] = booking.getRequestKey();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+                    pstmt.setArray(1, conn.createArrayOf("integer", guests));
+                    pstmt.setArray(2, conn.createArrayOf("integer", rooms));
+                    pstmt.setArray(3, conn.createArrayOf("date", checkIns));
+                    pstmt.setArray(4, conn.createArrayOf("date", checkOuts));
+                    pstmt.setArray(5, conn.createArrayOf("integer", guestCounts));
+                    pstmt.setArray(6, conn.createArrayOf("float8", prices));
+                    pstmt.setArray(7, conn.createArrayOf("text", statuses));
+                    pstmt.setArray(8, conn.createArrayOf("boolean", paid));
+                    pstmt.setArray(9, conn.createArrayOf("text", methods));
+                    pstmt.setArray(10, conn.createArrayOf("uuid", requestKeys));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Booking booking = byRequestKey.get((UUID) rs.getObject("request_key"));
+                            booking.setBookingId(rs.getInt("booking_id"));
+                            targets.put(keys.get(booking), booking.getBookingId());
+                            result.inserted++;
+                        }
+                    }
+                }
+            }
+            saveHashes(conn, BOOKINGS, hashes, targets);
+
+            if (!removed.isEmpty()) {
+                Set<java.sql.Date> checkIns = new HashSet<>();
+                for (Integer id : removed) {
+                    java.sql.Date checkIn = storedCheckIns.get(id);
+                    if (checkIn != null) {
+                        checkIns.add(checkIn);
+                    }
+                }
+                if (!checkIns.isEmpty()) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "DELETE FROM bookings WHERE booking_id = ANY(?) AND check_in_date = ANY(?)")) {
+                        pstmt.setArray(1, conn.createArrayOf("integer", removed.toArray()));
+                        pstmt.setArray(2, conn.createArrayOf("date", checkIns.toArray()));
+                        result.deleted += pstmt.executeUpdate();
+                    }
+                }
+                deleteHashes(conn, BOOKINGS, removed);
+            }
+            conn.commit();
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // Current check-in date of each booking that still exists
+    private static Map<Integer, java.sql.Date> storedCheckIns(Connection conn, List<Integer> bookingIds) throws SQLException {
+        Map<Integer, java.sql.Date> checkIns = new HashMap<>();
+        if (bookingIds.isEmpty()) {
+            return checkIns;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT booking_id, check_in_date FROM bookings WHERE booking_id = ANY(?)")) {
+            pstmt.setArray(1, conn.createArrayOf("integer", bookingIds.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    checkIns.put(rs.getInt("booking_id"), rs.getDate("check_in_date"));
+                }
+            }
+        }
+        return checkIns;
+    }
+
+    // Deletes rows removed from their sheet unless a booking still refers to them; those stay and are retried next time
+    private void deleteUnreferenced(Connection conn, String source, String table, String keyColumn,
+                                    String bookingColumn, List<Integer> removed, SheetResult result) throws SQLException {
+        if (removed.isEmpty()) {
+            return;
+        }
+        String sql = "DELETE FROM " + table + " t WHERE t." + keyColumn + " = ANY(?) " +
+                "AND NOT EXISTS (SELECT 1 FROM bookings b WHERE b." + bookingColumn + " = t." + keyColumn + ") " +
+                "RETURNING t." + keyColumn;
+        List<Integer> deleted = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setArray(1, conn.createArrayOf("integer", removed.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    deleted.add(rs.getInt(1));
+                }
+            }
+        }
+        // Rows already deleted in the app no longer need their hash either
+        List<Integer> gone = new ArrayList<>(deleted);
+        Set<Integer> stillThere = new HashSet<>();
+        String exists = "SELECT " + keyColumn + " FROM " + table + " WHERE " + keyColumn + " = ANY(?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(exists)) {
+            pstmt.setArray(1, conn.createArrayOf("integer", removed.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stillThere.add(rs.getInt(1));
+                }
+            }
+        }
+        for (int key : removed) {
+            if (stillThere.contains(key)) {
+                result.skipped.add("Kept " + table + " row " + key + ": bookings still refer to it");
+            } else if (!deleted.contains(key)) {
+                gone.add(key);
+            }
+        }
+        result.deleted += deleted.size();
+        deleteHashes(conn, source, gone);
+    }
+
+    private static String guestKey(Guest guest) {
+        return hasEmail(guest) ? guest.getEmail().trim() : "#" + guest.getId();
+    }
+
+    private static boolean hasEmail(Guest guest) {
+        return guest.getEmail() != null && !guest.getEmail().isBlank();
+    }
+
+    // Database keys of rows synced before whose natural key is no longer in the sheet
+    private static List<Integer> removedTargets(Map<String, StoredRow> stored, Set<String> inSheet) {
+        List<Integer> removed = new ArrayList<>();
+        for (Map.Entry<String, StoredRow> entry : stored.entrySet()) {
+            if (!inSheet.contains(entry.getKey())) {
+                removed.add(entry.getValue().targetKey);
+            }
+        }
+        return removed;
+    }
+
+    private Map<String, StoredRow> loadHashes(Connection conn, String source) throws SQLException {
+        String sql = "SELECT natural_key, row_hash, target_key FROM import_row_hashes WHERE source = ?";
+        Map<String, StoredRow> stored = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, source);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.put(rs.getString("natural_key"), new StoredRow(rs.getLong("row_hash"), rs.getInt("target_key")));
+                }
+            }
+        }
+        return stored;
+    }
+
+    // Stores the hashes of the rows that were written; keys without a target were not written and are left out
+    private void saveHashes(Connection conn, String source, Map<String, Long> hashes, Map<String, Integer> targets)
+            throws SQLException {
+        String sql = """
+        INSERT INTO import_row_hashes (source, natural_key, row_hash, target_key)
+        SELECT ?, t.natural_key, t.row_hash, t.target_key
+        FROM unnest(?::text[], ?::bigint[], ?::integer[]) AS t(natural_key, row_hash, target_key)
+        ON CONFLICT (source, natural_key) DO UPDATE SET
+            row_hash = EXCLUDED.row_hash, target_key = EXCLUDED.target_key
+        """;
+        List<String> keys = new ArrayList<>();
+        List<Long> rowHashes = new ArrayList<>();
+        List<Integer> targetKeys = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+            Integer target = targets.get(entry.getKey());
+            if (target != null) {
+                keys.add(entry.getKey());
+                rowHashes.add(entry.getValue());
+                targetKeys.add(target);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, source);
+            pstmt.setArray(2, conn.createArrayOf("text", keys.toArray()));
+            pstmt.setArray(3, conn.createArrayOf("bigint", rowHashes.toArray()));
+            pstmt.setArray(4, conn.createArrayOf("integer", targetKeys.toArray()));
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void deleteHashes(Connection conn, String source, List<Integer> targetKeys) throws SQLException {
+        if (targetKeys.isEmpty()) {
+            return;
+        }
+        String sql = "DELETE FROM import_row_hashes WHERE source = ? AND target_key = ANY(?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, source);
+            pstmt.setArray(2, conn.createArrayOf("integer", targetKeys.toArray()));
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package db;
 
 import logic.Guest;
+import logic.GuestDeduplicator;
 import logic.Room;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class GuestDAO {
+    // Rows per round trip when streaming results
+    private static final int STREAM_FETCH_SIZE = 200;
+    // Characters of CSV buffered before each write to a COPY
+    private static final int COPY_CHUNK_CHARS = 1 << 16;
+
     public void addGuest(Guest guest) {
         String sql = "INSERT INTO guests (first_name, " +
                 "last_name, email, phone, loyalty_points, nationality) " +
@@ -59,6 +70,32 @@ public class GuestDAO {
         return guests;
     }
 
+    /**
+     * Returns the guests inserted, updated or deleted since the given watermark (see ChangeSet).
+     * Both reads share one REPEATABLE READ snapshot, so a key never shows up as upsert and tombstone at once.
+     */
+    public ChangeSet<Guest> findChangedSince(long watermark) throws SQLException {
+        ChangeSet<Guest> changes = new ChangeSet<>(watermark);
+        String sql = "SELECT * FROM guests WHERE row_version >= ? ORDER BY row_version";
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            changes.readWatermark(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, watermark);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.addUpsert(extractGuestFromResultSet(rs));
+                    }
+                }
+            }
+            changes.collectDeletions(conn, "guests", watermark);
+            conn.commit();
+        }
+        return changes;
+    }
+
     public Guest getGuest(int guestId) {
         String sql = "SELECT * FROM guests WHERE guest_id = ?";
 
@@ -126,24 +163,49 @@ public class GuestDAO {
             return getAllGuests();
         }
 
-        String searchPattern = "%" + namePart.trim().toLowerCase() + "%";
-        String sql = "SELECT * FROM guests WHERE LOWER(first_name) LIKE ? OR LOWER(last_name) LIKE ? ORDER BY last_name, first_name";
-
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try {
+            streamByName(namePart, new QueryHandle(), result::add);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
 
-            pstmt.setString(1, searchPattern);
-            pstmt.setString(2, searchPattern);
+    /**
+     * Streaming variant of searchByName: each guest is handed to the sink as soon as its row arrives.
+     * An empty name streams every guest. Returns the number of rows delivered.
+     */
+    public int streamByName(String namePart, QueryHandle handle, Consumer<Guest> sink) throws SQLException {
+        boolean all = namePart == null || namePart.trim().isEmpty();
+        String sql = all
+                ? "SELECT * FROM guests ORDER BY guest_id"
+                : "SELECT * FROM guests WHERE LOWER(first_name) LIKE ? OR LOWER(last_name) LIKE ? ORDER BY last_name, first_name";
+
+        int count = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            // The driver only fetches in chunks (instead of buffering the whole result) inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                if (!all) {
+                    String searchPattern = "%" + namePart.trim().toLowerCase() + "%";
+                    pstmt.setString(1, searchPattern);
+                    pstmt.setString(2, searchPattern);
+                }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    result.add(extractGuestFromResultSet(rs));
+                handle.attach(pstmt);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next() && !handle.isCancelled()) {
+                        sink.accept(extractGuestFromResultSet(rs));
+                        count++;
+                    }
+                } finally {
+                    handle.detach();
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            conn.commit();
         }
-        return result;
+        return count;
     }
 
     // Finds all guests who are VIP (loyalty points > 1000 OR more than 5 bookings)
@@ -204,59 +266,171 @@ public class GuestDAO {
        return guest;
     }
 
+    /**
+     * Imports guests without creating duplicates. The keys of all stored guests are read once into a
+     * GuestDeduplicator, which matches the import against them and against itself in memory; matched rows are
+     * merged into the stored guests with one UPDATE, and the rest are streamed in with COPY under ids taken
+     * from the sequence up front. Returns the stored guest for every id in the import, so bookings can be
+     * resolved the same way whether a row was new or a duplicate.
+     */
     public Map<Integer, Guest> addGuestsBatch(List<Guest> excelGuests) throws SQLException {
-        String sql = "INSERT INTO guests (first_name, last_name, email, phone, loyalty_points, nationality) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        ResultSet generatedKeys = null;
+        long start = System.nanoTime();
         Map<Integer, Guest> guestMap = new HashMap<>();
-
-        try {
-            conn = DatabaseConnection.getConnection();
-            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection conn = DatabaseConnection.getConnection()) {
             conn.setAutoCommit(false);
+            try {
+                GuestDeduplicator deduplicator = new GuestDeduplicator(countGuests(conn) + excelGuests.size());
+                // Streaming needs a transaction; only the key columns are read
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT guest_id, email, first_name, last_name, phone FROM guests")) {
+                    pstmt.setFetchSize(STREAM_FETCH_SIZE * 50);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            deduplicator.addExisting(rs.getInt("guest_id"), rs.getString("email"),
+                                    rs.getString("first_name"), rs.getString("last_name"), rs.getString("phone"));
+                        }
+                    }
+                }
+
+                GuestDeduplicator.Result result = deduplicator.match(excelGuests);
+                Map<Integer, Guest> merged = mergeIntoExisting(conn, result.getUpdates().values());
+                copyNewGuests(conn, result.getInserts());
+                conn.commit();
 
-            for (Guest original : excelGuests) {
-                pstmt.setString(1, original.getFirstName());
-                pstmt.setString(2, original.getLastName());
-                pstmt.setString(3, original.getEmail());
-                pstmt.setString(4, original.getPhone());
-                pstmt.setInt(5, original.getLoyaltyPoints());
-                pstmt.setString(6, original.getNationality());
-                pstmt.addBatch();
+                for (Map.Entry<Integer, Guest> entry : result.getBySheetId().entrySet()) {
+                    Guest guest = entry.getValue();
+                    guestMap.put(entry.getKey(), merged.getOrDefault(guest.getId(), guest));
+                }
+                System.out.println(result);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
+        }
+        System.out.println("Guest import of " + excelGuests.size() + " rows took: " +
+                (System.nanoTime() - start) / 1000000.0 + " ms");
+        return guestMap;
+    }
 
-            pstmt.executeBatch(); // single batch
-
-            generatedKeys = pstmt.getGeneratedKeys();
-            int index = 0;
-            while (generatedKeys.next() && index < excelGuests.size()) {
-                int newId = generatedKeys.getInt(1);
-                Guest original = excelGuests.get(index++);
-                Guest newGuest = new Guest(
-                        newId,
-                        original.getFirstName(),
-                        original.getLastName(),
-                        original.getEmail(),
-                        original.getPhone(),
-                        original.getLoyaltyPoints(),
-                        original.getNationality()
-                );
-                guestMap.put(original.getId(), newGuest);
+    private int countGuests(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM guests")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Sheet values win where they are filled in; a blank never erases a stored value, and email is only filled in
+    private Map<Integer, Guest> mergeIntoExisting(Connection conn, Collection<Guest> updates) throws SQLException {
+        String sql = """
+        UPDATE guests g SET
+            first_name = COALESCE(NULLIF(t.first_name, ''), g.first_name),
+            last_name = COALESCE(NULLIF(t.last_name, ''), g.last_name),
+            email = COALESCE(g.email, NULLIF(t.email, '')),
+            phone = COALESCE(NULLIF(t.phone, ''), g.phone),
+            loyalty_points = GREATEST(g.loyalty_points, t.loyalty_points),
+            nationality = COALESCE(NULLIF(t.nationality, ''), g.nationality)
+        FROM unnest(?::integer[], ?::text[], ?::text[], ?::text[], ?::text[], ?::integer[], ?::text[])
+             AS t(guest_id, first_name, last_name, email, phone, loyalty_points, nationality)
+        WHERE g.guest_id = t.guest_id
+        RETURNING g.*
+        """;
+        Map<Integer, Guest> merged = new HashMap<>();
+        if (updates.isEmpty()) {
+            return merged;
+        }
+        int n = updates.size();
+        Integer[] ids = new Integer[n];
+        String[][] columns = new String[5][n];
+        Integer[] points = new Integer[n];
+        int i = 0;
+        for (Guest guest : updates) {
+            ids[i] = guest.getId();
+            columns[0][i] = guest.getFirstName();
+            columns[1][i] = guest.getLastName();
+            columns[2][i] = guest.getEmail();
+            columns[3][i] = guest.getPhone();
+            columns[4][i] = guest.getNationality();
+            points[i++] = guest.getLoyaltyPoints();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setArray(1, conn.createArrayOf("integer", ids));
+            pstmt.setArray(2, conn.createArrayOf("text", columns[0]));
+            pstmt.setArray(3, conn.createArrayOf("text", columns[1]));
+            pstmt.setArray(4, conn.createArrayOf("text", columns[2]));
+            pstmt.setArray(5, conn.createArrayOf("text", columns[3]));
+            pstmt.setArray(6, conn.createArrayOf("integer", points));
+            pstmt.setArray(7, conn.createArrayOf("text", columns[4]));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Guest guest = extractGuestFromResultSet(rs);
+                    merged.put(guest.getId(), guest);
+                }
             }
+        }
+        return merged;
+    }
 
-            conn.commit();
-            System.out.println("Batch inserted " + excelGuests.size() + " guests.");
-        } catch (SQLException e) {
-            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
-            throw e;
+    // COPY returns no generated keys, so the ids are drawn from the guests sequence first and written explicitly
+    private void copyNewGuests(Connection conn, List<Guest> guests) throws SQLException {
+        if (guests.isEmpty()) {
+            return;
+        }
+        String ids = "SELECT nextval(pg_get_serial_sequence('guests', 'guest_id')) FROM generate_series(1, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(ids)) {
+            pstmt.setInt(1, guests.size());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                for (Guest guest : guests) {
+                    rs.next();
+                    guest.setId(rs.getInt(1));
+                }
+            }
+        }
+
+        String copy = "COPY guests (guest_id, first_name, last_name, email, phone, loyalty_points, nationality) " +
+                "FROM STDIN WITH (FORMAT csv)";
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copy);
+        try {
+            StringBuilder chunk = new StringBuilder(COPY_CHUNK_CHARS + 1024);
+            for (Guest guest : guests) {
+                chunk.append(guest.getId()).append(',');
+                appendCsv(chunk, guest.getFirstName()).append(',');
+                appendCsv(chunk, guest.getLastName()).append(',');
+                appendCsv(chunk, guest.getEmail()).append(',');
+                appendCsv(chunk, guest.getPhone()).append(',');
+                chunk.append(guest.getLoyaltyPoints()).append(',');
+                appendCsv(chunk, guest.getNationality()).append('\n');
+                if (chunk.length() >= COPY_CHUNK_CHARS) {
+                    writeToCopy(copyIn, chunk);
+                }
+            }
+            writeToCopy(copyIn, chunk);
+            copyIn.endCopy();
         } finally {
-            try { if (generatedKeys != null) generatedKeys.close(); } catch (SQLException e) {}
-            try { if (pstmt != null) pstmt.close(); } catch (SQLException e) {}
-            try { if (conn != null) conn.close(); } catch (SQLException e) {}
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
         }
-        return guestMap;
     }
-}
 
+    private static void writeToCopy(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+
+    // Unquoted empty field is NULL in CSV COPY; any value is quoted, so an empty string stays an empty string
+    private static StringBuilder appendCsv(StringBuilder out, String value) {
+        if (value == null) {
+            return out;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        return out.append('"');
+    }
+}
@@ -0,0 +1,96 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes room holds once they expire. Expiry times sit in a DelayQueue (a priority queue ordered
+ * by expiry), so the sweeper thread sleeps until the earliest hold is due instead of polling the table.
+ * Expired holds are already ignored by the availability queries; sweeping only keeps the table small.
+ */
+public class HoldExpirySweeper {
+    // Also wakes up this often to clear holds left behind by other processes or by a restart
+    private static final Duration FALLBACK_SWEEP = Duration.ofMinutes(5);
+    private static final HoldExpirySweeper SHARED = new HoldExpirySweeper();
+
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    private Thread thread;
+
+    public static HoldExpirySweeper shared() { return SHARED; }
+
+    private static class Expiry implements Delayed {
+        private final UUID token;
+        private final Instant at;
+
+        Expiry(UUID token, Instant at) {
+            this.token = token;
+            this.at = at;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), at));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return at.compareTo(((Expiry) other).at);
+        }
+    }
+
+    void track(UUID token, Instant expiresAt) {
+        queue.put(new Expiry(token, expiresAt));
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::sweepLoop, "hold-expiry");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void sweepLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Expiry due = queue.poll(FALLBACK_SWEEP.toMillis(), TimeUnit.MILLISECONDS);
+                // Everything else that is due by now goes in the same statement
+                while (due != null) {
+                    due = queue.poll();
+                }
+                int removed = deleteExpired();
+                if (removed > 0) {
+                    System.out.println("Expired room holds removed: " + removed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                System.err.println("Room hold sweep failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Set-based, so one statement clears every expired hold whoever created it
+    private int deleteExpired() throws SQLException {
+        String sql = "DELETE FROM room_holds WHERE expires_at <= now()";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            return pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package db;
+
+import logic.BookingStatus;
+import logic.RoomStatus;
+
+import java.io.IOException;
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-of-day processing for one business date, done with set-based SQL instead of row by row:
+ * no-shows, housekeeping status, loyalty points, a daily revenue snapshot and the retention of old
+ * stays: finished months are detached from bookings after HISTORY_AFTER_MONTHS and kept in
+ * booking_history on cheaper storage, and after ARCHIVE_AFTER_MONTHS they move to the booking archive file.
+ * Each step runs in its own transaction and is recorded in night_audit_log, so running the
+ * audit again for the same date skips the steps that already completed. Dates missed while the
+ * app was not running, or whose audit failed part way, are caught up on the next run.
+ */
+public class NightAuditJob {
+    public static final String STEP_NO_SHOWS = "no_shows";
+    public static final String STEP_HOUSEKEEPING = "housekeeping";
+    public static final String STEP_LOYALTY = "loyalty_points";
+    public static final String STEP_REVENUE = "revenue_snapshot";
+    public static final String STEP_ARCHIVE = "archive_stays";
+    public static final String STEP_PARTITIONS = "booking_partitions";
+    public static final String STEP_HISTORY_STORAGE = "history_storage";
+    private static final List<String> STEPS = List.of(STEP_NO_SHOWS, STEP_HOUSEKEEPING, STEP_LOYALTY,
+            STEP_REVENUE, STEP_PARTITIONS, STEP_HISTORY_STORAGE, STEP_ARCHIVE);
+
+    // How far back a missed audit is caught up; older business dates are left as they are
+    private static final int MAX_CATCH_UP_DAYS = 31;
+
+    // Monthly bookings partitions kept ahead of the business date
+    private static final int PARTITION_MONTHS_AHEAD = 12;
+    // Finished months stay attached this long; the reports look a year back
+    private static final int HISTORY_AFTER_MONTHS = 13;
+    // Tablespace for detached months, on cheaper storage; without it they stay where they are
+    private static final String HISTORY_TABLESPACE = "hotel_history";
+    // Detached months older than this go from booking_history to the archive file
+    private static final int ARCHIVE_AFTER_MONTHS = 36;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextRun;
+
+    // Result of one audit step; skipped means it had already been done for that date
+    public static class StepResult {
+        private final String step;
+        private final int rowsAffected;
+        private final long durationMs;
+        private final boolean skipped;
+
+        StepResult(String step, int rowsAffected, long durationMs, boolean skipped) {
+            this.step = step;
+            this.rowsAffected = rowsAffected;
+            this.durationMs = durationMs;
+            this.skipped = skipped;
+        }
+
+        public String getStep() { return step; }
+        public int getRowsAffected() { return rowsAffected; }
+        public long getDurationMs() { return durationMs; }
+        public boolean isSkipped() { return skipped; }
+
+        @Override
+        public String toString() {
+            return skipped ? step + ": already done"
+                    : step + ": " + rowsAffected + " rows (" + durationMs + " ms)";
+        }
+    }
+
+    @FunctionalInterface
+    private interface AuditStep {
+        int run(Connection conn, LocalDate businessDate) throws SQLException;
+    }
+
+    /**
+     * Runs the audit every day at the given time, for the business date that ended before it
+     * (a run at 03:00 on the 2nd audits the 1st). The thread is a daemon, so it does not keep the app alive.
+     */
+    public synchronized void start(LocalTime runAt) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "night-audit");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNext(runAt);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            nextRun = null;
+        }
+    }
+
+    // Computes the delay each time instead of using a fixed 24h rate, so DST changes do not shift the run time
+    private synchronized void scheduleNext(LocalTime runAt) {
+        if (scheduler == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        LocalDate businessDate = next.toLocalDate().minusDays(1);
+        long delayMs = Duration.between(now, next).toMillis();
+
+        nextRun = scheduler.schedule(() -> {
+            try {
+                runPendingAudits(businessDate);
+            } catch (SQLException e) {
+                System.err.println("Night audit for " + businessDate + " failed: " + e.getMessage());
+            } finally {
+                scheduleNext(runAt);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+        System.out.println("Night audit for " + businessDate + " scheduled at " + next);
+    }
+
+    /**
+     * Audits every business date up to the given one that has not been fully audited, oldest first:
+     * from the earliest date with a missing step, or else the day after the last audited date, but at
+     * most MAX_CATCH_UP_DAYS back. A failing date stops the catch-up, so later dates never run ahead of it.
+     */
+    public List<StepResult> runPendingAudits(LocalDate upTo) throws SQLException {
+        String sql = """
+        SELECT COALESCE(
+            (SELECT MIN(business_date) FROM (SELECT business_date FROM night_audit_log
+                                             GROUP BY business_date HAVING COUNT(*) < ?) incomplete),
+            (SELECT MAX(business_date) + 1 FROM night_audit_log))
+        """;
+        LocalDate from;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, STEPS.size());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                Date first = rs.getDate(1);
+                from = first == null ? upTo : first.toLocalDate();
+            }
+        }
+        if (from.isBefore(upTo.minusDays(MAX_CATCH_UP_DAYS))) {
+            from = upTo.minusDays(MAX_CATCH_UP_DAYS);
+        }
+        if (from.isAfter(upTo)) {
+            from = upTo;
+        }
+
+        List<StepResult> results = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(upTo); day = day.plusDays(1)) {
+            results.addAll(runAudit(day));
+        }
+        return results;
+    }
+
+    // Runs all steps for a business date. A failing step stops the audit; completed steps stay committed.
+    public List<StepResult> runAudit(LocalDate businessDate) throws SQLException {
+        long start = System.nanoTime();
+        List<StepResult> results = new ArrayList<>();
+        results.add(runStep(STEP_NO_SHOWS, businessDate, this::markNoShows));
+        results.add(runStep(STEP_HOUSEKEEPING, businessDate, this::updateHousekeeping));
+        results.add(runStep(STEP_LOYALTY, businessDate, this::accrueLoyaltyPoints));
+        results.add(runStep(STEP_REVENUE, businessDate, this::snapshotRevenue));
+        results.add(runStep(STEP_PARTITIONS, businessDate, this::maintainPartitions));
+        // Separate transaction: moving the data only locks the detached tables, not bookings
+        results.add(runStep(STEP_HISTORY_STORAGE, businessDate, this::moveHistory));
+        results.add(runStep(STEP_ARCHIVE, businessDate, this::archiveHistory));
+        System.out.println("Night audit for " + businessDate + " took: " + (System.nanoTime() - start) / 1000000.0 + " ms");
+        return results;
+    }
+
+    private StepResult runStep(String step, LocalDate businessDate, AuditStep action) throws SQLException {
+        String claim = "INSERT INTO night_audit_log (business_date, step) VALUES (?, ?) ON CONFLICT DO NOTHING";
+        String finish = "UPDATE night_audit_log SET rows_affected = ?, duration_ms = ?, completed_at = now() " +
+                "WHERE business_date = ? AND step = ?";
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // The log row is written in the same transaction as the step itself: if it already
+                // exists the step is skipped, and if the step fails the log row is rolled back with it
+                try (PreparedStatement pstmt = conn.prepareStatement(claim)) {
+                    pstmt.setDate(1, Date.valueOf(businessDate));
+                    pstmt.setString(2, step);
+                    if (pstmt.executeUpdate() == 0) {
+                        conn.rollback();
+                        System.out.println("Night audit " + step + " for " + businessDate + " already done, skipped");
+                        return new StepResult(step, 0, 0, true);
+                    }
+                }
+
+                long start = System.nanoTime();
+                int rows = action.run(conn, businessDate);
+                long durationMs = (System.nanoTime() - start) / 1000000;
+
+                try (PreparedStatement pstmt = conn.prepareStatement(finish)) {
+                    pstmt.setInt(1, rows);
+                    pstmt.setLong(2, durationMs);
+                    pstmt.setDate(3, Date.valueOf(businessDate));
+                    pstmt.setString(4, step);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                System.out.println("Night audit " + step + " took: " + durationMs + " ms, " + rows + " rows");
+                return new StepResult(step, rows, durationMs, false);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Confirmed bookings whose check-in date has passed without the guest arriving
+    private int markNoShows(Connection conn, LocalDate businessDate) throws SQLException {
+        String sql = "UPDATE bookings SET status = CAST(? AS booking_status) " +
+                "WHERE status = CAST(? AS booking_status) AND check_in_date <= ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, BookingStatus.NO_SHOW.getDbValue());
+            pstmt.setString(2, BookingStatus.CONFIRMED.getDbValue());
+            pstmt.setDate(3, Date.valueOf(businessDate));
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Checking out marks a room Dirty already (BookingDAO.checkOut), so this only catches up rooms vacated on
+    // the business date that are still marked Occupied, e.g. by a stay closed outside the app; a room
+    // housekeeping has cleaned since keeps its status, also when a missed date is caught up later. Rooms with
+    // a guest staying over are occupied, including rooms where the next guest already checked in the same day.
+    // Rooms under maintenance are left alone.
+    private int updateHousekeeping(Connection conn, LocalDate businessDate) throws SQLException {
+        String departed = """
+        UPDATE rooms SET status = CAST(? AS room_status)
+        WHERE status = CAST(? AS room_status)
+          AND room_number IN (SELECT room_room_number FROM bookings
+                              WHERE status = CAST(? AS booking_status) AND check_out_date = ?
+                                AND check_in_date >= CAST(? AS date) - max_stay_nights())
+          AND room_number NOT IN (SELECT room_room_number FROM bookings
+                                  WHERE status = CAST(? AS booking_status) AND stay @> CAST(? AS date)
+                                    AND check_in_date > CAST(? AS date) - max_stay_nights())
+        """;
+        String stayover = """
+        UPDATE rooms SET status = CAST(? AS room_status)
+        WHERE status NOT IN (CAST(? AS room_status), CAST(? AS room_status))
+          AND room_number IN (SELECT room_room_number FROM bookings
+                              WHERE status = CAST(? AS booking_status) AND stay @> CAST(? AS date)
+                                AND check_in_date > CAST(? AS date) - max_stay_nights())
+        """;
+
+        int rows;
+        try (PreparedStatement pstmt = conn.prepareStatement(departed)) {
+            pstmt.setString(1, RoomStatus.DIRTY.getDbValue());
+            pstmt.setString(2, RoomStatus.OCCUPIED.getDbValue());
+            pstmt.setString(3, BookingStatus.CHECKED_OUT.getDbValue());
+            pstmt.setDate(4, Date.valueOf(businessDate));
+            pstmt.setDate(5, Date.valueOf(businessDate));
+            pstmt.setString(6, BookingStatus.CHECKED_IN.getDbValue());
+            pstmt.setDate(7, Date.valueOf(businessDate));
+            pstmt.setDate(8, Date.valueOf(businessDate));
+            rows = pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(stayover)) {
+            pstmt.setString(1, RoomStatus.OCCUPIED.getDbValue());
+            pstmt.setString(2, RoomStatus.MAINTENANCE.getDbValue());
+            pstmt.setString(3, RoomStatus.DIRTY.getDbValue());
+            pstmt.setString(4, BookingStatus.CHECKED_IN.getDbValue());
+            pstmt.setDate(5, Date.valueOf(businessDate));
+            pstmt.setDate(6, Date.valueOf(businessDate));
+            rows += pstmt.executeUpdate();
+        }
+        return rows;
+    }
+
+    // One loyalty point per full euro of stays that ended on the business date
+    private int accrueLoyaltyPoints(Connection conn, LocalDate businessDate) throws SQLException {
+        String sql = """
+        UPDATE guests g SET loyalty_points = COALESCE(g.loyalty_points, 0) + s.points
+        FROM (SELECT guests_guest_id, FLOOR(SUM(total_price))::INTEGER AS points
+              FROM bookings
+              WHERE status = CAST(? AS booking_status) AND check_out_date = ?
+                AND check_in_date >= CAST(? AS date) - max_stay_nights()
+              GROUP BY guests_guest_id) s
+        WHERE g.guest_id = s.guests_guest_id
+        """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, BookingStatus.CHECKED_OUT.getDbValue());
+            pstmt.setDate(2, Date.valueOf(businessDate));
+            pstmt.setDate(3, Date.valueOf(businessDate));
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Occupancy and room revenue for the night of the business date (revenue is spread evenly over the nights)
+    private int snapshotRevenue(Connection conn, LocalDate businessDate) throws SQLException {
+        String sql = """
+        INSERT INTO daily_revenue_snapshots
+            (business_date, rooms_total, rooms_occupied, room_revenue, arrivals, departures, no_shows)
+        SELECT ?,
+               (SELECT COUNT(*) FROM rooms),
+               COUNT(DISTINCT b.room_room_number) FILTER (WHERE b.check_in_date <= ? AND b.check_out_date > ?
+                   AND b.status IN (CAST(? AS booking_status), CAST(? AS booking_status))),
+               COALESCE(SUM(b.total_price / (b.check_out_date - b.check_in_date))
+                   FILTER (WHERE b.check_in_date <= ? AND b.check_out_date > ?
+                   AND b.status IN (CAST(? AS booking_status), CAST(? AS booking_status))), 0),
+               COUNT(*) FILTER (WHERE b.check_in_date = ? AND b.status IN (CAST(? AS booking_status), CAST(? AS booking_status))),
+               COUNT(*) FILTER (WHERE b.check_out_date = ? AND b.status = CAST(? AS booking_status)),
+               COUNT(*) FILTER (WHERE b.check_in_date = ? AND b.status = CAST(? AS booking_status))
+        FROM bookings b
+        WHERE b.check_in_date <= ? AND b.check_out_date >= ?
+          AND b.check_in_date >= CAST(? AS date) - max_stay_nights()
+        ON CONFLICT (business_date) DO UPDATE SET
+            rooms_total = EXCLUDED.rooms_total, rooms_occupied = EXCLUDED.rooms_occupied,
+            room_revenue = EXCLUDED.room_revenue, arrivals = EXCLUDED.arrivals,
+            departures = EXCLUDED.departures, no_shows = EXCLUDED.no_shows, created_at = now()
+        """;
+        Date day = Date.valueOf(businessDate);
+        String checkedIn = BookingStatus.CHECKED_IN.getDbValue();
+        String checkedOut = BookingStatus.CHECKED_OUT.getDbValue();
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setDate(i++, day);
+            // occupied rooms
+            pstmt.setDate(i++, day);
+            pstmt.setDate(i++, day);
+            pstmt.setString(i++, checkedIn);
+            pstmt.setString(i++, checkedOut);
+            // revenue
+            pstmt.setDate(i++, day);
+            pstmt.setDate(i++, day);
+            pstmt.setString(i++, checkedIn);
+            pstmt.setString(i++, checkedOut);
+            // arrivals
+            pstmt.setDate(i++, day);
+            pstmt.setString(i++, checkedIn);
+            pstmt.setString(i++, checkedOut);
+            // departures
+            pstmt.setDate(i++, day);
+            pstmt.setString(i++, checkedOut);
+            // no-shows
+            pstmt.setDate(i++, day);
+            pstmt.setString(i++, BookingStatus.NO_SHOW.getDbValue());
+            // only stays touching the business date
+            pstmt.setDate(i++, day);
+            pstmt.setDate(i++, day);
+            pstmt.setDate(i, day);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Detached months older than ARCHIVE_AFTER_MONTHS move from booking_history to the booking archive file.
+    // The archiver commits its own batches on its own connection and can be re-run at any point, so the
+    // step's transaction only records that it ran.
+    private int archiveHistory(Connection conn, LocalDate businessDate) throws SQLException {
+        LocalDate before = businessDate.withDayOfMonth(1).minusMonths(ARCHIVE_AFTER_MONTHS);
+        try {
+            return new BookingDAO().archiveFinishedStays(BookingArchive.shared(), before);
+        } catch (IOException e) {
+            throw new SQLException("Could not write the booking archive: " + e.getMessage(), e);
+        }
+    }
+
+    // Creates the coming months' partitions and detaches finished months older than HISTORY_AFTER_MONTHS;
+    // returns the number of partitions created and detached
+    private int maintainPartitions(Connection conn, LocalDate businessDate) throws SQLException {
+        int rows;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT ensure_booking_partitions(?)")) {
+            pstmt.setInt(1, PARTITION_MONTHS_AHEAD);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                rows = rs.getInt(1);
+            }
+        }
+        LocalDate before = businessDate.withDayOfMonth(1).minusMonths(HISTORY_AFTER_MONTHS);
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM detach_finished_booking_partitions(?)")) {
+            pstmt.setDate(1, Date.valueOf(before));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    System.out.println("Bookings partition " + rs.getString(1) + " moved to booking_history");
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private int moveHistory(Connection conn, LocalDate businessDate) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT move_booking_history(?)")) {
+            pstmt.setString(1, HISTORY_TABLESPACE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
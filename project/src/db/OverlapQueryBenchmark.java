@@ -0,0 +1,158 @@
+package db;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Fills a temporary table with synthetic stays and compares the overlap queries of the availability checks
+ * with the composite B-tree on (check_in_date, check_out_date) and with the GiST index on (room, stay):
+ * the EXPLAIN ANALYZE plan of one probe, then the latency over many. Both variants carry the same
+ * check_in_date > check-in - max_stay_nights() bound as the application's queries, so the B-tree reads the
+ * stays of all rooms that checked in within that window, while the GiST index finds the overlapping stays
+ * of the room directly. The table is not partitioned, so only the index differs.
+ * The temporary tables go away with the connection.
+ */
+public class OverlapQueryBenchmark {
+    private static final int ROOMS = 500;
+    // A room gets a new stay every DAYS_PER_STAY days, lasting one to four nights
+    private static final int DAYS_PER_STAY = 4;
+    private static final int PROBES = 500;
+
+    private static final String ROOM_BUSY_BTREE = "SELECT COUNT(*) FROM bench_stays " +
+            "WHERE room = ? AND status NOT IN ('Cancelled', 'No-show') AND check_in_date < ? AND check_out_date > ? " +
+            "AND check_in_date > CAST(? AS date) - max_stay_nights()";
+    private static final String ROOM_BUSY_GIST = "SELECT COUNT(*) FROM bench_stays " +
+            "WHERE room = ? AND status NOT IN ('Cancelled', 'No-show') AND stay && daterange(?, ?) " +
+            "AND check_in_date > CAST(? AS date) - max_stay_nights()";
+    private static final String FREE_ROOMS_BTREE = "SELECT COUNT(*) FROM bench_rooms r WHERE NOT EXISTS " +
+            "(SELECT 1 FROM bench_stays b WHERE b.room = r.room_number AND b.status NOT IN ('Cancelled', 'No-show') " +
+            "AND b.check_in_date < ? AND b.check_out_date > ? AND b.check_in_date > CAST(? AS date) - max_stay_nights())";
+    private static final String FREE_ROOMS_GIST = "SELECT COUNT(*) FROM bench_rooms r WHERE NOT EXISTS " +
+            "(SELECT 1 FROM bench_stays b WHERE b.room = r.room_number AND b.status NOT IN ('Cancelled', 'No-show') " +
+            "AND b.stay && daterange(?, ?) AND b.check_in_date > CAST(? AS date) - max_stay_nights())";
+
+    public static String run(int bookingCount) throws SQLException {
+        StringBuilder report = new StringBuilder();
+        int days = bookingCount / ROOMS * DAYS_PER_STAY + DAYS_PER_STAY;
+        LocalDate firstDay = LocalDate.now().minusDays(days);
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            long start = System.nanoTime();
+            stmt.execute("""
+                CREATE TEMP TABLE bench_stays (
+                    room INTEGER NOT NULL,
+                    check_in_date DATE NOT NULL,
+                    check_out_date DATE NOT NULL,
+                    status booking_status NOT NULL,
+                    stay DATERANGE GENERATED ALWAYS AS (daterange(check_in_date, check_out_date)) STORED)
+                """);
+            stmt.execute("CREATE TEMP TABLE bench_rooms AS SELECT n AS room_number FROM generate_series(1, " + ROOMS + ") AS n");
+            try (PreparedStatement pstmt = conn.prepareStatement("""
+                INSERT INTO bench_stays (room, check_in_date, check_out_date, status)
+                SELECT i % ? + 1, ?::date + (i / ?) * ?, ?::date + (i / ?) * ? + 1 + (hashint4(i) & 3),
+                       (CASE WHEN hashint4(i) % 10 = 0 THEN 'Cancelled' ELSE 'Checked-out' END)::booking_status
+                FROM generate_series(0, ? - 1) AS i
+                """)) {
+                Date first = Date.valueOf(firstDay);
+                pstmt.setInt(1, ROOMS);
+                pstmt.setDate(2, first);
+                pstmt.setInt(3, ROOMS);
+                pstmt.setInt(4, DAYS_PER_STAY);
+                pstmt.setDate(5, first);
+                pstmt.setInt(6, ROOMS);
+                pstmt.setInt(7, DAYS_PER_STAY);
+                pstmt.setInt(8, bookingCount);
+                pstmt.executeUpdate();
+            }
+            report.append(String.format("Overlap queries, %,d stays in %d rooms over %,d days: loaded in %.0f ms%n",
+                    bookingCount, ROOMS, days, (System.nanoTime() - start) / 1_000_000.0));
+
+            start = System.nanoTime();
+            stmt.execute("CREATE INDEX bench_stays_dates ON bench_stays (check_in_date, check_out_date)");
+            stmt.execute("ANALYZE bench_stays");
+            report.append(String.format("B-tree (check_in_date, check_out_date), built in %.0f ms%n",
+                    (System.nanoTime() - start) / 1_000_000.0));
+            measure(conn, report, false, firstDay, days);
+
+            stmt.execute("DROP INDEX bench_stays_dates");
+            start = System.nanoTime();
+            stmt.execute("CREATE INDEX bench_stays_room_stay ON bench_stays USING gist (room, stay)");
+            stmt.execute("ANALYZE bench_stays");
+            report.append(String.format("GiST (room, stay), built in %.0f ms%n", (System.nanoTime() - start) / 1_000_000.0));
+            measure(conn, report, true, firstDay, days);
+
+            stmt.execute("DROP TABLE bench_stays, bench_rooms");
+        }
+        return report.toString();
+    }
+
+    // One EXPLAIN ANALYZE per query for a stay in the last month, then PROBES random stays over the whole history.
+    // range picks the daterange queries, otherwise the ones comparing both date columns.
+    private static void measure(Connection conn, StringBuilder report, boolean range, LocalDate firstDay, int days)
+            throws SQLException {
+        String roomBusy = range ? ROOM_BUSY_GIST : ROOM_BUSY_BTREE;
+        String freeRooms = range ? FREE_ROOMS_GIST : FREE_ROOMS_BTREE;
+        LocalDate recent = firstDay.plusDays(days - 30);
+        report.append("  Is room 42 free for 3 nights (isRoomAvailable):\n");
+        explain(conn, report, roomBusy, 42, recent, recent.plusDays(3), range);
+        report.append("  Free rooms for 3 nights (findAvailableRooms):\n");
+        explain(conn, report, freeRooms, null, recent, recent.plusDays(3), range);
+
+        Random random = new Random(42);
+        try (PreparedStatement busy = conn.prepareStatement(roomBusy);
+             PreparedStatement free = conn.prepareStatement(freeRooms)) {
+            long busyNanos = 0;
+            long freeNanos = 0;
+            for (int i = 0; i < PROBES; i++) {
+                LocalDate checkIn = firstDay.plusDays(random.nextInt(days - 7));
+                LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(7));
+
+                long start = System.nanoTime();
+                bind(busy, 1 + random.nextInt(ROOMS), checkIn, checkOut, range);
+                try (ResultSet rs = busy.executeQuery()) {
+                    rs.next();
+                }
+                busyNanos += System.nanoTime() - start;
+
+                // Every probe goes through all rooms, so fewer of them
+                if (i % 10 == 0) {
+                    start = System.nanoTime();
+                    bind(free, null, checkIn, checkOut, range);
+                    try (ResultSet rs = free.executeQuery()) {
+                        rs.next();
+                    }
+                    freeNanos += System.nanoTime() - start;
+                }
+            }
+            report.append(String.format("  %d random probes: room check %.3f ms avg, free rooms %.2f ms avg%n",
+                    PROBES, busyNanos / 1_000_000.0 / PROBES, freeNanos / 1_000_000.0 / (PROBES / 10)));
+        }
+    }
+
+    private static void explain(Connection conn, StringBuilder report, String sql, Integer room,
+                                LocalDate checkIn, LocalDate checkOut, boolean range) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+            bind(pstmt, room, checkIn, checkOut, range);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    report.append("    ").append(rs.getString(1)).append('\n');
+                }
+            }
+        }
+    }
+
+    // The B-tree queries take (check-out, check-in), the range ones daterange(check-in, check-out);
+    // both end with the check-in for the lower bound
+    private static void bind(PreparedStatement pstmt, Integer room, LocalDate checkIn, LocalDate checkOut,
+                             boolean range) throws SQLException {
+        int i = 1;
+        if (room != null) {
+            pstmt.setInt(i++, room);
+        }
+        pstmt.setDate(i++, Date.valueOf(range ? checkIn : checkOut));
+        pstmt.setDate(i++, Date.valueOf(range ? checkOut : checkIn));
+        pstmt.setDate(i, Date.valueOf(checkIn));
+    }
+}
@@ -0,0 +1,45 @@
+package db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets the caller cancel a running DAO query from another thread.
+ * The DAO attaches its statement while the query runs; cancel() sends Statement.cancel()
+ * so the database stops working on a result nobody is going to look at.
+ */
+public class QueryHandle {
+    private Statement statement;
+    private volatile boolean cancelled;
+
+    synchronized void attach(Statement statement) throws SQLException {
+        if (cancelled) {
+            throw new SQLException("Query was cancelled before it started", "57014");
+        }
+        this.statement = statement;
+    }
+
+    synchronized void detach() {
+        this.statement = null;
+    }
+
+    public void cancel() {
+        Statement running;
+        synchronized (this) {
+            cancelled = true;
+            running = statement;
+        }
+        if (running != null) {
+            // The driver opens a separate connection to send the cancel request, so keep it off the caller's thread
+            Thread.startVirtualThread(() -> {
+                try {
+                    running.cancel();
+                } catch (SQLException e) {
+                    // The statement already finished or was closed; nothing left to cancel
+                }
+            });
+        }
+    }
+
+    public boolean isCancelled() { return cancelled; }
+}
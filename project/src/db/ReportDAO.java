@@ -0,0 +1,152 @@
+package db;
+
+import logic.Booking;
+import utils.ReportExporter;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The front-office reports, as cursors for ReportExporter. Every report streams its own query,
+ * so the exporter can run them side by side.
+ */
+public class ReportDAO {
+    // Rows per round trip; report rows are small and read straight through
+    private static final int REPORT_FETCH_SIZE = 2000;
+
+    private static final String[] BOOKING_COLUMNS = {
+            "Booking ID", "Guest", "Email", "Phone", "Room", "Room Type", "Check-in", "Check-out",
+            "Nights", "Guests", "Status", "Paid", "Payment Method", "Total Price"
+    };
+    private static final String[] REVENUE_COLUMNS = {
+            "Date", "Rooms", "Occupied", "Occupancy %", "Room Revenue", "ADR", "RevPAR", "Arrivals", "Departures", "No-shows"
+    };
+    private static final String[] STATS_COLUMNS = {
+            "Period", "Room Type", "Room Nights", "Available", "Occupancy %", "Arrivals", "Revenue", "ADR", "RevPAR"
+    };
+    // Nights ahead covered by the on-the-books report
+    private static final int FORECAST_DAYS = 90;
+
+    private final BookingDAO bookingDAO = new BookingDAO();
+    private final StatsDAO statsDAO = new StatsDAO();
+
+    // Arrivals, departures and in-house guests for the day, the nights ahead as booked so far, plus revenue,
+    // room types and bookings for the year up to it
+    public List<ReportExporter.Report> dailyReports(LocalDate day) {
+        LocalDate yearAgo = day.minusYears(1);
+        return List.of(
+                arrivals(day),
+                departures(day),
+                inHouse(day),
+                onTheBooks(day, day.plusDays(FORECAST_DAYS)),
+                dailyRevenue(yearAgo, day),
+                roomTypesByMonth(yearAgo.withDayOfMonth(1), day.plusDays(1)),
+                bookings(yearAgo, day.plusDays(1)));
+    }
+
+    public ReportExporter.Report arrivals(LocalDate day) {
+        return new ReportExporter.Report("Arrivals " + day, BOOKING_COLUMNS,
+                sink -> bookingDAO.streamArrivals(day, new QueryHandle(), booking -> sink.accept(toRow(booking))));
+    }
+
+    public ReportExporter.Report departures(LocalDate day) {
+        return new ReportExporter.Report("Departures " + day, BOOKING_COLUMNS,
+                sink -> bookingDAO.streamDepartures(day, new QueryHandle(), booking -> sink.accept(toRow(booking))));
+    }
+
+    public ReportExporter.Report inHouse(LocalDate day) {
+        return new ReportExporter.Report("In-house " + day, BOOKING_COLUMNS,
+                sink -> bookingDAO.streamInHouse(day, new QueryHandle(), booking -> sink.accept(toRow(booking))));
+    }
+
+    // Every booking with a night in [from, to)
+    public ReportExporter.Report bookings(LocalDate from, LocalDate to) {
+        return new ReportExporter.Report("Bookings", BOOKING_COLUMNS,
+                sink -> bookingDAO.streamByDateRange(from, to, new QueryHandle(), booking -> sink.accept(toRow(booking))));
+    }
+
+    // Occupancy and revenue per night in [from, to) as currently booked, from the rollup tables
+    public ReportExporter.Report onTheBooks(LocalDate from, LocalDate to) {
+        return new ReportExporter.Report("On the books", STATS_COLUMNS,
+                sink -> writeStats(statsDAO.occupancyByNight(from, to), sink));
+    }
+
+    // Room nights, occupancy and revenue per month and room type over [from, to), from the rollup tables
+    public ReportExporter.Report roomTypesByMonth(LocalDate from, LocalDate to) {
+        return new ReportExporter.Report("Room types", STATS_COLUMNS,
+                sink -> writeStats(statsDAO.revenueByRoomTypePerMonth(from, to), sink));
+    }
+
+    private static int writeStats(List<StatsDAO.RoomTypeStats> stats, Consumer<Object[]> sink) {
+        for (StatsDAO.RoomTypeStats row : stats) {
+            sink.accept(new Object[]{
+                    row.getPeriod(),
+                    row.getRoomType() == null ? "All" : row.getRoomType().name(),
+                    row.getRoomNights(),
+                    row.getRoomNightsAvailable(),
+                    Math.round(row.getOccupancyPercent() * 10) / 10.0,
+                    row.getArrivals(),
+                    row.getRevenue(),
+                    Math.round(row.getAdr() * 100) / 100.0,
+                    Math.round(row.getRevPar() * 100) / 100.0});
+        }
+        return stats.size();
+    }
+
+    // The night-audit revenue snapshots for business dates in [from, to)
+    public ReportExporter.Report dailyRevenue(LocalDate from, LocalDate to) {
+        return new ReportExporter.Report("Revenue", REVENUE_COLUMNS, sink -> streamDailyRevenue(from, to, sink));
+    }
+
+    private int streamDailyRevenue(LocalDate from, LocalDate to, Consumer<Object[]> sink) throws SQLException {
+        String sql = "SELECT business_date, rooms_total, rooms_occupied, room_revenue, arrivals, departures, no_shows " +
+                "FROM daily_revenue_snapshots WHERE business_date >= ? AND business_date < ? ORDER BY business_date";
+        int count = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setFetchSize(REPORT_FETCH_SIZE);
+                pstmt.setDate(1, Date.valueOf(from));
+                pstmt.setDate(2, Date.valueOf(to));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int rooms = rs.getInt("rooms_total");
+                        int occupied = rs.getInt("rooms_occupied");
+                        double revenue = rs.getDouble("room_revenue");
+                        sink.accept(new Object[]{
+                                rs.getDate("business_date").toLocalDate(), rooms, occupied,
+                                rooms == 0 ? 0.0 : Math.round(occupied * 1000.0 / rooms) / 10.0,
+                                revenue,
+                                occupied == 0 ? 0.0 : Math.round(revenue * 100 / occupied) / 100.0,
+                                rooms == 0 ? 0.0 : Math.round(revenue * 100 / rooms) / 100.0,
+                                rs.getInt("arrivals"), rs.getInt("departures"), rs.getInt("no_shows")});
+                        count++;
+                    }
+                }
+            }
+            conn.commit();
+        }
+        return count;
+    }
+
+    private static Object[] toRow(Booking booking) {
+        return new Object[]{
+                booking.getBookingId(),
+                booking.getGuest().getFullName(),
+                booking.getGuest().getEmail(),
+                booking.getGuest().getPhone(),
+                booking.getRoom().getRoomNumber(),
+                booking.getRoom().getRoomType().name(),
+                booking.getCheckInDate(),
+                booking.getCheckOutDate(),
+                booking.getNumberOfNights(),
+                booking.getNumberOfGuests(),
+                booking.getStatus().getDbValue(),
+                booking.isPaid(),
+                booking.getPaymentMethod(),
+                booking.getTotalPrice()
+        };
+    }
+}
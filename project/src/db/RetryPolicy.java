@@ -0,0 +1,81 @@
+package db;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Re-runs a database call that failed for a transient reason: a serialization failure,
+ * a deadlock, or a dropped connection. Waits between attempts grow exponentially and are
+ * picked at random below that bound ("full jitter"), so desks that failed together
+ * do not all retry at the same moment.
+ *
+ * Only wrap calls that are safe to repeat. A dropped connection can hide a write that was
+ * committed, so inserts need an idempotency key (see BookingDAO.insertBooking).
+ */
+public class RetryPolicy {
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String DEADLOCK_DETECTED = "40P01";
+    private static final String CONNECTION_EXCEPTION_CLASS = "08";
+
+    private static final RetryPolicy DEFAULT = new RetryPolicy(4, 50, 1000);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public static RetryPolicy defaults() { return DEFAULT; }
+
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    public <T> T run(SqlCall<T> call) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                System.err.println("Transient database error (" + e.getSQLState() + "), retry " + attempt +
+                        " of " + (maxAttempts - 1) + ": " + e.getMessage());
+                sleep(attempt);
+            }
+        }
+    }
+
+    public static boolean isTransient(SQLException e) {
+        if (e instanceof SQLRecoverableException || e instanceof SQLTransientConnectionException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        if (state == null) {
+            return false;
+        }
+        return state.equals(SERIALIZATION_FAILURE)
+                || state.equals(DEADLOCK_DETECTED)
+                || state.startsWith(CONNECTION_EXCEPTION_CLASS);
+    }
+
+    private void sleep(int attempt) throws SQLException {
+        long bound = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry", "57014", e);
+        }
+    }
+}
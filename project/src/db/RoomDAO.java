@@ -53,6 +53,32 @@ public class RoomDAO {
         return rooms;
     }
 
+    /**
+     * Returns the rooms inserted, updated or deleted since the given watermark (see ChangeSet).
+     * Both reads share one REPEATABLE READ snapshot, so a key never shows up as upsert and tombstone at once.
+     */
+    public ChangeSet<Room> findChangedSince(long watermark) throws SQLException {
+        ChangeSet<Room> changes = new ChangeSet<>(watermark);
+        String sql = "SELECT * FROM rooms WHERE row_version >= ? ORDER BY row_version";
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            changes.readWatermark(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, watermark);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.addUpsert(extractRoomFromResultSet(rs));
+                    }
+                }
+            }
+            changes.collectDeletions(conn, "rooms", watermark);
+            conn.commit();
+        }
+        return changes;
+    }
+
     // SELECT room by number
     public Room getRoomByNumber(int roomNumber) {
         String sql = "SELECT * FROM rooms WHERE room_number = ?";
@@ -172,6 +198,11 @@ public List<Room> findRoomsByType(RoomType type) {
 }
 
 public List<Room> findAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
+    return findAvailableRooms(checkIn, checkOut, new QueryHandle());
+}
+
+// The running statement is attached to the handle, so a superseded search can be cancelled mid-query
+public List<Room> findAvailableRooms(LocalDate checkIn, LocalDate checkOut, QueryHandle handle) {
     List<Room> availableRooms = new ArrayList<>();
     if (checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)) {
         return availableRooms; // empty list for invalid input
@@ -179,22 +210,33 @@ public List<Room> findAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
 
         String sql = "SELECT * FROM rooms r WHERE r.is_available = true AND NOT EXISTS " +
             "(SELECT 1 FROM bookings b WHERE b.room_room_number = r.room_number " +
-            "AND b.status NOT IN ('Cancelled') AND b.check_in_date < ? AND b.check_out_date > ?)" +
+            "AND b.status NOT IN ('Cancelled', 'No-show') AND b.stay && daterange(?, ?) " +
+            "AND b.check_in_date > CAST(? AS date) - max_stay_nights()) " +
+            "AND NOT EXISTS (SELECT 1 FROM room_holds h WHERE h.room_number = r.room_number " +
+            "AND h.expires_at > now() AND h.check_in_date < ? AND h.check_out_date > ?) " +
                 "ORDER BY r.room_number";
 
     try (Connection conn = DatabaseConnection.getConnection();
          PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-        pstmt.setDate(1, Date.valueOf(checkOut));
-        pstmt.setDate(2, Date.valueOf(checkIn));
+        pstmt.setDate(1, Date.valueOf(checkIn));
+        pstmt.setDate(2, Date.valueOf(checkOut));
+        pstmt.setDate(3, Date.valueOf(checkIn));
+        pstmt.setDate(4, Date.valueOf(checkOut));
+        pstmt.setDate(5, Date.valueOf(checkIn));
 
+        handle.attach(pstmt);
         try (ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
+            while (rs.next() && !handle.isCancelled()) {
                 availableRooms.add(extractRoomFromResultSet(rs));
             }
+        } finally {
+            handle.detach();
         }
     } catch (SQLException e) {
-        e.printStackTrace();
+        if (!handle.isCancelled()) {
+            e.printStackTrace();
+        }
     }
     return availableRooms;
 }
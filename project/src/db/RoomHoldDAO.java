@@ -0,0 +1,98 @@
+package db;
+
+import logic.RoomLockStripes;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Temporary holds on a room for a date range, taken while a clerk is still filling in a reservation.
+ * A live hold counts as occupied for availability checks and for other desks' inserts;
+ * BookingDAO.insertBooking(booking, holdToken) turns it into a booking, and it lapses on its own after the TTL.
+ */
+public class RoomHoldDAO {
+
+    /**
+     * Holds the room for the given dates and returns the hold token.
+     * Fails if the room is booked or held by someone else for any of those nights.
+     */
+    public UUID holdRoom(int roomNumber, LocalDate checkIn, LocalDate checkOut, Duration ttl)
+            throws RoomNotAvailableException, SQLException {
+        if (checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)) {
+            throw new IllegalArgumentException("Check-out must be after check-in");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Hold TTL must be positive");
+        }
+
+        String sql = """
+        INSERT INTO room_holds (hold_token, room_number, check_in_date, check_out_date, expires_at)
+        SELECT ?, ?, ?, ?, now() + ? * INTERVAL '1 millisecond'
+        WHERE NOT EXISTS (
+            SELECT 1 FROM bookings b
+            WHERE b.room_room_number = ? AND b.status NOT IN ('Cancelled', 'No-show')
+              AND b.stay && daterange(?, ?)
+              AND b.check_in_date > CAST(? AS date) - max_stay_nights())
+          AND NOT EXISTS (
+            SELECT 1 FROM room_holds h
+            WHERE h.room_number = ? AND h.expires_at > now()
+              AND h.check_in_date < ? AND h.check_out_date > ?)
+        RETURNING expires_at
+        """;
+
+        UUID token = UUID.randomUUID();
+        RoomLockStripes.Held held = RoomLockStripes.shared().lock(roomNumber);
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setObject(1, token);
+            pstmt.setInt(2, roomNumber);
+            pstmt.setDate(3, Date.valueOf(checkIn));
+            pstmt.setDate(4, Date.valueOf(checkOut));
+            pstmt.setLong(5, ttl.toMillis());
+            pstmt.setInt(6, roomNumber);
+            pstmt.setDate(7, Date.valueOf(checkIn));
+            pstmt.setDate(8, Date.valueOf(checkOut));
+            pstmt.setDate(9, Date.valueOf(checkIn));
+            pstmt.setInt(10, roomNumber);
+            pstmt.setDate(11, Date.valueOf(checkOut));
+            pstmt.setDate(12, Date.valueOf(checkIn));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new RoomNotAvailableException("Room " + roomNumber + " is not available from " + checkIn + " to " + checkOut);
+                }
+                HoldExpirySweeper.shared().track(token, rs.getTimestamp("expires_at").toInstant());
+            }
+        } finally {
+            held.unlock();
+        }
+        return token;
+    }
+
+    // Gives the room back before the TTL runs out, e.g. when the clerk closes the dialog
+    public void releaseHold(UUID token) throws SQLException {
+        String sql = "DELETE FROM room_holds WHERE hold_token = ?";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setObject(1, token);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // True while the hold exists and has not expired
+    public boolean isHoldActive(UUID token) throws SQLException {
+        String sql = "SELECT 1 FROM room_holds WHERE hold_token = ? AND expires_at > now()";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setObject(1, token);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
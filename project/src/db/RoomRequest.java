@@ -0,0 +1,39 @@
+package db;
+
+import logic.Room;
+
+import java.time.LocalDate;
+
+/**
+ * One room of a group reservation. If the room is taken and substitutes are allowed,
+ * BookingDAO.reserveRooms picks another free room of the same type that fits the party.
+ */
+public class RoomRequest {
+    private final Room room;
+    private final LocalDate checkIn;
+    private final LocalDate checkOut;
+    private final int numberOfGuests;
+    private final boolean allowSubstitute;
+
+    public RoomRequest(Room room, LocalDate checkIn, LocalDate checkOut, int numberOfGuests, boolean allowSubstitute) {
+        if (checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)) {
+            throw new IllegalArgumentException("Check-out must be after check-in");
+        }
+        this.room = room;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.numberOfGuests = numberOfGuests;
+        this.allowSubstitute = allowSubstitute;
+    }
+
+    public Room getRoom() { return room; }
+    public LocalDate getCheckIn() { return checkIn; }
+    public LocalDate getCheckOut() { return checkOut; }
+    public int getNumberOfGuests() { return numberOfGuests; }
+    public boolean isAllowSubstitute() { return allowSubstitute; }
+
+    @Override
+    public String toString() {
+        return "Room " + room.getRoomNumber() + " from " + checkIn + " to " + checkOut;
+    }
+}
@@ -0,0 +1,18 @@
+package db;
+
+import logic.Booking;
+
+/**
+ * Thrown when a booking was changed by someone else after it was read.
+ * Carries the booking as it is now in the database, so the caller can show it and let the user redo the edit.
+ */
+public class StaleBookingException extends Exception {
+    private final Booking current;
+
+    public StaleBookingException(String message, Booking current) {
+        super(message);
+        this.current = current;
+    }
+
+    public Booking getCurrent() { return current; }
+}
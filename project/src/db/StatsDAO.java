@@ -0,0 +1,181 @@
+package db;
+
+import logic.RoomType;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the rollup tables (daily_room_type_stats, monthly_guest_stats) that triggers on bookings, rooms and
+ * guests keep current, so the questions below cost a few hundred pre-aggregated rows instead of a scan of
+ * bookings.
+ * Occupancy is measured against the current room inventory.
+ */
+public class StatsDAO {
+
+    // Room nights, arrivals and revenue for one period, for one room type or (roomType null) all of them
+    public static class RoomTypeStats {
+        private final LocalDate period;
+        private final RoomType roomType;
+        private final long roomNights;
+        private final long arrivals;
+        private final double revenue;
+        private final long roomNightsAvailable;
+
+        RoomTypeStats(LocalDate period, RoomType roomType, long roomNights, long arrivals, double revenue,
+                      long roomNightsAvailable) {
+            this.period = period;
+            this.roomType = roomType;
+            this.roomNights = roomNights;
+            this.arrivals = arrivals;
+            this.revenue = revenue;
+            this.roomNightsAvailable = roomNightsAvailable;
+        }
+
+        public LocalDate getPeriod() { return period; }
+        public RoomType getRoomType() { return roomType; }
+        public long getRoomNights() { return roomNights; }
+        public long getArrivals() { return arrivals; }
+        public double getRevenue() { return revenue; }
+        public long getRoomNightsAvailable() { return roomNightsAvailable; }
+
+        public double getOccupancyPercent() {
+            return roomNightsAvailable == 0 ? 0 : roomNights * 100.0 / roomNightsAvailable;
+        }
+
+        public double getAdr() {
+            return roomNights == 0 ? 0 : revenue / roomNights;
+        }
+
+        public double getRevPar() {
+            return roomNightsAvailable == 0 ? 0 : revenue / roomNightsAvailable;
+        }
+    }
+
+    public static class NationalityStats {
+        private final String nationality;
+        private final long bookings;
+        private final long roomNights;
+        private final double revenue;
+
+        NationalityStats(String nationality, long bookings, long roomNights, double revenue) {
+            this.nationality = nationality;
+            this.bookings = bookings;
+            this.roomNights = roomNights;
+            this.revenue = revenue;
+        }
+
+        public String getNationality() { return nationality; }
+        public long getBookings() { return bookings; }
+        public long getRoomNights() { return roomNights; }
+        public double getRevenue() { return revenue; }
+    }
+
+    // Occupancy of the whole hotel for every night in [from, to), nights without sales included
+    public List<RoomTypeStats> occupancyByNight(LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+        SELECT d.night AS period,
+               COALESCE(SUM(s.room_nights), 0) AS room_nights,
+               COALESCE(SUM(s.arrivals), 0) AS arrivals,
+               ROUND(COALESCE(SUM(s.revenue), 0), 2) AS revenue,
+               (SELECT COUNT(*) FROM rooms) AS available
+        FROM (SELECT ?::date + k AS night FROM generate_series(0, ?::date - ?::date - 1) AS k) d
+        LEFT JOIN daily_room_type_stats s ON s.stay_date = d.night
+        GROUP BY d.night
+        ORDER BY d.night
+        """;
+        return readRoomTypeStats(sql, from, to, false);
+    }
+
+    // Per calendar month and room type over [from, to); the first and last months count only the days inside
+    public List<RoomTypeStats> revenueByRoomTypePerMonth(LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+        WITH inventory AS (
+            SELECT room_type, COUNT(*) AS rooms FROM rooms GROUP BY room_type
+        ), totals AS (
+            SELECT date_trunc('month', stay_date)::date AS period, room_type,
+                   SUM(room_nights) AS room_nights, SUM(arrivals) AS arrivals, SUM(revenue) AS revenue
+            FROM daily_room_type_stats
+            WHERE stay_date >= ? AND stay_date < ?
+            GROUP BY 1, 2
+        )
+        SELECT t.period, t.room_type, t.room_nights, t.arrivals, ROUND(t.revenue, 2) AS revenue,
+               COALESCE(i.rooms, 0) * (LEAST((t.period + INTERVAL '1 month')::date, ?::date)
+                                       - GREATEST(t.period, ?::date)) AS available
+        FROM totals t
+        LEFT JOIN inventory i ON i.room_type = t.room_type
+        ORDER BY t.period, t.room_type
+        """;
+        return readRoomTypeStats(sql, from, to, true);
+    }
+
+    // Bookings checking in during the months from from's month up to (not including) to's month, most revenue first
+    public List<NationalityStats> byNationality(LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+        SELECT nationality, SUM(bookings) AS bookings, SUM(room_nights) AS room_nights,
+               ROUND(SUM(revenue), 2) AS revenue
+        FROM monthly_guest_stats
+        WHERE month >= date_trunc('month', ?::date) AND month < date_trunc('month', ?::date)
+        GROUP BY nationality
+        HAVING SUM(bookings) <> 0
+        ORDER BY SUM(revenue) DESC
+        """;
+        List<NationalityStats> stats = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, Date.valueOf(from));
+            pstmt.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String nationality = rs.getString("nationality");
+                    stats.add(new NationalityStats(nationality.isEmpty() ? "Unknown" : nationality,
+                            rs.getLong("bookings"), rs.getLong("room_nights"), rs.getDouble("revenue")));
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Recomputes the rollups from bookings and booking_history. The triggers keep them current, including
+     * room type and nationality changes, so this is only a repair for tables edited with the triggers off.
+     * Stays already moved to the booking archive file drop out of the rollups.
+     */
+    public void rebuild() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT rebuild_booking_rollups()");
+        }
+        System.out.println("Rollups rebuilt in " + (System.nanoTime() - start) / 1000000.0 + " ms");
+    }
+
+    private List<RoomTypeStats> readRoomTypeStats(String sql, LocalDate from, LocalDate to, boolean perRoomType)
+            throws SQLException {
+        List<RoomTypeStats> stats = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, Date.valueOf(from));
+            pstmt.setDate(2, Date.valueOf(to));
+            // The per-night query needs from again, the monthly one to and from to clip the first and last month
+            pstmt.setDate(3, Date.valueOf(perRoomType ? to : from));
+            if (perRoomType) {
+                pstmt.setDate(4, Date.valueOf(from));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stats.add(new RoomTypeStats(
+                            rs.getDate("period").toLocalDate(),
+                            perRoomType ? RoomType.valueOf(rs.getString("room_type")) : null,
+                            rs.getLong("room_nights"),
+                            rs.getLong("arrivals"),
+                            rs.getDouble("revenue"),
+                            rs.getLong("available")));
+                }
+            }
+        }
+        return stats;
+    }
+}
@@ -1,7 +1,26 @@
+-- GiST operator classes for plain columns, so a GiST index can lead with the room number
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
 CREATE TYPE room_type AS ENUM ('SINGLE', 'DOUBLE', 'DELUXE', 'SUITE');
 CREATE TYPE room_status AS ENUM ('Clean', 'Dirty', 'Maintenance', 'Occupied');
 CREATE TYPE booking_status AS ENUM ('Confirmed', 'Checked-in', 'Checked-out', 'Cancelled', 'No-show');
 
+-- Every insert/update stamps the row with the id of the transaction that wrote it, so clients can fetch
+-- only the rows changed since they last looked. Versions handed out by a sequence could become visible out
+-- of order (a transaction commits after a later one was already read); a transaction id can be compared
+-- with a snapshot instead, see change_watermark().
+CREATE OR REPLACE FUNCTION current_change_version() RETURNS BIGINT AS $$
+    SELECT pg_current_xact_id()::text::BIGINT;
+$$ LANGUAGE sql VOLATILE;
+
+-- Oldest transaction still running when the calling transaction took its snapshot: every change stamped
+-- with an older id is already visible to it. Readers pass this back as the watermark of their next read and
+-- fetch row_version >= watermark, so changes of transactions that were still running are not skipped
+-- (changes they already saw may come again; applying them twice is harmless).
+CREATE OR REPLACE FUNCTION change_watermark() RETURNS BIGINT AS $$
+    SELECT pg_snapshot_xmin(pg_current_snapshot())::text::BIGINT;
+$$ LANGUAGE sql STABLE;
+
 CREATE TABLE guests (
     guest_id SERIAL PRIMARY KEY,
     first_name VARCHAR(50) NOT NULL,
@@ -9,7 +28,8 @@ CREATE TABLE guests (
     email VARCHAR(100) UNIQUE,
     phone VARCHAR(50),
     loyalty_points INTEGER DEFAULT 0,
-    nationality VARCHAR(50)
+    nationality VARCHAR(50),
+    row_version BIGINT NOT NULL DEFAULT current_change_version()
 );
 
 CREATE TABLE rooms (
@@ -20,11 +40,20 @@ CREATE TABLE rooms (
     has_balcony BOOLEAN DEFAULT FALSE,
     amenities TEXT,
     is_available BOOLEAN DEFAULT TRUE,
-    status room_status DEFAULT 'Clean'
+    status room_status DEFAULT 'Clean',
+    row_version BIGINT NOT NULL DEFAULT current_change_version()
 );
 
+-- Longest stay a booking may have. Any stay overlapping a date checked in at most this many nights before it,
+-- so overlap queries can bound check_in_date from below as well and skip the partitions of older months.
+CREATE OR REPLACE FUNCTION max_stay_nights() RETURNS INTEGER AS $$
+    SELECT 90;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Partitioned by month of check-in (see ensure_booking_partitions), so queries bounding check_in_date only
+-- read the months they ask for. Unique keys have to include the partition key.
 CREATE TABLE  bookings (
-    booking_id SERIAL PRIMARY KEY,
+    booking_id SERIAL,
     guests_guest_id INTEGER NOT NULL REFERENCES guests(guest_id) ON DELETE RESTRICT,
     room_room_number INTEGER NOT NULL REFERENCES rooms(room_number) ON DELETE RESTRICT,
     check_in_date DATE NOT NULL,
@@ -34,8 +63,111 @@ CREATE TABLE  bookings (
     status booking_status DEFAULT 'Confirmed',
     is_paid BOOLEAN DEFAULT FALSE,
     payment_method VARCHAR(30),
+    row_version BIGINT NOT NULL DEFAULT current_change_version(),
+    -- Per-row edit counter for optimistic updates; bumped by trg_bookings_edit_version
+    version INTEGER NOT NULL DEFAULT 0,
+    -- Chosen by the client per reservation attempt, so a retried insert finds the first one instead of duplicating it
+    request_key UUID,
+    -- The nights of the stay, [check-in, check-out); overlap queries test it with && against idx_bookings_room_stay
+    stay DATERANGE GENERATED ALWAYS AS (daterange(check_in_date, check_out_date)) STORED,
+    PRIMARY KEY (booking_id, check_in_date),
+    UNIQUE (request_key, check_in_date),
     CONSTRAINT check_dates CHECK (check_out_date > check_in_date),
+    CONSTRAINT check_stay_length CHECK (check_out_date - check_in_date <= max_stay_nights()),
     CONSTRAINT check_guests CHECK (number_of_guests > 0)
+) PARTITION BY RANGE (check_in_date);
+
+-- Check-ins in months that have no partition yet; ensure_booking_partitions moves them out
+CREATE TABLE bookings_default PARTITION OF bookings DEFAULT;
+
+-- Monthly partitions detached by detach_finished_booking_partitions; no longer part of bookings
+CREATE SCHEMA booking_history;
+
+-- Short-lived reservations of a room while a booking is being filled in; rows past expires_at are ignored
+CREATE TABLE room_holds (
+    hold_token UUID PRIMARY KEY,
+    room_number INTEGER NOT NULL REFERENCES rooms(room_number) ON DELETE CASCADE,
+    check_in_date DATE NOT NULL,
+    check_out_date DATE NOT NULL,
+    expires_at TIMESTAMPTZ NOT NULL,
+    CONSTRAINT check_hold_dates CHECK (check_out_date > check_in_date)
+);
+
+-- Tombstones for deleted rows, so delta readers can drop them from their local state
+CREATE TABLE deleted_rows (
+    table_name VARCHAR(30) NOT NULL,
+    row_key INTEGER NOT NULL,
+    row_version BIGINT NOT NULL DEFAULT current_change_version(),
+    PRIMARY KEY (table_name, row_key)
+);
+
+-- One row per night-audit step and business date; a step that already has a row is not run again
+CREATE TABLE night_audit_log (
+    business_date DATE NOT NULL,
+    step VARCHAR(30) NOT NULL,
+    rows_affected INTEGER,
+    duration_ms BIGINT,
+    completed_at TIMESTAMP DEFAULT now(),
+    PRIMARY KEY (business_date, step)
+);
+
+CREATE TABLE daily_revenue_snapshots (
+    business_date DATE PRIMARY KEY,
+    rooms_total INTEGER NOT NULL,
+    rooms_occupied INTEGER NOT NULL,
+    room_revenue DECIMAL(12, 2) NOT NULL,
+    arrivals INTEGER NOT NULL,
+    departures INTEGER NOT NULL,
+    no_shows INTEGER NOT NULL,
+    created_at TIMESTAMP DEFAULT now()
+);
+
+-- Number of records in the booking archive file that the deleted bookings went to (single row);
+-- lets the archiver tell a batch that reached the file but not the database apart from one that reached both
+CREATE TABLE booking_archive_state (
+    archive_id INTEGER PRIMARY KEY DEFAULT 1 CHECK (archive_id = 1),
+    records BIGINT NOT NULL DEFAULT 0
+);
+
+-- Identity of the database contents (single row). HotelApp.clearDatabase gives it a new value: a local snapshot
+-- of an earlier epoch cannot be brought up to date with deltas, since a TRUNCATE leaves no tombstones.
+CREATE TABLE database_epoch (
+    epoch_id INTEGER PRIMARY KEY DEFAULT 1 CHECK (epoch_id = 1),
+    epoch UUID NOT NULL DEFAULT gen_random_uuid()
+);
+INSERT INTO database_epoch DEFAULT VALUES;
+
+-- Content hash of every spreadsheet row as of the last Excel sync, by sheet and natural key
+-- (room number, guest email, booking id in the sheet), with the key of the database row it was written to
+CREATE TABLE import_row_hashes (
+    source VARCHAR(20) NOT NULL,
+    natural_key VARCHAR(255) NOT NULL,
+    row_hash BIGINT NOT NULL,
+    target_key INTEGER NOT NULL,
+    PRIMARY KEY (source, natural_key)
+);
+
+-- Rollups of the bookings on the books (confirmed, checked in, checked out), kept current by the
+-- trg_bookings_rollup_* triggers below, so reports read a few hundred rows instead of the bookings table.
+-- Revenue is spread over the nights of a stay in whole cents, the cents left over after an even split going to
+-- the first nights as in RevenueAnalytics, so a stay's nights add up to exactly its price.
+CREATE TABLE daily_room_type_stats (
+    stay_date DATE NOT NULL,
+    room_type room_type NOT NULL,
+    room_nights INTEGER NOT NULL DEFAULT 0,
+    arrivals INTEGER NOT NULL DEFAULT 0,
+    revenue NUMERIC NOT NULL DEFAULT 0,
+    PRIMARY KEY (stay_date, room_type)
+);
+
+-- Bookings by month of check-in and guest nationality ('' when unknown)
+CREATE TABLE monthly_guest_stats (
+    month DATE NOT NULL,
+    nationality VARCHAR(50) NOT NULL,
+    bookings INTEGER NOT NULL DEFAULT 0,
+    room_nights INTEGER NOT NULL DEFAULT 0,
+    revenue NUMERIC NOT NULL DEFAULT 0,
+    PRIMARY KEY (month, nationality)
 );
 
 CREATE INDEX idx_guests_email ON guests(email);
@@ -44,5 +176,303 @@ CREATE INDEX idx_rooms_type ON rooms(room_type);
 CREATE INDEX idx_rooms_price ON rooms(price_per_night);
 CREATE INDEX idx_rooms_available ON rooms(is_available);
 CREATE INDEX idx_bookings_dates ON bookings(check_in_date, check_out_date);
+CREATE INDEX idx_bookings_room_stay ON bookings USING gist (room_room_number, stay);
 CREATE INDEX idx_bookings_guest ON bookings(guests_guest_id);
 CREATE INDEX idx_bookings_status ON bookings(status);
+CREATE INDEX idx_room_holds_room ON room_holds(room_number, check_in_date, check_out_date);
+CREATE INDEX idx_room_holds_expiry ON room_holds(expires_at);
+CREATE INDEX idx_guests_row_version ON guests(row_version);
+CREATE INDEX idx_rooms_row_version ON rooms(row_version);
+CREATE INDEX idx_bookings_row_version ON bookings(row_version);
+CREATE INDEX idx_deleted_rows_version ON deleted_rows(table_name, row_version);
+
+-- TG_ARGV[0] is the primary key column of the table the trigger is attached to. On a partitioned table,
+-- TG_ARGV[1] is its name: the trigger runs on the partitions, and TG_TABLE_NAME is the partition's name.
+CREATE OR REPLACE FUNCTION stamp_row_version() RETURNS trigger AS $$
+BEGIN
+    NEW.row_version := current_change_version();
+    IF TG_OP = 'INSERT' THEN
+        -- A key that comes back after a delete is no longer a tombstone
+        DELETE FROM deleted_rows
+        WHERE table_name = COALESCE(TG_ARGV[1], TG_TABLE_NAME)
+          AND row_key = (to_jsonb(NEW) ->> TG_ARGV[0])::INTEGER;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION record_tombstone() RETURNS trigger AS $$
+DECLARE
+    tombstone_key INTEGER := (to_jsonb(OLD) ->> TG_ARGV[0])::INTEGER;
+    still_there BOOLEAN;
+BEGIN
+    -- ensure_booking_partitions moving rows out of the default partition
+    IF current_setting('hotel.moving_rows', true) = 'on' THEN
+        RETURN OLD;
+    END IF;
+    IF TG_ARGV[1] IS NOT NULL THEN
+        -- An update that changes the partition key deletes the row from one partition and inserts it into another
+        EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE %I = $1)', TG_ARGV[1], TG_ARGV[0])
+            INTO still_there USING tombstone_key;
+        IF still_there THEN
+            RETURN OLD;
+        END IF;
+    END IF;
+    INSERT INTO deleted_rows (table_name, row_key)
+    VALUES (COALESCE(TG_ARGV[1], TG_TABLE_NAME), tombstone_key)
+    ON CONFLICT (table_name, row_key) DO UPDATE SET row_version = current_change_version();
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_guests_version BEFORE INSERT OR UPDATE ON guests
+    FOR EACH ROW EXECUTE FUNCTION stamp_row_version('guest_id');
+CREATE TRIGGER trg_rooms_version BEFORE INSERT OR UPDATE ON rooms
+    FOR EACH ROW EXECUTE FUNCTION stamp_row_version('room_number');
+CREATE TRIGGER trg_bookings_version BEFORE INSERT OR UPDATE ON bookings
+    FOR EACH ROW EXECUTE FUNCTION stamp_row_version('booking_id', 'bookings');
+
+-- Every change to a booking, whichever statement makes it, invalidates copies read before it
+CREATE OR REPLACE FUNCTION bump_edit_version() RETURNS trigger AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_bookings_edit_version BEFORE UPDATE ON bookings
+    FOR EACH ROW EXECUTE FUNCTION bump_edit_version();
+
+CREATE TRIGGER trg_guests_tombstone AFTER DELETE ON guests
+    FOR EACH ROW EXECUTE FUNCTION record_tombstone('guest_id');
+CREATE TRIGGER trg_rooms_tombstone AFTER DELETE ON rooms
+    FOR EACH ROW EXECUTE FUNCTION record_tombstone('room_number');
+CREATE TRIGGER trg_bookings_tombstone AFTER DELETE ON bookings
+    FOR EACH ROW EXECUTE FUNCTION record_tombstone('booking_id', 'bookings');
+
+-- Adds (direction 1) or removes (direction -1) bookings from the rollups. Room type and nationality are looked up;
+-- when a room or guest changes those, trg_rooms_rollup_type and trg_guests_rollup_nationality take its bookings out
+-- under the old values (old_room_type, old_nationality) and add them again under the new ones, so a booking is
+-- always subtracted from the bucket it was added to.
+-- Rows are upserted in key order, so concurrent writers lock rollup rows in the same order.
+CREATE OR REPLACE FUNCTION rollup_bookings(changed bookings[], direction INTEGER,
+                                           old_room_type room_type DEFAULT NULL,
+                                           old_nationality TEXT DEFAULT NULL) RETURNS void AS $$
+    WITH counted AS (
+        SELECT b.check_in_date, b.check_out_date, b.total_price,
+               CAST(b.total_price * 100 AS BIGINT) AS cents,
+               b.check_out_date - b.check_in_date AS nights,
+               COALESCE(old_room_type, r.room_type) AS room_type,
+               COALESCE(old_nationality, g.nationality, '') AS nationality
+        FROM unnest(changed) AS b
+        JOIN rooms r ON r.room_number = b.room_room_number
+        LEFT JOIN guests g ON g.guest_id = b.guests_guest_id
+        WHERE b.status IN ('Confirmed', 'Checked-in', 'Checked-out')
+          AND b.check_out_date > b.check_in_date
+    ), daily AS (
+        INSERT INTO daily_room_type_stats AS s (stay_date, room_type, room_nights, arrivals, revenue)
+        SELECT c.check_in_date + night, c.room_type, direction * COUNT(*),
+               direction * COUNT(*) FILTER (WHERE night = 0),
+               direction * SUM(c.cents / c.nights + CASE WHEN night < c.cents % c.nights THEN 1 ELSE 0 END) / 100.0
+        FROM counted c, generate_series(0, c.nights - 1) AS night
+        GROUP BY c.check_in_date + night, c.room_type
+        ORDER BY 1, 2
+        ON CONFLICT (stay_date, room_type) DO UPDATE SET
+            room_nights = s.room_nights + EXCLUDED.room_nights,
+            arrivals = s.arrivals + EXCLUDED.arrivals,
+            revenue = s.revenue + EXCLUDED.revenue
+    )
+    INSERT INTO monthly_guest_stats AS s (month, nationality, bookings, room_nights, revenue)
+    SELECT date_trunc('month', c.check_in_date)::date, c.nationality, direction * COUNT(*),
+           direction * SUM(c.nights), direction * SUM(c.total_price)
+    FROM counted c
+    GROUP BY 1, 2
+    ORDER BY 1, 2
+    ON CONFLICT (month, nationality) DO UPDATE SET
+        bookings = s.bookings + EXCLUDED.bookings,
+        room_nights = s.room_nights + EXCLUDED.room_nights,
+        revenue = s.revenue + EXCLUDED.revenue;
+$$ LANGUAGE sql;
+
+-- Statement-level, so a batch insert or bulk status change updates each rollup row once.
+-- The archiver sets hotel.archiving for its transaction: archived stays leave the table but stay in the stats.
+CREATE OR REPLACE FUNCTION apply_booking_rollups() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND current_setting('hotel.archiving', true) IS DISTINCT FROM 'on' THEN
+        PERFORM rollup_bookings(ARRAY(SELECT o::bookings FROM old_rows o), -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM rollup_bookings(ARRAY(SELECT n::bookings FROM new_rows n), 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_bookings_rollup_insert AFTER INSERT ON bookings
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_booking_rollups();
+CREATE TRIGGER trg_bookings_rollup_update AFTER UPDATE ON bookings
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_booking_rollups();
+CREATE TRIGGER trg_bookings_rollup_delete AFTER DELETE ON bookings
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_booking_rollups();
+
+-- Moves the bookings of a room that changed type, or of a guest whose nationality changed, to the new bucket.
+-- Stays already archived or detached stay where they were counted.
+CREATE OR REPLACE FUNCTION move_booking_rollups() RETURNS trigger AS $$
+DECLARE
+    moved bookings[];
+BEGIN
+    IF TG_TABLE_NAME = 'rooms' THEN
+        moved := ARRAY(SELECT b FROM bookings b WHERE b.room_room_number = NEW.room_number);
+        PERFORM rollup_bookings(moved, -1, OLD.room_type, NULL);
+    ELSE
+        moved := ARRAY(SELECT b FROM bookings b WHERE b.guests_guest_id = NEW.guest_id);
+        PERFORM rollup_bookings(moved, -1, NULL, COALESCE(OLD.nationality, ''));
+    END IF;
+    PERFORM rollup_bookings(moved, 1);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_rooms_rollup_type AFTER UPDATE OF room_type ON rooms
+    FOR EACH ROW WHEN (OLD.room_type IS DISTINCT FROM NEW.room_type)
+    EXECUTE FUNCTION move_booking_rollups();
+CREATE TRIGGER trg_guests_rollup_nationality AFTER UPDATE OF nationality ON guests
+    FOR EACH ROW WHEN (COALESCE(OLD.nationality, '') IS DISTINCT FROM COALESCE(NEW.nationality, ''))
+    EXECUTE FUNCTION move_booking_rollups();
+
+-- Recomputes the rollups from the bookings table, a year of check-ins at a time, and from the months detached to
+-- booking_history. Only for repairs after the tables were edited with the triggers disabled: stays already moved to
+-- the booking archive file are not in the database any more, so they drop out of the rebuilt rollups.
+CREATE OR REPLACE FUNCTION rebuild_booking_rollups() RETURNS void AS $$
+DECLARE
+    year_start DATE;
+    history RECORD;
+BEGIN
+    LOCK TABLE bookings IN SHARE MODE;
+    DELETE FROM daily_room_type_stats;
+    DELETE FROM monthly_guest_stats;
+    FOR year_start IN SELECT DISTINCT date_trunc('year', check_in_date)::date FROM bookings LOOP
+        PERFORM rollup_bookings(ARRAY(
+            SELECT b FROM bookings b
+            WHERE b.check_in_date >= year_start AND b.check_in_date < year_start + INTERVAL '1 year'), 1);
+    END LOOP;
+    -- Detached partitions keep the columns of bookings, so their rows convert to it
+    FOR history IN
+        SELECT c.oid::regclass AS tbl FROM pg_class c
+        WHERE c.relnamespace = 'booking_history'::regnamespace AND c.relkind = 'r'
+    LOOP
+        EXECUTE format('SELECT rollup_bookings(ARRAY(SELECT h::text::bookings FROM %s h), 1)', history.tbl);
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Creates the monthly partitions of bookings up to months_ahead months after the current one, plus one for every
+-- month that has check-ins in the default partition, and returns how many it made. Those check-ins are moved into
+-- the new partition as they are: for delta readers and the rollups nothing changed.
+CREATE OR REPLACE FUNCTION ensure_booking_partitions(months_ahead INTEGER) RETURNS INTEGER AS $$
+DECLARE
+    month_start DATE;
+    partition_name TEXT;
+    created INTEGER := 0;
+    -- Generated columns are computed again on insert and cannot be copied
+    stored_columns TEXT := (SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) FROM pg_attribute
+                            WHERE attrelid = 'bookings'::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = '');
+BEGIN
+    FOR month_start IN
+        SELECT DISTINCT date_trunc('month', check_in_date)::date FROM bookings_default
+        UNION
+        SELECT generate_series(date_trunc('month', current_date),
+                               date_trunc('month', current_date) + make_interval(months => months_ahead),
+                               INTERVAL '1 month')::date
+        ORDER BY 1
+    LOOP
+        partition_name := 'bookings_' || to_char(month_start, 'YYYY_MM');
+        CONTINUE WHEN to_regclass('public.' || partition_name) IS NOT NULL;
+
+        EXECUTE format('CREATE TABLE public.%I (LIKE bookings INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING GENERATED)',
+                       partition_name);
+        PERFORM set_config('hotel.moving_rows', 'on', true);
+        EXECUTE format('WITH moved AS (DELETE FROM bookings_default WHERE check_in_date >= $1 AND check_in_date < $2 RETURNING *) '
+                       'INSERT INTO public.%I (%s) SELECT %s FROM moved', partition_name, stored_columns, stored_columns)
+            USING month_start, (month_start + INTERVAL '1 month')::date;
+        PERFORM set_config('hotel.moving_rows', 'off', true);
+        EXECUTE format('ALTER TABLE bookings ATTACH PARTITION public.%I FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, month_start, (month_start + INTERVAL '1 month')::date);
+        created := created + 1;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Detaches the monthly partitions ending on or before the given date whose stays are all over (checked out,
+-- cancelled or no-show) and moves them to the booking_history schema; returns their names. Delta readers get
+-- tombstones for the stays, while the rollups keep counting them, as with the booking archive. History outlives
+-- the guests and rooms it refers to, so its foreign keys are dropped.
+CREATE OR REPLACE FUNCTION detach_finished_booking_partitions(before DATE) RETURNS SETOF TEXT AS $$
+DECLARE
+    part RECORD;
+    fk RECORD;
+    busy BOOLEAN;
+BEGIN
+    FOR part IN
+        SELECT c.oid::regclass AS partition, c.relname,
+               (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \(''([0-9-]+)''\)'))[1]::date AS upper_bound
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'bookings'::regclass
+        ORDER BY c.relname
+    LOOP
+        -- The default partition has no upper bound
+        CONTINUE WHEN part.upper_bound IS NULL OR part.upper_bound > before;
+        CONTINUE WHEN to_regclass('booking_history.' || quote_ident(part.relname)) IS NOT NULL;
+        EXECUTE format('SELECT EXISTS (SELECT 1 FROM %s WHERE status NOT IN (''Checked-out'', ''Cancelled'', ''No-show''))',
+                       part.partition) INTO busy;
+        CONTINUE WHEN busy;
+
+        EXECUTE format('ALTER TABLE bookings DETACH PARTITION %s', part.partition);
+        EXECUTE format('INSERT INTO deleted_rows (table_name, row_key) SELECT ''bookings'', booking_id FROM %s '
+                       'ON CONFLICT (table_name, row_key) DO UPDATE SET row_version = current_change_version()',
+                       part.partition);
+        FOR fk IN SELECT conname FROM pg_constraint WHERE conrelid = part.partition AND contype = 'f' LOOP
+            EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', part.partition, fk.conname);
+        END LOOP;
+        EXECUTE format('ALTER TABLE %s SET SCHEMA booking_history', part.partition);
+        RETURN NEXT part.relname;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Moves the tables in booking_history, and their indexes, to the given tablespace (e.g. on cheaper disks) and
+-- returns how many tables it moved. Does nothing when the tablespace does not exist. Each table is rewritten
+-- under its own lock only, so bookings stays available meanwhile.
+CREATE OR REPLACE FUNCTION move_booking_history(tablespace_name TEXT) RETURNS INTEGER AS $$
+DECLARE
+    target OID;
+    history RECORD;
+    idx RECORD;
+    moved INTEGER := 0;
+BEGIN
+    SELECT oid INTO target FROM pg_tablespace WHERE spcname = tablespace_name;
+    IF target IS NULL THEN
+        RETURN 0;
+    END IF;
+    FOR history IN
+        SELECT c.oid::regclass AS tbl
+        FROM pg_class c
+        WHERE c.relnamespace = 'booking_history'::regnamespace AND c.relkind = 'r' AND c.reltablespace <> target
+    LOOP
+        EXECUTE format('ALTER TABLE %s SET TABLESPACE %I', history.tbl, tablespace_name);
+        FOR idx IN SELECT indexrelid::regclass AS name FROM pg_index WHERE indrelid = history.tbl LOOP
+            EXECUTE format('ALTER INDEX %s SET TABLESPACE %I', idx.name, tablespace_name);
+        END LOOP;
+        moved := moved + 1;
+    END LOOP;
+    RETURN moved;
+END;
+$$ LANGUAGE plpgsql;
+
+-- The current month and the next twelve; the night audit keeps extending this
+SELECT ensure_booking_partitions(12);
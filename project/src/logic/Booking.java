@@ -2,6 +2,7 @@ package logic;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.UUID;
 
 public class Booking {
 
@@ -14,6 +15,12 @@ public class Booking {
     private BookingStatus status;
     private boolean isPaid = false;
     private String paymentMethod;
+    // Edit version as last read from the database; updateBooking only succeeds if it is still current
+    private int version;
+    // Check-in date the database row has, which picks its partition; setCheckInDate leaves it alone
+    private LocalDate storedCheckInDate;
+    // Idempotency key for creating this booking; kept across retries so the insert happens at most once
+    private UUID requestKey;
 
     public Booking(int bookingId, Guest guest, Room room, LocalDate checkInDate, LocalDate checkOutDate, int numberOfGuests) {
         this.bookingId = bookingId;
@@ -21,6 +28,7 @@ public class Booking {
         guest.addBooking(this);
         this.room = room;
         this.checkInDate = checkInDate;
+        this.storedCheckInDate = checkInDate;
         this.checkOutDate = checkOutDate;
         this.numberOfGuests = numberOfGuests;
         this.status = BookingStatus.CONFIRMED;
@@ -73,6 +81,15 @@ public class Booking {
     public String getPaymentMethod() { return paymentMethod; }
     public void setPaymentMethod(String PaymentMethod) { this.paymentMethod = PaymentMethod; }
 
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public LocalDate getStoredCheckInDate() { return storedCheckInDate; }
+    public void setStoredCheckInDate(LocalDate storedCheckInDate) { this.storedCheckInDate = storedCheckInDate; }
+
+    public UUID getRequestKey() { return requestKey; }
+    public void setRequestKey(UUID requestKey) { this.requestKey = requestKey; }
+
 
     @Override
     public String toString(){
@@ -80,6 +97,11 @@ public class Booking {
     }
 
     public void recalculateTotalPrice() throws IllegalStateException {
+        this.totalPrice = calculateTotalPrice();
+    }
+
+    // The price of the stay at the room's current rate, without changing the booking
+    public double calculateTotalPrice() throws IllegalStateException {
         if (room == null) {
             throw new IllegalStateException("Cannot calculate price: room is null");
         }
@@ -91,7 +113,7 @@ public class Booking {
         }
 
         long nights = getNumberOfNights();
-        this.totalPrice = room.getRoomPricePerNight() * nights;
+        return room.getRoomPricePerNight() * nights;
     }
 
     public boolean isActive() {
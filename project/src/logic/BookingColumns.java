@@ -0,0 +1,212 @@
+package logic;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only snapshot of bookings stored column by column in primitive arrays.
+ * A scan over one or two columns reads contiguous memory instead of following a Booking, its LocalDates
+ * and its enum per row, and the kernels below are plain counted loops without branches in the body,
+ * which the JIT compiles to SIMD code.
+ * Dates are epoch days, prices are cents, statuses are BookingStatus ordinals.
+ */
+public class BookingColumns {
+    private final int size;
+    private final int[] bookingId;
+    private final int[] guestId;
+    private final int[] roomNumber;
+    private final int[] checkInDay;
+    private final int[] checkOutDay;
+    private final int[] numberOfGuests;
+    private final long[] priceCents;
+    private final byte[] status;
+    private final boolean[] paid;
+
+    private BookingColumns(Builder builder) {
+        this.size = builder.size;
+        this.bookingId = Arrays.copyOf(builder.bookingId, size);
+        this.guestId = Arrays.copyOf(builder.guestId, size);
+        this.roomNumber = Arrays.copyOf(builder.roomNumber, size);
+        this.checkInDay = Arrays.copyOf(builder.checkInDay, size);
+        this.checkOutDay = Arrays.copyOf(builder.checkOutDay, size);
+        this.numberOfGuests = Arrays.copyOf(builder.numberOfGuests, size);
+        this.priceCents = Arrays.copyOf(builder.priceCents, size);
+        this.status = Arrays.copyOf(builder.status, size);
+        this.paid = Arrays.copyOf(builder.paid, size);
+    }
+
+    public static BookingColumns of(List<Booking> bookings) {
+        Builder builder = new Builder(bookings.size());
+        for (Booking booking : bookings) {
+            builder.add(booking);
+        }
+        return builder.build();
+    }
+
+    // Collects rows one at a time, e.g. while streaming them from the database
+    public static class Builder {
+        private int size;
+        private int[] bookingId;
+        private int[] guestId;
+        private int[] roomNumber;
+        private int[] checkInDay;
+        private int[] checkOutDay;
+        private int[] numberOfGuests;
+        private long[] priceCents;
+        private byte[] status;
+        private boolean[] paid;
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            bookingId = new int[capacity];
+            guestId = new int[capacity];
+            roomNumber = new int[capacity];
+            checkInDay = new int[capacity];
+            checkOutDay = new int[capacity];
+            numberOfGuests = new int[capacity];
+            priceCents = new long[capacity];
+            status = new byte[capacity];
+            paid = new boolean[capacity];
+        }
+
+        public Builder add(Booking booking) {
+            return add(booking.getBookingId(), booking.getGuest().getId(), booking.getRoom().getRoomNumber(),
+                    booking.getCheckInDate(), booking.getCheckOutDate(), booking.getNumberOfGuests(),
+                    booking.getTotalPrice(), booking.getStatus(), booking.isPaid());
+        }
+
+        public Builder add(int id, int guest, int room, LocalDate checkIn, LocalDate checkOut, int guests,
+                           double totalPrice, BookingStatus bookingStatus, boolean isPaid) {
+            if (size == bookingId.length) {
+                grow();
+            }
+            bookingId[size] = id;
+            guestId[size] = guest;
+            roomNumber[size] = room;
+            checkInDay[size] = (int) checkIn.toEpochDay();
+            checkOutDay[size] = (int) checkOut.toEpochDay();
+            numberOfGuests[size] = guests;
+            priceCents[size] = Math.round(totalPrice * 100);
+            status[size] = (byte) bookingStatus.ordinal();
+            paid[size] = isPaid;
+            size++;
+            return this;
+        }
+
+        private void grow() {
+            int capacity = bookingId.length * 2;
+            bookingId = Arrays.copyOf(bookingId, capacity);
+            guestId = Arrays.copyOf(guestId, capacity);
+            roomNumber = Arrays.copyOf(roomNumber, capacity);
+            checkInDay = Arrays.copyOf(checkInDay, capacity);
+            checkOutDay = Arrays.copyOf(checkOutDay, capacity);
+            numberOfGuests = Arrays.copyOf(numberOfGuests, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+            status = Arrays.copyOf(status, capacity);
+            paid = Arrays.copyOf(paid, capacity);
+        }
+
+        public BookingColumns build() {
+            return new BookingColumns(this);
+        }
+    }
+
+    public int size() { return size; }
+    public int getBookingId(int row) { return bookingId[row]; }
+    public int getGuestId(int row) { return guestId[row]; }
+    public int getRoomNumber(int row) { return roomNumber[row]; }
+    public LocalDate getCheckInDate(int row) { return LocalDate.ofEpochDay(checkInDay[row]); }
+    public LocalDate getCheckOutDate(int row) { return LocalDate.ofEpochDay(checkOutDay[row]); }
+    public int getNumberOfGuests(int row) { return numberOfGuests[row]; }
+    public long getPriceCents(int row) { return priceCents[row]; }
+    public BookingStatus getStatus(int row) { return BookingStatus.values()[status[row]]; }
+    public boolean isPaid(int row) { return paid[row]; }
+
+    // Bit mask over BookingStatus ordinals, for the kernels that accept several statuses
+    public static int statusMask(BookingStatus... statuses) {
+        int mask = 0;
+        for (BookingStatus s : statuses) {
+            mask |= 1 << s.ordinal();
+        }
+        return mask;
+    }
+
+    // Number of bookings whose status is in the mask
+    public int countStatus(int mask) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += (mask >>> status[i]) & 1;
+        }
+        return count;
+    }
+
+    // Bookings per status, indexed by ordinal
+    public int[] countByStatus() {
+        int[] counts = new int[BookingStatus.values().length];
+        for (int i = 0; i < size; i++) {
+            counts[status[i]]++;
+        }
+        return counts;
+    }
+
+    // Total price of the bookings in the mask that check in on or between the two dates
+    public long revenueCents(int mask, LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            int day = checkInDay[i];
+            // 1 when the row qualifies, 0 otherwise; multiplying keeps the loop free of branches
+            long hit = ((mask >>> status[i]) & 1) & (day >= fromDay ? 1 : 0) & (day <= toDay ? 1 : 0);
+            sum += priceCents[i] * hit;
+        }
+        return sum;
+    }
+
+    // Guest-nights of the bookings in the mask that overlap [from, to), counting only nights inside the range
+    public long nightsInRange(int mask, LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        long nights = 0;
+        for (int i = 0; i < size; i++) {
+            int overlap = Math.min(checkOutDay[i], toDay) - Math.max(checkInDay[i], fromDay);
+            nights += Math.max(overlap, 0) * ((mask >>> status[i]) & 1);
+        }
+        return nights;
+    }
+
+    // Row indexes of bookings that check in on or between the two dates, in row order
+    public int[] selectCheckInBetween(LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int[] selection = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            selection[count] = i;
+            int day = checkInDay[i];
+            // Always write, advance only on a match
+            count += (day >= fromDay ? 1 : 0) & (day <= toDay ? 1 : 0);
+        }
+        return Arrays.copyOf(selection, count);
+    }
+
+    // Row indexes of bookings whose status is in the mask, in row order
+    public int[] selectStatus(int mask) {
+        int[] selection = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            selection[count] = i;
+            count += (mask >>> status[i]) & 1;
+        }
+        return Arrays.copyOf(selection, count);
+    }
+
+    public long sumPriceCents(int[] rows) {
+        long sum = 0;
+        for (int row : rows) {
+            sum += priceCents[row];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,170 @@
+package logic;
+
+import java.util.*;
+
+/**
+ * Checks a batch of incoming bookings for double bookings, among themselves and against stays
+ * already in the database, without any per-booking queries.
+ * Stays are grouped by room and sorted by check-in; one sweep per room then only has to compare each
+ * stay with the latest check-out seen so far. Existing stays always win; among incoming bookings the
+ * earlier check-in wins, and a rejected booking does not block the ones after it.
+ */
+public class BookingConflictValidator {
+    private static final int INDEX_BITS = 32;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    // A stay that is already booked, as far as the validator needs to know it
+    public static class ExistingStay {
+        private final int bookingId;
+        private final int roomNumber;
+        private final long checkInDay;
+        private final long checkOutDay;
+
+        public ExistingStay(int bookingId, int roomNumber, long checkInDay, long checkOutDay) {
+            this.bookingId = bookingId;
+            this.roomNumber = roomNumber;
+            this.checkInDay = checkInDay;
+            this.checkOutDay = checkOutDay;
+        }
+
+        public int getBookingId() { return bookingId; }
+        public int getRoomNumber() { return roomNumber; }
+    }
+
+    public static class Conflict {
+        private final Booking booking;
+        private final Booking conflictingImport;
+        private final ExistingStay conflictingStay;
+
+        Conflict(Booking booking, Booking conflictingImport, ExistingStay conflictingStay) {
+            this.booking = booking;
+            this.conflictingImport = conflictingImport;
+            this.conflictingStay = conflictingStay;
+        }
+
+        public Booking getBooking() { return booking; }
+        // One of these two is set: the incoming booking or the existing stay it overlaps
+        public Booking getConflictingImport() { return conflictingImport; }
+        public ExistingStay getConflictingStay() { return conflictingStay; }
+
+        @Override
+        public String toString() {
+            String other = conflictingStay != null
+                    ? "existing booking " + conflictingStay.getBookingId()
+                    : "imported booking " + conflictingImport.getCheckInDate() + " to " + conflictingImport.getCheckOutDate();
+            return "Room " + booking.getRoom().getRoomNumber() + " " + booking.getCheckInDate() + " to " +
+                    booking.getCheckOutDate() + " overlaps " + other;
+        }
+    }
+
+    public static class ConflictReport {
+        private final List<Booking> accepted = new ArrayList<>();
+        private final List<Conflict> conflicts = new ArrayList<>();
+
+        public List<Booking> getAccepted() { return accepted; }
+        public List<Conflict> getConflicts() { return conflicts; }
+        public boolean hasConflicts() { return !conflicts.isEmpty(); }
+
+        @Override
+        public String toString() {
+            return "Import validation: " + accepted.size() + " accepted, " + conflicts.size() + " conflicts";
+        }
+    }
+
+    /**
+     * Splits incoming into accepted bookings and conflicts. Cancelled and no-show bookings never conflict
+     * and are accepted as they are. existing should hold the live stays of the rooms involved.
+     */
+    public ConflictReport validate(List<Booking> incoming, List<ExistingStay> existing) {
+        ConflictReport report = new ConflictReport();
+
+        // Per room: indexes into incoming, and the existing stays
+        Map<Integer, List<Integer>> incomingByRoom = new HashMap<>();
+        for (int i = 0; i < incoming.size(); i++) {
+            Booking booking = incoming.get(i);
+            if (occupiesRoom(booking)) {
+                incomingByRoom.computeIfAbsent(booking.getRoom().getRoomNumber(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<Integer, List<ExistingStay>> existingByRoom = new HashMap<>();
+        for (ExistingStay stay : existing) {
+            if (incomingByRoom.containsKey(stay.roomNumber)) {
+                existingByRoom.computeIfAbsent(stay.roomNumber, k -> new ArrayList<>()).add(stay);
+            }
+        }
+
+        boolean[] rejected = new boolean[incoming.size()];
+        for (Map.Entry<Integer, List<Integer>> entry : incomingByRoom.entrySet()) {
+            sweepRoom(incoming, entry.getValue(), existingByRoom.getOrDefault(entry.getKey(), List.of()),
+                    rejected, report);
+        }
+
+        for (int i = 0; i < incoming.size(); i++) {
+            if (!rejected[i]) {
+                report.accepted.add(incoming.get(i));
+            }
+        }
+        return report;
+    }
+
+    private void sweepRoom(List<Booking> incoming, List<Integer> indexes, List<ExistingStay> existing,
+                           boolean[] rejected, ConflictReport report) {
+        int n = indexes.size();
+        long[] checkIns = new long[n];
+        long[] checkOuts = new long[n];
+        // Check-in day in the high bits, position in the low bits: a primitive sort gives the sweep order
+        long[] order = new long[n];
+        for (int k = 0; k < n; k++) {
+            Booking booking = incoming.get(indexes.get(k));
+            checkIns[k] = booking.getCheckInDate().toEpochDay();
+            checkOuts[k] = booking.getCheckOutDate().toEpochDay();
+            order[k] = (checkIns[k] << INDEX_BITS) | k;
+        }
+        Arrays.sort(order);
+        List<ExistingStay> stays = new ArrayList<>(existing);
+        stays.sort(Comparator.comparingLong(stay -> stay.checkInDay));
+
+        // Latest check-out among the stays kept so far, and who holds it
+        long blockedUntil = Long.MIN_VALUE;
+        Booking blockingImport = null;
+        ExistingStay blockingStay = null;
+        int next = 0;
+
+        for (long key : order) {
+            int k = (int) (key & INDEX_MASK);
+            // Existing stays that start before this booking are swept first
+            while (next < stays.size() && stays.get(next).checkInDay <= checkIns[k]) {
+                ExistingStay stay = stays.get(next++);
+                if (stay.checkOutDay > blockedUntil) {
+                    blockedUntil = stay.checkOutDay;
+                    blockingStay = stay;
+                    blockingImport = null;
+                }
+            }
+            Booking booking = incoming.get(indexes.get(k));
+            if (checkIns[k] < blockedUntil) {
+                reject(booking, indexes.get(k), blockingImport, blockingStay, rejected, report);
+                continue;
+            }
+            // An existing stay starting inside this booking also blocks it
+            if (next < stays.size() && stays.get(next).checkInDay < checkOuts[k]) {
+                reject(booking, indexes.get(k), null, stays.get(next), rejected, report);
+                continue;
+            }
+            blockedUntil = checkOuts[k];
+            blockingImport = booking;
+            blockingStay = null;
+        }
+    }
+
+    private void reject(Booking booking, int index, Booking conflictingImport, ExistingStay conflictingStay,
+                        boolean[] rejected, ConflictReport report) {
+        rejected[index] = true;
+        report.conflicts.add(new Conflict(booking, conflictingImport, conflictingStay));
+    }
+
+    private static boolean occupiesRoom(Booking booking) {
+        BookingStatus status = booking.getStatus();
+        return status != BookingStatus.CANCELLED && status != BookingStatus.NO_SHOW;
+    }
+}
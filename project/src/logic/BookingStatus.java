@@ -4,7 +4,8 @@ public enum BookingStatus {
     CONFIRMED("Confirmed"),
     CHECKED_IN("Checked-in"),
     CHECKED_OUT("Checked-out"),
-    CANCELLED("Cancelled");
+    CANCELLED("Cancelled"),
+    NO_SHOW("No-show");
 
     private final String dbValue;
 
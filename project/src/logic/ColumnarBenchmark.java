@@ -0,0 +1,88 @@
+package logic;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the List<Booking> stream filters with the BookingColumns kernels on the same synthetic data.
+ * Each measurement is the best of several runs after a warm-up, which is close to what a JMH
+ * average would show for these single-pass scans.
+ */
+public class ColumnarBenchmark {
+    private static final int ROUNDS = 7;
+
+    public static String run(int bookingCount) {
+        List<Booking> bookings = syntheticBookings(bookingCount, new Random(42));
+        long start = System.nanoTime();
+        BookingColumns columns = BookingColumns.of(bookings);
+        double buildMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        LocalDate from = LocalDate.now();
+        LocalDate to = from.plusDays(30);
+        int confirmedMask = BookingColumns.statusMask(BookingStatus.CONFIRMED);
+        int revenueMask = BookingColumns.statusMask(BookingStatus.CHECKED_IN, BookingStatus.CHECKED_OUT);
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Columnar vs objects, %,d bookings (snapshot built in %.1f ms)%n", bookingCount, buildMs));
+        compare(report, "count CONFIRMED",
+                () -> bookings.stream().filter(b -> b.getStatus() == BookingStatus.CONFIRMED).count(),
+                () -> columns.countStatus(confirmedMask));
+        compare(report, "revenue checked-in/out, next 30 days",
+                () -> Math.round(bookings.stream()
+                        .filter(b -> b.getStatus() == BookingStatus.CHECKED_IN || b.getStatus() == BookingStatus.CHECKED_OUT)
+                        .filter(b -> !b.getCheckInDate().isBefore(from) && !b.getCheckInDate().isAfter(to))
+                        .mapToDouble(Booking::getTotalPrice).sum() * 100),
+                () -> columns.revenueCents(revenueMask, from, to));
+        compare(report, "select check-in next 30 days",
+                () -> bookings.stream()
+                        .filter(b -> !b.getCheckInDate().isBefore(from) && !b.getCheckInDate().isAfter(to))
+                        .count(),
+                () -> columns.selectCheckInBetween(from, to).length);
+        return report.toString();
+    }
+
+    private static void compare(StringBuilder report, String label, LongSupplier objects, LongSupplier columnar) {
+        long[] objectResult = new long[1];
+        long[] columnResult = new long[1];
+        double objectMs = best(() -> objectResult[0] = objects.getAsLong());
+        double columnMs = best(() -> columnResult[0] = columnar.getAsLong());
+        // Revenue may differ by a few cents, since the stream sums doubles and the columns sum cents
+        report.append(String.format("  %-38s objects %9.3f ms, columns %8.3f ms, x%5.1f  (%d / %d)%n",
+                label, objectMs, columnMs, objectMs / columnMs, objectResult[0], columnResult[0]));
+    }
+
+    private static double best(Runnable run) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        return best;
+    }
+
+    private static List<Booking> syntheticBookings(int count, Random random) {
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            rooms.add(new Room(i, RoomType.values()[i % RoomType.values().length], 60 + random.nextInt(300), 2, false, true));
+        }
+        List<Guest> guests = new ArrayList<>();
+        for (int i = 1; i <= 10_000; i++) {
+            guests.add(new Guest(i, "Guest", String.valueOf(i), "", "", 0, ""));
+        }
+        BookingStatus[] statuses = BookingStatus.values();
+        LocalDate firstDay = LocalDate.now().minusYears(3);
+        List<Booking> bookings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDate checkIn = firstDay.plusDays(random.nextInt(4 * 365));
+            Booking booking = new Booking(i + 1, guests.get(random.nextInt(guests.size())),
+                    rooms.get(random.nextInt(rooms.size())), checkIn, checkIn.plusDays(1 + random.nextInt(7)), 1);
+            booking.setStatus(statuses[random.nextInt(statuses.length)]);
+            bookings.add(booking);
+        }
+        return bookings;
+    }
+}
@@ -0,0 +1,204 @@
+package logic;
+
+import utils.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches imported guests against the guests already stored, and against each other, entirely in memory.
+ * Guests are the same person when their normalised emails match, or failing that when their full names and
+ * normalised phone numbers match; a shared home number alone does not merge family members. Existing keys go into a Bloom filter in front of the key map, so the
+ * typical new guest is ruled out without building its phone key or probing the map.
+ */
+public class GuestDeduplicator {
+    // Phone numbers shorter than this (extensions, "0", placeholders) are too weak to match on
+    private static final int MIN_PHONE_DIGITS = 7;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final BloomFilter existingKeys;
+    private final Map<String, Integer> guestIdsByKey;
+
+    // What to write for one import: merges into stored guests, and new guests with duplicates folded together
+    public static class Result {
+        private final Map<Integer, Guest> updates = new HashMap<>();
+        private final List<Guest> inserts = new ArrayList<>();
+        private final Map<Integer, Guest> bySheetId = new HashMap<>();
+        private int duplicatesInImport;
+
+        /** Stored guest id to the merged values of every imported row that matched it. */
+        public Map<Integer, Guest> getUpdates() { return updates; }
+        /** Guests to insert, with id 0 until they are stored. */
+        public List<Guest> getInserts() { return inserts; }
+        /** Id in the import to the update or insert the row ended up in. */
+        public Map<Integer, Guest> getBySheetId() { return bySheetId; }
+        public int getDuplicatesInImport() { return duplicatesInImport; }
+
+        @Override
+        public String toString() {
+            return "Guest dedupe: " + inserts.size() + " new, " + updates.size() + " matched stored guests, " +
+                    duplicatesInImport + " duplicates within the import";
+        }
+    }
+
+    public GuestDeduplicator(int expectedGuests) {
+        // Up to two keys per guest
+        this.existingKeys = new BloomFilter(expectedGuests * 2, FALSE_POSITIVE_RATE);
+        this.guestIdsByKey = new HashMap<>(Math.max(16, expectedGuests * 8 / 3));
+    }
+
+    // Registers a stored guest; with duplicate keys the first guest added wins
+    public void addExisting(int guestId, String email, String firstName, String lastName, String phone) {
+        String key = emailKey(email);
+        if (key != null && guestIdsByKey.putIfAbsent(key, guestId) == null) {
+            existingKeys.add(key);
+        }
+        key = phoneKey(firstName, lastName, phone);
+        if (key != null && guestIdsByKey.putIfAbsent(key, guestId) == null) {
+            existingKeys.add(key);
+        }
+    }
+
+    public Result match(List<Guest> incoming) {
+        Result result = new Result();
+        // Keys of rows from this import, pointing at the update or insert they were folded into
+        Map<String, Guest> importedByKey = new HashMap<>();
+
+        for (Guest guest : incoming) {
+            String emailKey = emailKey(guest.getEmail());
+            String phoneKey = null;
+            Guest target = emailKey != null ? importedByKey.get(emailKey) : null;
+            if (target == null) {
+                phoneKey = phoneKey(guest.getFirstName(), guest.getLastName(), guest.getPhone());
+                target = phoneKey != null ? importedByKey.get(phoneKey) : null;
+            }
+            if (target == null) {
+                Integer storedId = findExisting(emailKey, guest);
+                if (storedId != null) {
+                    target = result.updates.get(storedId);
+                    if (target == null) {
+                        target = copyOf(guest, storedId);
+                        result.updates.put(storedId, target);
+                    } else {
+                        merge(target, guest);
+                        result.duplicatesInImport++;
+                    }
+                } else {
+                    target = copyOf(guest, 0);
+                    result.inserts.add(target);
+                }
+            } else {
+                merge(target, guest);
+                result.duplicatesInImport++;
+            }
+
+            if (emailKey != null) {
+                importedByKey.putIfAbsent(emailKey, target);
+            }
+            if (phoneKey == null) {
+                phoneKey = phoneKey(guest.getFirstName(), guest.getLastName(), guest.getPhone());
+            }
+            if (phoneKey != null) {
+                importedByKey.putIfAbsent(phoneKey, target);
+            }
+            result.bySheetId.put(guest.getId(), target);
+        }
+        return result;
+    }
+
+    private Integer findExisting(String emailKey, Guest guest) {
+        if (emailKey != null && existingKeys.mightContain(emailKey)) {
+            Integer id = guestIdsByKey.get(emailKey);
+            if (id != null) {
+                return id;
+            }
+        }
+        String phoneKey = phoneKey(guest.getFirstName(), guest.getLastName(), guest.getPhone());
+        if (phoneKey != null && existingKeys.mightContain(phoneKey)) {
+            return guestIdsByKey.get(phoneKey);
+        }
+        return null;
+    }
+
+    /**
+     * Lower-cased, trimmed email without a "+tag" in the local part; Gmail addresses also lose the dots
+     * in the local part, since Gmail ignores them. Returns null for blank emails.
+     */
+    public static String emailKey(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        String normalised = email.trim().toLowerCase(Locale.ROOT);
+        int at = normalised.lastIndexOf('@');
+        if (at <= 0) {
+            return "e:" + normalised;
+        }
+        String local = normalised.substring(0, at);
+        String domain = normalised.substring(at + 1);
+        int plus = local.indexOf('+');
+        if (plus > 0) {
+            local = local.substring(0, plus);
+        }
+        if (domain.equals("gmail.com") || domain.equals("googlemail.com")) {
+            local = local.replace(".", "");
+            domain = "gmail.com";
+        }
+        return "e:" + local + "@" + domain;
+    }
+
+    /**
+     * Lower-cased first and last name and the digits of the phone number, with an international "00" prefix
+     * dropped so "+44 20 ..." and "0044 20 ..." agree. Returns null when a name or the number is missing or
+     * the number is too short.
+     */
+    public static String phoneKey(String firstName, String lastName, String phone) {
+        if (firstName == null || firstName.isBlank() || lastName == null || lastName.isBlank() || phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        int start = digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0' ? 2 : 0;
+        if (digits.length() - start < MIN_PHONE_DIGITS) {
+            return null;
+        }
+        return "p:" + firstName.trim().toLowerCase(Locale.ROOT) + ":" + lastName.trim().toLowerCase(Locale.ROOT) +
+                ":" + digits.substring(start);
+    }
+
+    private static Guest copyOf(Guest guest, int id) {
+        return new Guest(id, guest.getFirstName(), guest.getLastName(), blankToNull(guest.getEmail()),
+                guest.getPhone(), guest.getLoyaltyPoints(), guest.getNationality());
+    }
+
+    // Later rows win where they have a value; a blank never erases one, and the higher points balance is kept
+    private static void merge(Guest target, Guest row) {
+        if (!isBlank(row.getFirstName())) target.setFirstName(row.getFirstName());
+        if (!isBlank(row.getLastName())) target.setLastName(row.getLastName());
+        if (!isBlank(row.getPhone())) target.setPhone(row.getPhone());
+        if (!isBlank(row.getNationality())) target.setNationality(row.getNationality());
+        if (isBlank(target.getEmail()) && !isBlank(row.getEmail())) {
+            try {
+                target.setEmail(row.getEmail().trim());
+            } catch (IllegalArgumentException e) {
+                // Not an address; the row is still merged by its phone number
+            }
+        }
+        target.setLoyaltyPoints(Math.max(target.getLoyaltyPoints(), row.getLoyaltyPoints()));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String blankToNull(String value) {
+        return isBlank(value) ? null : value.trim();
+    }
+}
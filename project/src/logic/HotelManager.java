@@ -1,15 +1,22 @@
 package logic;
 
+import utils.DataSnapshot;
 import utils.ExcelImporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.ArrayList;
 import java.util.List;
 
 public class HotelManager {
-    private List<Room> rooms;
-    private List<Guest> guests;
-    private List<Booking> bookings;
+    // Lists are never modified in place, only replaced, so volatile is enough for
+    // PerformancePanel's workers to see a complete list while loadData runs
+    private volatile List<Room> rooms;
+    private volatile List<Guest> guests;
+    private volatile List<Booking> bookings;
 
     public HotelManager() {
         this.rooms = new ArrayList<>();
@@ -22,14 +29,85 @@ public class HotelManager {
     public List<Booking> getBookings() { return bookings; }
 
     public void loadData(String roomsFile, String guestsFile, String bookingsFile) {
+        importFromExcel(roomsFile, guestsFile, bookingsFile);
+    }
+
+    /**
+     * Like loadData, but reuses the snapshot file as long as the xlsx files are unchanged since it was written.
+     * Otherwise the files are imported and the snapshot is written again.
+     */
+    public void loadData(String roomsFile, String guestsFile, String bookingsFile, Path snapshotFile) {
+        long startTime = System.nanoTime();
+        long checksum;
+        try {
+            checksum = DataSnapshot.checksumOf(roomsFile, guestsFile, bookingsFile);
+        } catch (IOException e) {
+            System.err.println("Error loading data" + e.getMessage());
+            return;
+        }
+        DataSnapshot snapshot = DataSnapshot.read(snapshotFile);
+        if (snapshot != null && snapshot.getSourceChecksum() == checksum) {
+            this.rooms = snapshot.getRooms();
+            this.guests = snapshot.getGuests();
+            this.bookings = snapshot.getBookings();
+            System.out.println("Data loaded from snapshot in " + (System.nanoTime() - startTime) / 1000000.0 + " ms");
+            return;
+        }
+        if (importFromExcel(roomsFile, guestsFile, bookingsFile)) {
+            System.out.println("Data imported from Excel in " + (System.nanoTime() - startTime) / 1000000.0 + " ms");
+            try {
+                new DataSnapshot(rooms, guests, bookings, DataSnapshot.NO_WATERMARK, checksum).write(snapshotFile);
+            } catch (IOException e) {
+                System.err.println("Could not write snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean importFromExcel(String roomsFile, String guestsFile, String bookingsFile) {
         try{
             this.rooms = ExcelImporter.importRooms(roomsFile);
             this.guests = ExcelImporter.importGuests(guestsFile);
             this.bookings = ExcelImporter.importBookings(bookingsFile);
             System.out.println("Data loaded successfully");
+            return true;
         } catch (Exception e){
             System.err.println("Error loading data" + e.getMessage());
+            return false;
+        }
+    }
+
+    // Applies a delta (changed rows + deleted keys) from the database instead of reloading everything
+    public void applyRoomChanges(List<Room> upserts, Collection<Integer> deletedRoomNumbers) {
+        this.rooms = mergeChanges(rooms, upserts, deletedRoomNumbers, Room::getRoomNumber);
+    }
+
+    public void applyGuestChanges(List<Guest> upserts, Collection<Integer> deletedGuestIds) {
+        this.guests = mergeChanges(guests, upserts, deletedGuestIds, Guest::getId);
+    }
+
+    public void applyBookingChanges(List<Booking> upserts, Collection<Integer> deletedBookingIds) {
+        this.bookings = mergeChanges(bookings, upserts, deletedBookingIds, Booking::getBookingId);
+    }
+
+    /**
+     * Merges changed rows into a list keyed by id: deleted keys are dropped, upserts replace
+     * the row with the same key or are added. The result is ordered by key, like the getAll queries.
+     */
+    public static <T> List<T> mergeChanges(List<T> current, List<T> upserts, Collection<Integer> deletedKeys,
+                                           ToIntFunction<T> key) {
+        Map<Integer, T> byKey = new HashMap<>(current.size() + upserts.size());
+        for (T item : current) {
+            byKey.put(key.applyAsInt(item), item);
+        }
+        for (Integer deleted : deletedKeys) {
+            byKey.remove(deleted);
+        }
+        for (T item : upserts) {
+            byKey.put(key.applyAsInt(item), item);
         }
+        List<T> merged = new ArrayList<>(byKey.values());
+        merged.sort(Comparator.comparingInt(key));
+        return merged;
     }
 
     public Guest searchGuestById(int guestId) {
@@ -74,29 +152,70 @@ public class HotelManager {
         return sorted;
     }
 
+    // Column snapshots of the current lists, for scans and aggregates over large data sets
+    public BookingColumns toBookingColumns() {
+        return BookingColumns.of(bookings);
+    }
+
+    public RoomColumns toRoomColumns() {
+        return RoomColumns.of(rooms);
+    }
+
+    // Uses whichever RoomSorting strategy was measured fastest for this many rooms
+    public List<Room> sortRoomsByPrice() {
+        return RoomSorting.sortByPrice(rooms);
+    }
+
+    public List<Room> sortRoomsByPrice(RoomSorting.Strategy strategy) {
+        return strategy.sortByPrice(rooms);
+    }
+
+    public List<Room> sortRoomsByTypePriceNumber() {
+        return RoomSorting.sortByTypePriceNumber(rooms);
+    }
+
+    // The filters below switch to fork/join above ParallelFilter's calibrated size
     public List<Room> filterRoomsByType(RoomType roomType) {
-        return rooms.stream()
-                .filter(room -> room.getRoomType() == roomType)
-                .collect(Collectors.toList());
+        return ParallelFilter.filter(rooms, roomHasType(roomType));
     }
 
     public List<Room> filterRoomsByStatus(RoomStatus roomStatus) {
-        return rooms.stream()
-                .filter(room -> room.getStatus() == roomStatus)
-                .collect(Collectors.toList());
+        return ParallelFilter.filter(rooms, roomHasStatus(roomStatus));
     }
 
     public List<Booking> filterBookingsByStatus(BookingStatus bookingStatus) {
-        return bookings.stream()
-                .filter(booking -> booking.getStatus() == bookingStatus)
-                .collect(Collectors.toList());
+        return ParallelFilter.filter(bookings, bookingHasStatus(bookingStatus));
     }
 
     public List<Booking> filterBookingsByDateRange(java.time.LocalDate startDate, java.time.LocalDate endDate) {
-        return bookings.stream()
-                .filter(booking -> !booking.getCheckInDate().isBefore(startDate) &&
-                        !booking.getCheckInDate().isAfter(endDate))
-                .collect(Collectors.toList());
+        return ParallelFilter.filter(bookings, bookingChecksInBetween(startDate, endDate));
+    }
+
+    // Rooms matching every criterion, checked in a single pass over the list
+    public List<Room> filterRooms(List<Predicate<Room>> criteria) {
+        return ParallelFilter.filter(rooms, ParallelFilter.allOf(criteria));
+    }
+
+    public List<Booking> filterBookings(List<Predicate<Booking>> criteria) {
+        return ParallelFilter.filter(bookings, ParallelFilter.allOf(criteria));
+    }
+
+    public static Predicate<Room> roomHasType(RoomType roomType) {
+        return room -> room.getRoomType() == roomType;
+    }
+
+    public static Predicate<Room> roomHasStatus(RoomStatus roomStatus) {
+        return room -> room.getStatus() == roomStatus;
+    }
+
+    public static Predicate<Booking> bookingHasStatus(BookingStatus bookingStatus) {
+        return booking -> booking.getStatus() == bookingStatus;
+    }
+
+    // Check-in on or between the two dates
+    public static Predicate<Booking> bookingChecksInBetween(java.time.LocalDate startDate, java.time.LocalDate endDate) {
+        return booking -> !booking.getCheckInDate().isBefore(startDate) &&
+                !booking.getCheckInDate().isAfter(endDate);
     }
 
     private  Guest binarySearchGuest(List<Guest> sortedList, int guestId) {
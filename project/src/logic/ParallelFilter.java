@@ -0,0 +1,147 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Filters lists either sequentially or with fork/join over index ranges, whichever is faster for the size.
+ * Splitting only pays off once a list is large enough to cover the cost of forking, and where that point
+ * lies depends on the machine, so calibrate() measures it once at startup. Results keep the source order.
+ */
+public final class ParallelFilter {
+    // Used until calibration has run
+    private static final int DEFAULT_THRESHOLD = 50_000;
+    // Sizes tried during calibration, smallest first
+    private static final int[] CALIBRATION_SIZES = {2_000, 8_000, 32_000, 128_000, 512_000};
+    private static final int CALIBRATION_ROUNDS = 5;
+    // Leaves smaller than this cost more to fork than to scan
+    private static final int MIN_LEAF_SIZE = 1_024;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private ParallelFilter() {}
+
+    public static int getThreshold() { return threshold; }
+
+    // Runs in parallel only if the list is at least as large as the calibrated threshold
+    public static <T> List<T> filter(List<T> source, Predicate<? super T> predicate) {
+        return source.size() >= threshold ? filterParallel(source, predicate) : filterSequential(source, predicate);
+    }
+
+    public static <T> List<T> filterSequential(List<T> source, Predicate<? super T> predicate) {
+        List<T> result = new ArrayList<>();
+        for (T item : source) {
+            if (predicate.test(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    public static <T> List<T> filterParallel(List<T> source, Predicate<? super T> predicate) {
+        int leafSize = Math.max(MIN_LEAF_SIZE, source.size() / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        return ForkJoinPool.commonPool().invoke(new FilterTask<>(source, predicate, 0, source.size(), leafSize));
+    }
+
+    // All criteria in one predicate, so a combined filter walks the list once
+    public static <T> Predicate<T> allOf(List<? extends Predicate<? super T>> criteria) {
+        List<? extends Predicate<? super T>> copy = List.copyOf(criteria);
+        return item -> {
+            for (Predicate<? super T> criterion : copy) {
+                if (!criterion.test(item)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static class FilterTask<T> extends RecursiveTask<List<T>> {
+        private final List<T> source;
+        private final Predicate<? super T> predicate;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        FilterTask(List<T> source, Predicate<? super T> predicate, int from, int to, int leafSize) {
+            this.source = source;
+            this.predicate = predicate;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from <= leafSize) {
+                List<T> result = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    T item = source.get(i);
+                    if (predicate.test(item)) {
+                        result.add(item);
+                    }
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            FilterTask<T> left = new FilterTask<>(source, predicate, from, mid, leafSize);
+            left.fork();
+            List<T> right = new FilterTask<>(source, predicate, mid, to, leafSize).compute();
+            List<T> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    /**
+     * Measures sequential against parallel filtering on growing lists and sets the threshold to the first
+     * size where parallel is clearly faster. On a single core, or if parallel never wins, parallel mode is off.
+     */
+    public static int calibrate() {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2) {
+            threshold = Integer.MAX_VALUE;
+            return threshold;
+        }
+        List<Integer> sample = new ArrayList<>();
+        for (int i = 0; i < CALIBRATION_SIZES[CALIBRATION_SIZES.length - 1]; i++) {
+            sample.add(i);
+        }
+        Predicate<Integer> predicate = value -> (value * 31 & 7) < 3;
+
+        int found = Integer.MAX_VALUE;
+        for (int size : CALIBRATION_SIZES) {
+            List<Integer> list = sample.subList(0, size);
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            // Best of several rounds, so the first rounds also warm up the JIT
+            for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+                long start = System.nanoTime();
+                filterSequential(list, predicate);
+                sequential = Math.min(sequential, System.nanoTime() - start);
+                start = System.nanoTime();
+                filterParallel(list, predicate);
+                parallel = Math.min(parallel, System.nanoTime() - start);
+            }
+            if (parallel * 5 < sequential * 4) {
+                found = size;
+                break;
+            }
+        }
+        threshold = found;
+        return threshold;
+    }
+
+    // Calibrates on a daemon thread so startup does not wait for it
+    public static void calibrateInBackground() {
+        Thread thread = new Thread(() -> {
+            int result = calibrate();
+            System.out.println("Parallel filter threshold: " +
+                    (result == Integer.MAX_VALUE ? "off (sequential is faster here)" : result + " items"));
+        }, "filter-calibration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,144 @@
+package logic;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory room calendars that can be booked from many threads at once.
+ * Each room's calendar is only touched while holding that room's lock stripe, so two
+ * reservations for the same room are checked and inserted one after the other, while
+ * reservations for different rooms run fully in parallel.
+ */
+public class ReservationEngine {
+    private final RoomLockStripes locks;
+    // Room number -> stays ordered by check-in date, never overlapping; guarded by the room's stripe
+    private final Map<Integer, TreeMap<LocalDate, Booking>> calendars = new ConcurrentHashMap<>();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ReservationEngine() {
+        this(RoomLockStripes.shared());
+    }
+
+    public ReservationEngine(RoomLockStripes locks) {
+        this.locks = locks;
+    }
+
+    // Fills the calendars from existing bookings; cancelled and no-show bookings do not hold a room
+    public void load(List<Booking> bookings) {
+        for (Booking booking : bookings) {
+            if (occupiesRoom(booking)) {
+                tryReserve(booking);
+            }
+        }
+    }
+
+    public boolean isAvailable(int roomNumber, LocalDate checkIn, LocalDate checkOut) {
+        RoomLockStripes.Held held = locks.lock(roomNumber);
+        try {
+            return findConflict(calendar(roomNumber), checkIn, checkOut, null) == null;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // Adds the booking to its room's calendar if the dates are free. Returns false on a conflict.
+    public boolean tryReserve(Booking booking) {
+        int roomNumber = booking.getRoom().getRoomNumber();
+        RoomLockStripes.Held held = locks.lock(roomNumber);
+        try {
+            TreeMap<LocalDate, Booking> calendar = calendar(roomNumber);
+            if (findConflict(calendar, booking.getCheckInDate(), booking.getCheckOutDate(), null) != null) {
+                rejected.increment();
+                return false;
+            }
+            calendar.put(booking.getCheckInDate(), booking);
+            accepted.increment();
+            return true;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    public boolean release(Booking booking) {
+        int roomNumber = booking.getRoom().getRoomNumber();
+        RoomLockStripes.Held held = locks.lock(roomNumber);
+        try {
+            return calendar(roomNumber).remove(booking.getCheckInDate(), booking);
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Moves a booking to another room and/or other dates. Both rooms are locked (in stripe order),
+     * so the move either happens completely or not at all. Returns false if the new slot is taken.
+     */
+    public boolean tryMove(Booking booking, Room newRoom, LocalDate newCheckIn, LocalDate newCheckOut) {
+        int oldRoomNumber = booking.getRoom().getRoomNumber();
+        int newRoomNumber = newRoom.getRoomNumber();
+        RoomLockStripes.Held held = locks.lock(oldRoomNumber, newRoomNumber);
+        try {
+            TreeMap<LocalDate, Booking> target = calendar(newRoomNumber);
+            if (findConflict(target, newCheckIn, newCheckOut, booking) != null) {
+                rejected.increment();
+                return false;
+            }
+            calendar(oldRoomNumber).remove(booking.getCheckInDate(), booking);
+            booking.setRoom(newRoom);
+            // Order matters: setCheckOutDate only accepts dates after the current check-in
+            if (newCheckIn.isBefore(booking.getCheckOutDate())) {
+                booking.setCheckInDate(newCheckIn);
+                booking.setCheckOutDate(newCheckOut);
+            } else {
+                booking.setCheckOutDate(newCheckOut);
+                booking.setCheckInDate(newCheckIn);
+            }
+            target.put(newCheckIn, booking);
+            accepted.increment();
+            return true;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // Copy of a room's stays in check-in order
+    public List<Booking> getBookingsForRoom(int roomNumber) {
+        RoomLockStripes.Held held = locks.lock(roomNumber);
+        try {
+            return new ArrayList<>(calendar(roomNumber).values());
+        } finally {
+            held.unlock();
+        }
+    }
+
+    public Set<Integer> getRoomNumbers() { return calendars.keySet(); }
+    public long getAcceptedCount() { return accepted.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+
+    private TreeMap<LocalDate, Booking> calendar(int roomNumber) {
+        return calendars.computeIfAbsent(roomNumber, k -> new TreeMap<>());
+    }
+
+    /**
+     * Stays never overlap, so only the last stay starting before checkOut can overlap [checkIn, checkOut).
+     * ignore is the booking being moved, which must not conflict with itself.
+     */
+    private Booking findConflict(TreeMap<LocalDate, Booking> calendar, LocalDate checkIn, LocalDate checkOut, Booking ignore) {
+        Map.Entry<LocalDate, Booking> entry = calendar.lowerEntry(checkOut);
+        while (entry != null) {
+            Booking existing = entry.getValue();
+            if (existing != ignore) {
+                return existing.getCheckOutDate().isAfter(checkIn) ? existing : null;
+            }
+            entry = calendar.lowerEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    private static boolean occupiesRoom(Booking booking) {
+        return booking.getStatus() != BookingStatus.CANCELLED && booking.getStatus() != BookingStatus.NO_SHOW;
+    }
+}
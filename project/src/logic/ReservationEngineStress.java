@@ -0,0 +1,98 @@
+package logic;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Concurrency check for ReservationEngine: many threads fire random reservations at a shared
+ * set of rooms, then every room calendar is verified to contain no overlapping stays.
+ * The run is repeated with 1, 2, 4 ... threads up to the number of cores to show how throughput scales.
+ */
+public class ReservationEngineStress {
+    private static final int MAX_NIGHTS = 7;
+
+    public static String run(int roomCount, int daysAhead, int operationsPerThread) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Booking engine stress: %d rooms, %d days, %d ops/thread%n",
+                roomCount, daysAhead, operationsPerThread));
+
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+            ReservationEngine engine = new ReservationEngine(new RoomLockStripes(cores * 16));
+            long start = System.nanoTime();
+            runThreads(engine, threads, roomCount, daysAhead, operationsPerThread);
+            double ms = (System.nanoTime() - start) / 1_000_000.0;
+
+            int overlaps = countOverlaps(engine);
+            double opsPerMs = threads * (double) operationsPerThread / ms;
+            if (threads == 1) {
+                baseline = opsPerMs;
+            }
+            report.append(String.format("  %2d threads: %8.1f ms, %8.0f ops/ms (x%.2f), accepted %d, rejected %d, overlaps %d%n",
+                    threads, ms, opsPerMs, opsPerMs / baseline,
+                    engine.getAcceptedCount(), engine.getRejectedCount(), overlaps));
+            if (overlaps > 0) {
+                report.append("  FAILED: overlapping stays were created\n");
+            }
+        }
+        return report.toString();
+    }
+
+    private static void runThreads(ReservationEngine engine, int threads, int roomCount, int daysAhead,
+                                   int operationsPerThread) throws InterruptedException {
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 1; i <= roomCount; i++) {
+            rooms.add(new Room(i, RoomType.DOUBLE, 100.0, 2, false, true));
+        }
+        LocalDate firstDay = LocalDate.now();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            // Guest keeps a plain ArrayList of bookings, so every thread gets its own
+            Guest guest = new Guest(t + 1, "Stress", "Guest" + t, "", "", 0, "");
+            futures.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                ready.countDown();
+                go.await();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    Room room = rooms.get(random.nextInt(roomCount));
+                    LocalDate checkIn = firstDay.plusDays(random.nextInt(daysAhead));
+                    LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(MAX_NIGHTS));
+                    engine.tryReserve(new Booking(0, guest, room, checkIn, checkOut, 1));
+                }
+                return null;
+            }));
+        }
+        ready.await();
+        go.countDown();
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stress worker failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Independent check: compares every pair of neighbouring stays in each room
+    private static int countOverlaps(ReservationEngine engine) {
+        int overlaps = 0;
+        for (int roomNumber : engine.getRoomNumbers()) {
+            List<Booking> stays = engine.getBookingsForRoom(roomNumber);
+            for (int i = 1; i < stays.size(); i++) {
+                if (stays.get(i).getCheckInDate().isBefore(stays.get(i - 1).getCheckOutDate())) {
+                    overlaps++;
+                }
+            }
+        }
+        return overlaps;
+    }
+}
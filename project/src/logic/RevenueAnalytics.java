@@ -0,0 +1,232 @@
+package logic;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Revenue, room nights sold and the metrics derived from them (occupancy, ADR, RevPAR), per night and
+ * room type. Each booking adds its price, in cents and spread evenly over its nights, to per-day
+ * accumulators; the contribution is remembered, so an updated, cancelled or deleted booking is
+ * subtracted again exactly, without rebuilding. Queries sum the days of a period, which costs the
+ * number of days asked for, not the number of bookings.
+ * Bookings count while they are on the books: confirmed, checked in or checked out.
+ */
+public class RevenueAnalytics {
+    // Days per accumulator block; blocks are created for the days bookings actually touch
+    private static final int BLOCK_DAYS = 256;
+    private static final RoomType[] TYPES = RoomType.values();
+
+    public enum Granularity { DAY, WEEK, MONTH }
+
+    // Nights sold per room type and day, and the revenue for them
+    private static class Block {
+        final long[] revenueCents = new long[BLOCK_DAYS * TYPES.length];
+        final int[] nightsSold = new int[BLOCK_DAYS * TYPES.length];
+    }
+
+    // What one booking added, so it can be taken out again after the booking object has changed
+    private static class Contribution {
+        final int type;
+        final long checkInDay;
+        final int nights;
+        final long cents;
+
+        Contribution(int type, long checkInDay, int nights, long cents) {
+            this.type = type;
+            this.checkInDay = checkInDay;
+            this.nights = nights;
+            this.cents = cents;
+        }
+    }
+
+    /** Totals for one period, [start, end). Money is in cents. */
+    public static class Period {
+        private final LocalDate start;
+        private final LocalDate end;
+        private long revenueCents;
+        private long roomNightsSold;
+        private long roomNightsAvailable;
+
+        Period(LocalDate start, LocalDate end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public LocalDate getStart() { return start; }
+        public LocalDate getEnd() { return end; }
+        public long getRevenueCents() { return revenueCents; }
+        public long getRoomNightsSold() { return roomNightsSold; }
+        public long getRoomNightsAvailable() { return roomNightsAvailable; }
+
+        public double getOccupancyPercent() {
+            return roomNightsAvailable == 0 ? 0 : roomNightsSold * 100.0 / roomNightsAvailable;
+        }
+
+        // Average daily rate: revenue per room night sold
+        public long getAdrCents() {
+            return roomNightsSold == 0 ? 0 : Math.round((double) revenueCents / roomNightsSold);
+        }
+
+        // Revenue per available room night
+        public long getRevParCents() {
+            return roomNightsAvailable == 0 ? 0 : Math.round((double) revenueCents / roomNightsAvailable);
+        }
+    }
+
+    private final Map<Long, Block> blocks = new HashMap<>();
+    private final Map<Integer, Contribution> contributions = new HashMap<>();
+    private final int[] roomsByType = new int[TYPES.length];
+    private final Map<Integer, RoomType> roomTypes = new HashMap<>();
+
+    public RevenueAnalytics() {}
+
+    // One pass over the bookings
+    public synchronized void rebuild(Collection<Room> rooms, Collection<Booking> bookings) {
+        blocks.clear();
+        contributions.clear();
+        setRooms(rooms);
+        for (Booking booking : bookings) {
+            applyBooking(booking);
+        }
+    }
+
+    /**
+     * The room inventory, which occupancy and RevPAR are measured against. Bookings already counted keep the
+     * room type they were counted under until they are applied again.
+     */
+    public synchronized void setRooms(Collection<Room> rooms) {
+        Arrays.fill(roomsByType, 0);
+        roomTypes.clear();
+        for (Room room : rooms) {
+            roomsByType[room.getRoomType().ordinal()]++;
+            roomTypes.put(room.getRoomNumber(), room.getRoomType());
+        }
+    }
+
+    // Adds a new booking, or replaces what an earlier version of it contributed
+    public synchronized void applyBooking(Booking booking) {
+        Contribution previous = contributions.remove(booking.getBookingId());
+        if (previous != null) {
+            add(previous, -1);
+        }
+        if (!countsAsRevenue(booking.getStatus())) {
+            return;
+        }
+        long checkIn = booking.getCheckInDate().toEpochDay();
+        int nights = (int) (booking.getCheckOutDate().toEpochDay() - checkIn);
+        if (nights <= 0) {
+            return;
+        }
+        // The room list knows the type even when the booking only carries the room number (Excel imports)
+        RoomType type = roomTypes.getOrDefault(booking.getRoom().getRoomNumber(), booking.getRoom().getRoomType());
+        Contribution contribution = new Contribution(type.ordinal(), checkIn, nights,
+                Math.round(booking.getTotalPrice() * 100));
+        contributions.put(booking.getBookingId(), contribution);
+        add(contribution, 1);
+    }
+
+    public synchronized void removeBooking(int bookingId) {
+        Contribution previous = contributions.remove(bookingId);
+        if (previous != null) {
+            add(previous, -1);
+        }
+    }
+
+    // Applies a delta from the database, as returned by BookingDAO.findChangedSince
+    public synchronized void applyBookingChanges(List<Booking> upserts, Collection<Integer> deletedBookingIds) {
+        for (Integer bookingId : deletedBookingIds) {
+            removeBooking(bookingId);
+        }
+        for (Booking booking : upserts) {
+            applyBooking(booking);
+        }
+    }
+
+    /**
+     * Totals per day, ISO week or calendar month over [from, to); the first and last periods are cut off at
+     * from and to. roomType null means all room types.
+     */
+    public synchronized List<Period> query(LocalDate from, LocalDate to, Granularity granularity, RoomType roomType) {
+        List<Period> periods = new ArrayList<>();
+        LocalDate start = from;
+        while (start.isBefore(to)) {
+            LocalDate end = switch (granularity) {
+                case DAY -> start.plusDays(1);
+                case WEEK -> start.plusDays(DayOfWeek.SUNDAY.getValue() - start.getDayOfWeek().getValue() + 1);
+                case MONTH -> start.withDayOfMonth(1).plusMonths(1);
+            };
+            if (end.isAfter(to)) {
+                end = to;
+            }
+            periods.add(total(start, end, roomType));
+            start = end;
+        }
+        return periods;
+    }
+
+    // Totals over [from, to) for each room type
+    public synchronized Map<RoomType, Period> byRoomType(LocalDate from, LocalDate to) {
+        Map<RoomType, Period> totals = new EnumMap<>(RoomType.class);
+        for (RoomType type : TYPES) {
+            totals.put(type, total(from, to, type));
+        }
+        return totals;
+    }
+
+    public synchronized int getBookingCount() {
+        return contributions.size();
+    }
+
+    // Totals over [from, to) as one period; roomType null means all room types
+    public synchronized Period total(LocalDate from, LocalDate to, RoomType roomType) {
+        Period period = new Period(from, to);
+        int firstType = roomType == null ? 0 : roomType.ordinal();
+        int lastType = roomType == null ? TYPES.length - 1 : roomType.ordinal();
+        long firstDay = from.toEpochDay();
+        long lastDay = to.toEpochDay();
+        for (int type = firstType; type <= lastType; type++) {
+            period.roomNightsAvailable += (lastDay - firstDay) * roomsByType[type];
+        }
+        long day = firstDay;
+        while (day < lastDay) {
+            long blockIndex = Math.floorDiv(day, BLOCK_DAYS);
+            long blockEnd = Math.min(lastDay, (blockIndex + 1) * BLOCK_DAYS);
+            Block block = blocks.get(blockIndex);
+            if (block != null) {
+                for (long d = day; d < blockEnd; d++) {
+                    int base = Math.floorMod(d, BLOCK_DAYS) * TYPES.length;
+                    for (int type = firstType; type <= lastType; type++) {
+                        period.revenueCents += block.revenueCents[base + type];
+                        period.roomNightsSold += block.nightsSold[base + type];
+                    }
+                }
+            }
+            day = blockEnd;
+        }
+        return period;
+    }
+
+    // Adds (sign 1) or subtracts (sign -1) a booking's nights; the cents left over after an even split go to the first nights
+    private void add(Contribution contribution, int sign) {
+        long perNight = contribution.cents / contribution.nights;
+        long remainder = contribution.cents % contribution.nights;
+        Block block = null;
+        long blockIndex = Long.MIN_VALUE;
+        for (int night = 0; night < contribution.nights; night++) {
+            long day = contribution.checkInDay + night;
+            if (Math.floorDiv(day, BLOCK_DAYS) != blockIndex) {
+                blockIndex = Math.floorDiv(day, BLOCK_DAYS);
+                block = blocks.computeIfAbsent(blockIndex, index -> new Block());
+            }
+            int slot = Math.floorMod(day, BLOCK_DAYS) * TYPES.length + contribution.type;
+            block.revenueCents[slot] += sign * (perNight + (night < remainder ? 1 : 0));
+            block.nightsSold[slot] += sign;
+        }
+    }
+
+    private static boolean countsAsRevenue(BookingStatus status) {
+        return status == BookingStatus.CONFIRMED || status == BookingStatus.CHECKED_IN
+                || status == BookingStatus.CHECKED_OUT;
+    }
+}
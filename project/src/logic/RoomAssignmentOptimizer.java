@@ -0,0 +1,242 @@
+package logic;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Re-packs future confirmed bookings of one room type into its rooms so that free nights form long blocks
+ * instead of short gaps that cannot be sold.
+ *
+ * Bookings are placed in check-in order, each into the eligible room that became free most recently
+ * before its check-in (best fit). Placing intervals in start order never needs more rooms than the
+ * busiest night, and best fit leaves the other rooms empty for as long as possible.
+ * Guests already in house and arrivals due today stay where they are.
+ * A booking may only move to a room that holds its party and has everything its current room has
+ * (balcony, amenities), so nobody is downgraded. Prices are not touched.
+ *
+ * If that strands a booking with special needs, a second pass prefers the plainest free room instead.
+ * A pass is O(bookings x rooms): a year of bookings over 300 rooms plans in a few hundred milliseconds,
+ * so it can run on every new booking request: add the candidate booking to the list and check isFeasible().
+ */
+public class RoomAssignmentOptimizer {
+    // Free stretches of this many nights or fewer between two stays are counted as fragmentation
+    public static final int SHORT_GAP_NIGHTS = 2;
+
+    public static class AssignmentPlan {
+        private final RoomType roomType;
+        private final Map<Booking, Room> moves;
+        private final boolean feasible;
+        private final int shortGapsBefore;
+        private final int shortGapsAfter;
+        private final long longestFreeBefore;
+        private final long longestFreeAfter;
+
+        AssignmentPlan(RoomType roomType, Map<Booking, Room> moves, boolean feasible, int shortGapsBefore,
+                       int shortGapsAfter, long longestFreeBefore, long longestFreeAfter) {
+            this.roomType = roomType;
+            this.moves = moves;
+            this.feasible = feasible;
+            this.shortGapsBefore = shortGapsBefore;
+            this.shortGapsAfter = shortGapsAfter;
+            this.longestFreeBefore = longestFreeBefore;
+            this.longestFreeAfter = longestFreeAfter;
+        }
+
+        public RoomType getRoomType() { return roomType; }
+        // Bookings that change room, with their new room; empty when nothing improves or the plan is infeasible
+        public Map<Booking, Room> getMoves() { return moves; }
+        // False when the bookings cannot all be placed under the room constraints
+        public boolean isFeasible() { return feasible; }
+        public int getShortGapsBefore() { return shortGapsBefore; }
+        public int getShortGapsAfter() { return shortGapsAfter; }
+        public long getLongestFreeBefore() { return longestFreeBefore; }
+        public long getLongestFreeAfter() { return longestFreeAfter; }
+
+        @Override
+        public String toString() {
+            if (!feasible) {
+                return roomType + ": bookings do not fit the rooms, no changes";
+            }
+            return String.format("%s: %d moves, short gaps %d -> %d, longest free block %d -> %d nights",
+                    roomType, moves.size(), shortGapsBefore, shortGapsAfter, longestFreeBefore, longestFreeAfter);
+        }
+    }
+
+    /**
+     * Plans a new room for every future confirmed booking of the given type.
+     * Bookings of other types, and bookings that are cancelled or in the past, are ignored.
+     */
+    public AssignmentPlan plan(RoomType roomType, List<Room> rooms, List<Booking> bookings, LocalDate today) {
+        List<Room> typeRooms = new ArrayList<>();
+        for (Room room : rooms) {
+            if (room.getRoomType() == roomType) {
+                typeRooms.add(room);
+            }
+        }
+        typeRooms.sort(Comparator.comparingInt(Room::getRoomNumber));
+        Map<Integer, Integer> indexByNumber = new HashMap<>();
+        for (int i = 0; i < typeRooms.size(); i++) {
+            indexByNumber.put(typeRooms.get(i).getRoomNumber(), i);
+        }
+
+        long todayDay = today.toEpochDay();
+        long[] freeFrom = new long[typeRooms.size()];
+        Arrays.fill(freeFrom, todayDay);
+        List<Booking> movable = new ArrayList<>();
+        List<List<long[]>> before = emptyCalendars(typeRooms.size());
+        List<List<long[]>> fixed = emptyCalendars(typeRooms.size());
+        long horizon = todayDay;
+
+        for (Booking booking : bookings) {
+            Integer roomIndex = indexByNumber.get(booking.getRoom().getRoomNumber());
+            if (roomIndex == null || !occupiesRoom(booking) || !booking.getCheckOutDate().isAfter(today)) {
+                continue;
+            }
+            long[] stay = {booking.getCheckInDate().toEpochDay(), booking.getCheckOutDate().toEpochDay()};
+            before.get(roomIndex).add(stay);
+            horizon = Math.max(horizon, stay[1]);
+            if (booking.getStatus() == BookingStatus.CONFIRMED && booking.getCheckInDate().isAfter(today)) {
+                movable.add(booking);
+            } else {
+                // In house or arriving today: the room is taken until they leave
+                fixed.get(roomIndex).add(stay);
+                freeFrom[roomIndex] = Math.max(freeFrom[roomIndex], stay[1]);
+            }
+        }
+
+        movable.sort(Comparator.comparing(Booking::getCheckInDate)
+                .thenComparing(Booking::getCheckOutDate, Comparator.reverseOrder()));
+
+        Map<Booking, Room> moves = new LinkedHashMap<>();
+        List<List<long[]>> after = assign(typeRooms, indexByNumber, movable, fixed, freeFrom, false, moves);
+        if (after == null) {
+            // Best fit can hand the only balcony room to a guest who did not need it; retry saving the better rooms
+            moves.clear();
+            after = assign(typeRooms, indexByNumber, movable, fixed, freeFrom, true, moves);
+        }
+        if (after == null) {
+            long longest = longestFree(before, todayDay, horizon);
+            int gaps = countShortGaps(before);
+            return new AssignmentPlan(roomType, new LinkedHashMap<>(), false, gaps, gaps, longest, longest);
+        }
+        return new AssignmentPlan(roomType, moves, true, countShortGaps(before), countShortGaps(after),
+                longestFree(before, todayDay, horizon), longestFree(after, todayDay, horizon));
+    }
+
+    /**
+     * One placement pass. Fills moves and returns the resulting calendars (fixed stays plus placed ones),
+     * or null if some booking found no room. With leastCapableFirst, the plainest free room is preferred
+     * over the tightest fit.
+     */
+    private static List<List<long[]>> assign(List<Room> rooms, Map<Integer, Integer> indexByNumber, List<Booking> movable,
+                                             List<List<long[]>> fixed, long[] initialFreeFrom, boolean leastCapableFirst,
+                                             Map<Booking, Room> moves) {
+        long[] freeFrom = initialFreeFrom.clone();
+        List<List<long[]>> calendars = emptyCalendars(rooms.size());
+        for (int r = 0; r < rooms.size(); r++) {
+            calendars.get(r).addAll(fixed.get(r));
+        }
+        int[] capability = new int[rooms.size()];
+        for (int r = 0; r < rooms.size(); r++) {
+            Room room = rooms.get(r);
+            capability[r] = room.getMaxOccupancy() + (room.hasBalcony() ? 1 : 0) + room.getAmenities().size();
+        }
+        // Rooms a booking may use depend only on its current room and party size
+        Map<Long, boolean[]> eligibleCache = new HashMap<>();
+
+        for (Booking booking : movable) {
+            int current = indexByNumber.get(booking.getRoom().getRoomNumber());
+            long cacheKey = ((long) current << 32) | booking.getNumberOfGuests();
+            boolean[] eligible = eligibleCache.computeIfAbsent(cacheKey,
+                    key -> eligibleRooms(rooms, rooms.get(current), booking.getNumberOfGuests()));
+
+            long checkIn = booking.getCheckInDate().toEpochDay();
+            int best = -1;
+            for (int r = 0; r < rooms.size(); r++) {
+                if (!eligible[r] || freeFrom[r] > checkIn) {
+                    continue;
+                }
+                if (best < 0) {
+                    best = r;
+                    continue;
+                }
+                if (leastCapableFirst && capability[r] != capability[best]) {
+                    if (capability[r] < capability[best]) {
+                        best = r;
+                    }
+                    continue;
+                }
+                // Tightest fit wins; on a tie keep the booking where it is
+                if (freeFrom[r] > freeFrom[best] || (freeFrom[r] == freeFrom[best] && r == current)) {
+                    best = r;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+
+            long checkOut = booking.getCheckOutDate().toEpochDay();
+            freeFrom[best] = checkOut;
+            calendars.get(best).add(new long[]{checkIn, checkOut});
+            if (best != current) {
+                moves.put(booking, rooms.get(best));
+            }
+        }
+        return calendars;
+    }
+
+    private static boolean occupiesRoom(Booking booking) {
+        BookingStatus status = booking.getStatus();
+        return status == BookingStatus.CONFIRMED || status == BookingStatus.CHECKED_IN;
+    }
+
+    private static boolean[] eligibleRooms(List<Room> rooms, Room current, int guests) {
+        Set<String> required = new HashSet<>(current.getAmenities());
+        boolean[] eligible = new boolean[rooms.size()];
+        for (int r = 0; r < rooms.size(); r++) {
+            Room room = rooms.get(r);
+            eligible[r] = room.getMaxOccupancy() >= guests
+                    && (room.hasBalcony() || !current.hasBalcony())
+                    && room.getAmenities().containsAll(required);
+        }
+        return eligible;
+    }
+
+    private static List<List<long[]>> emptyCalendars(int rooms) {
+        List<List<long[]>> calendars = new ArrayList<>(rooms);
+        for (int i = 0; i < rooms; i++) {
+            calendars.add(new ArrayList<>());
+        }
+        return calendars;
+    }
+
+    // Free stretches of 1..SHORT_GAP_NIGHTS nights between two stays in the same room
+    private static int countShortGaps(List<List<long[]>> calendars) {
+        int gaps = 0;
+        for (List<long[]> stays : calendars) {
+            stays.sort(Comparator.comparingLong(stay -> stay[0]));
+            for (int i = 1; i < stays.size(); i++) {
+                long gap = stays.get(i)[0] - stays.get(i - 1)[1];
+                if (gap > 0 && gap <= SHORT_GAP_NIGHTS) {
+                    gaps++;
+                }
+            }
+        }
+        return gaps;
+    }
+
+    // Longest run of free nights in any room between today and the last check-out
+    private static long longestFree(List<List<long[]>> calendars, long from, long to) {
+        long longest = 0;
+        for (List<long[]> stays : calendars) {
+            stays.sort(Comparator.comparingLong(stay -> stay[0]));
+            long cursor = from;
+            for (long[] stay : stays) {
+                longest = Math.max(longest, stay[0] - cursor);
+                cursor = Math.max(cursor, stay[1]);
+            }
+            longest = Math.max(longest, to - cursor);
+        }
+        return longest;
+    }
+}
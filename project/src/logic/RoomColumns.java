@@ -0,0 +1,79 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only column snapshot of rooms, the counterpart of BookingColumns.
+ * Prices are cents; types and statuses are enum ordinals.
+ */
+public class RoomColumns {
+    private final int size;
+    private final int[] roomNumber;
+    private final byte[] type;
+    private final long[] priceCents;
+    private final int[] maxOccupancy;
+    private final boolean[] balcony;
+    private final byte[] status;
+
+    private RoomColumns(List<Room> rooms) {
+        size = rooms.size();
+        roomNumber = new int[size];
+        type = new byte[size];
+        priceCents = new long[size];
+        maxOccupancy = new int[size];
+        balcony = new boolean[size];
+        status = new byte[size];
+        for (int i = 0; i < size; i++) {
+            Room room = rooms.get(i);
+            roomNumber[i] = room.getRoomNumber();
+            type[i] = (byte) room.getRoomType().ordinal();
+            priceCents[i] = Math.round(room.getRoomPricePerNight() * 100);
+            maxOccupancy[i] = room.getMaxOccupancy();
+            balcony[i] = room.hasBalcony();
+            status[i] = (byte) room.getStatus().ordinal();
+        }
+    }
+
+    public static RoomColumns of(List<Room> rooms) {
+        return new RoomColumns(rooms);
+    }
+
+    public int size() { return size; }
+    public int getRoomNumber(int row) { return roomNumber[row]; }
+    public RoomType getRoomType(int row) { return RoomType.values()[type[row]]; }
+    public long getPriceCents(int row) { return priceCents[row]; }
+    public int getMaxOccupancy(int row) { return maxOccupancy[row]; }
+    public boolean hasBalcony(int row) { return balcony[row]; }
+    public RoomStatus getStatus(int row) { return RoomStatus.values()[status[row]]; }
+
+    // Rooms per type, indexed by RoomType ordinal
+    public int[] countByType() {
+        int[] counts = new int[RoomType.values().length];
+        for (int i = 0; i < size; i++) {
+            counts[type[i]]++;
+        }
+        return counts;
+    }
+
+    public int countStatus(RoomStatus roomStatus) {
+        int wanted = roomStatus.ordinal();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += status[i] == wanted ? 1 : 0;
+        }
+        return count;
+    }
+
+    // Row indexes of rooms priced between the two amounts (in cents, inclusive) that fit the party
+    public int[] selectPriceBetween(long minCents, long maxCents, int guests) {
+        int[] selection = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            selection[count] = i;
+            long price = priceCents[i];
+            count += (price >= minCents ? 1 : 0) & (price <= maxCents ? 1 : 0) & (maxOccupancy[i] >= guests ? 1 : 0);
+        }
+        return Arrays.copyOf(selection, count);
+    }
+}
@@ -0,0 +1,69 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by all rooms: a room number always maps to the same stripe,
+ * so operations on the same room are serialised while most other rooms proceed in parallel.
+ * Several rooms are locked in stripe order, which rules out deadlocks between two movers.
+ */
+public class RoomLockStripes {
+    private static final RoomLockStripes SHARED = new RoomLockStripes(Runtime.getRuntime().availableProcessors() * 16);
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public RoomLockStripes(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;   // next power of two
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    // Stripes used for booking writes in this process (BookingDAO and ReservationEngine)
+    public static RoomLockStripes shared() { return SHARED; }
+
+    public int stripeCount() { return stripes.length; }
+
+    private int stripeIndex(int roomNumber) {
+        int h = roomNumber * 0x9E3779B9;   // spread consecutive room numbers over the stripes
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Locks the stripes of all given rooms and returns a handle that unlocks them again:
+     * RoomLockStripes.Held held = stripes.lock(room); try { ... } finally { held.unlock(); }
+     */
+    public Held lock(int... roomNumbers) {
+        int[] indexes = new int[roomNumbers.length];
+        for (int i = 0; i < roomNumbers.length; i++) {
+            indexes[i] = stripeIndex(roomNumbers[i]);
+        }
+        indexes = Arrays.stream(indexes).sorted().distinct().toArray();
+
+        for (int index : indexes) {
+            stripes[index].lock();
+        }
+        return new Held(indexes);
+    }
+
+    public class Held {
+        private final int[] indexes;
+        private boolean released;
+
+        private Held(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        public void unlock() {
+            if (released) return;
+            released = true;
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package logic;
+
+import java.util.*;
+
+/**
+ * Sorting strategies for rooms. The price sorts work on primitive keys (price in cents) and an index
+ * permutation, so no comparator calls or boxing happen per comparison:
+ * PARALLEL packs key and index into one long and uses Arrays.parallelSort, RADIX is an LSD radix sort.
+ * benchmark() measures all of them for a range of sizes and remembers the fastest per size,
+ * which sortByPrice() then uses.
+ */
+public final class RoomSorting {
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+    // Below this the comparator sort wins until benchmark() says otherwise
+    private static final int DEFAULT_PRIMITIVE_SORT_SIZE = 10_000;
+
+    // Type in enum order, then price, then room number; the default order of the Rooms table
+    public static final Comparator<Room> BY_TYPE_PRICE_NUMBER = Comparator
+            .comparing(Room::getRoomType)
+            .thenComparingDouble(Room::getRoomPricePerNight)
+            .thenComparingInt(Room::getRoomNumber);
+
+    public enum Strategy {
+        LIST_SORT("List.sort (TimSort)") {
+            @Override
+            public List<Room> sortByPrice(List<Room> rooms) {
+                List<Room> sorted = new ArrayList<>(rooms);
+                sorted.sort(Comparator.comparingDouble(Room::getRoomPricePerNight));
+                return sorted;
+            }
+        },
+        PARALLEL("Arrays.parallelSort on packed keys") {
+            @Override
+            public List<Room> sortByPrice(List<Room> rooms) {
+                return permute(rooms, parallelOrderByPrice(rooms));
+            }
+        },
+        RADIX("LSD radix on price cents") {
+            @Override
+            public List<Room> sortByPrice(List<Room> rooms) {
+                return permute(rooms, radixOrderByPrice(rooms));
+            }
+        };
+
+        private final String label;
+
+        Strategy(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+
+        // Returns a new list ordered by price, ascending; rooms with the same price keep their order
+        public abstract List<Room> sortByPrice(List<Room> rooms);
+    }
+
+    // Fastest strategy measured for each benchmarked size; empty until benchmark() runs
+    private static volatile NavigableMap<Integer, Strategy> fastestBySize = new TreeMap<>();
+
+    private RoomSorting() {}
+
+    public static List<Room> sortByPrice(List<Room> rooms) {
+        return strategyFor(rooms.size()).sortByPrice(rooms);
+    }
+
+    public static List<Room> sortByTypePriceNumber(List<Room> rooms) {
+        List<Room> sorted = new ArrayList<>(rooms);
+        sorted.sort(BY_TYPE_PRICE_NUMBER);
+        return sorted;
+    }
+
+    // Strategy measured fastest for the nearest benchmarked size at or below n
+    public static Strategy strategyFor(int n) {
+        NavigableMap<Integer, Strategy> measured = fastestBySize;
+        Map.Entry<Integer, Strategy> entry = measured.floorEntry(n);
+        if (entry == null) {
+            entry = measured.ceilingEntry(n);
+        }
+        if (entry != null) {
+            return entry.getValue();
+        }
+        return n < DEFAULT_PRIMITIVE_SORT_SIZE ? Strategy.LIST_SORT : Strategy.RADIX;
+    }
+
+    // Orders table cells holding a RoomType (or its name) by enum order instead of alphabetically
+    public static Comparator<Object> roomTypeCellOrder() {
+        return Comparator.comparingInt(cell -> cell instanceof RoomType type
+                ? type.ordinal() : RoomType.valueOf(cell.toString()).ordinal());
+    }
+
+    // Sortable int key: price in cents with the sign bit flipped, so unsigned order is numeric order
+    private static int priceKey(Room room) {
+        return (int) Math.round(room.getRoomPricePerNight() * 100) ^ Integer.MIN_VALUE;
+    }
+
+    static int[] parallelOrderByPrice(List<Room> rooms) {
+        int n = rooms.size();
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            // Key in the high half, index in the low half: equal prices stay in index order
+            packed[i] = (Integer.toUnsignedLong(priceKey(rooms.get(i))) << 32) | i;
+        }
+        Arrays.parallelSort(packed);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+
+    static int[] radixOrderByPrice(List<Room> rooms) {
+        int n = rooms.size();
+        int[] keys = new int[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = priceKey(rooms.get(i));
+            order[i] = i;
+        }
+        if (n < 2) {
+            return order;
+        }
+        int[] keysOut = new int[n];
+        int[] orderOut = new int[n];
+        int[] counts = new int[BUCKETS];
+
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(keys[i] >>> shift) & (BUCKETS - 1)]++;
+            }
+            // All keys share this digit: the pass would not move anything
+            if (counts[(keys[0] >>> shift) & (BUCKETS - 1)] == n) {
+                continue;
+            }
+            int total = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                int count = counts[b];
+                counts[b] = total;
+                total += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int target = counts[(keys[i] >>> shift) & (BUCKETS - 1)]++;
+                keysOut[target] = keys[i];
+                orderOut[target] = order[i];
+            }
+            int[] swap = keys; keys = keysOut; keysOut = swap;
+            swap = order; order = orderOut; orderOut = swap;
+        }
+        return order;
+    }
+
+    private static List<Room> permute(List<Room> rooms, int[] order) {
+        List<Room> sorted = new ArrayList<>(order.length);
+        for (int index : order) {
+            sorted.add(rooms.get(index));
+        }
+        return sorted;
+    }
+
+    /**
+     * Times every strategy on lists of the given sizes, built by repeating the sample, and records the
+     * fastest for each size. Sizes that would not fit comfortably in the heap are skipped.
+     * Returns a printable table.
+     */
+    public static String benchmark(List<Room> sample, int[] sizes) {
+        StringBuilder report = new StringBuilder("Sort rooms by price:\n");
+        if (sample.isEmpty()) {
+            return report.append("  no rooms to sort\n").toString();
+        }
+        NavigableMap<Integer, Strategy> measured = new TreeMap<>();
+        for (int size : sizes) {
+            // Room references plus the key and index arrays of the primitive sorts, twice over
+            long needed = (long) size * 48;
+            if (needed > Runtime.getRuntime().maxMemory() / 2) {
+                report.append(String.format("  %,d: skipped, not enough heap%n", size));
+                continue;
+            }
+            List<Room> rooms = new ArrayList<>(size);
+            while (rooms.size() < size) {
+                rooms.addAll(sample.subList(0, Math.min(sample.size(), size - rooms.size())));
+            }
+            // Shuffled so the repeated sample is not already in runs
+            Collections.shuffle(rooms, new Random(size));
+
+            Strategy best = null;
+            double bestMs = Double.MAX_VALUE;
+            report.append(String.format("  %,d:", size));
+            for (Strategy strategy : Strategy.values()) {
+                double ms = Double.MAX_VALUE;
+                // Best of three, the first run also warms up the JIT
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    strategy.sortByPrice(rooms);
+                    ms = Math.min(ms, (System.nanoTime() - start) / 1_000_000.0);
+                }
+                report.append(String.format("  %s %.2f ms", strategy.name(), ms));
+                if (ms < bestMs) {
+                    bestMs = ms;
+                    best = strategy;
+                }
+            }
+            measured.put(size, best);
+            report.append("  -> ").append(best.name()).append('\n');
+        }
+        if (!measured.isEmpty()) {
+            fastestBySize = measured;
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,248 @@
+package ui;
+
+import db.BookingDAO;
+import db.ChangeSet;
+import db.RoomDAO;
+import db.StatsDAO;
+import logic.Booking;
+import logic.HotelManager;
+import logic.RevenueAnalytics;
+import logic.Room;
+import logic.RoomType;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Revenue dashboard: occupancy, ADR, RevPAR and revenue per day, week or month, and per room type.
+ * The figures come from a RevenueAnalytics built once from the loaded bookings; Refresh applies only the
+ * rows changed in the database since, so it stays quick however much history there is.
+ */
+public class AnalyticsPanel extends JPanel {
+    private static final String ALL_TYPES = "All room types";
+
+    private final RevenueAnalytics analytics = new RevenueAnalytics();
+    private final RoomDAO roomDAO;
+    private final StatsDAO statsDAO = new StatsDAO();
+    private final BookingDAO bookingDAO;
+    private List<Room> rooms;
+    private long syncWatermark;     // change version the figures are in sync with
+    private boolean ready;
+
+    private final JTextField fromField = new JTextField(10);
+    private final JTextField toField = new JTextField(10);
+    private final JComboBox<RevenueAnalytics.Granularity> granularityBox =
+            new JComboBox<>(RevenueAnalytics.Granularity.values());
+    private final JComboBox<Object> typeBox = new JComboBox<>();
+    private final JButton refreshButton = new JButton("Refresh");
+    private final JLabel summaryLabel = new JLabel("Building analytics...");
+    private final DefaultTableModel periodModel = new DefaultTableModel(
+            new String[]{"Period", "Revenue", "Room Nights", "Available", "Occupancy %", "ADR", "RevPAR"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) { return false; }
+    };
+    private final DefaultTableModel typeModel = new DefaultTableModel(
+            new String[]{"Room Type", "Revenue", "Room Nights", "Available", "Occupancy %", "ADR", "RevPAR"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) { return false; }
+    };
+
+    private final DefaultTableModel nationalityModel = new DefaultTableModel(
+            new String[]{"Nationality", "Bookings", "Room Nights", "Revenue"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) { return false; }
+    };
+
+    public AnalyticsPanel(List<Room> rooms, List<Booking> bookings, RoomDAO roomDAO, BookingDAO bookingDAO,
+                          long syncWatermark) {
+        this.rooms = rooms;
+        this.roomDAO = roomDAO;
+        this.bookingDAO = bookingDAO;
+        this.syncWatermark = syncWatermark;
+        setLayout(new BorderLayout());
+
+        LocalDate firstOfMonth = LocalDate.now().withDayOfMonth(1);
+        fromField.setText(firstOfMonth.minusMonths(11).toString());
+        toField.setText(firstOfMonth.plusMonths(1).toString());
+        granularityBox.setSelectedItem(RevenueAnalytics.Granularity.MONTH);
+        typeBox.addItem(ALL_TYPES);
+        for (RoomType type : RoomType.values()) {
+            typeBox.addItem(type);
+        }
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel("From:"));
+        controls.add(fromField);
+        controls.add(new JLabel("To (exclusive):"));
+        controls.add(toField);
+        controls.add(granularityBox);
+        controls.add(typeBox);
+        JButton showButton = new JButton("Show");
+        controls.add(showButton);
+        controls.add(refreshButton);
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(controls, BorderLayout.NORTH);
+        top.add(summaryLabel, BorderLayout.SOUTH);
+
+        JTabbedPane breakdowns = new JTabbedPane();
+        breakdowns.addTab("By room type", new JScrollPane(new JTable(typeModel)));
+        // Check-in months in the range, read from the rollup tables in the database
+        breakdowns.addTab("By nationality", new JScrollPane(new JTable(nationalityModel)));
+        breakdowns.setPreferredSize(new Dimension(0, 150));
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(new JTable(periodModel)), breakdowns);
+        split.setResizeWeight(0.8);
+
+        add(top, BorderLayout.NORTH);
+        add(split, BorderLayout.CENTER);
+
+        showButton.addActionListener(e -> showFigures());
+        granularityBox.addActionListener(e -> showFigures());
+        typeBox.addActionListener(e -> showFigures());
+        refreshButton.addActionListener(e -> refreshFromDatabase());
+
+        // One pass over all bookings, off the EDT
+        refreshButton.setEnabled(false);
+        List<Room> initialRooms = rooms;
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            private long millis;
+
+            @Override
+            protected Void doInBackground() {
+                long start = System.nanoTime();
+                analytics.rebuild(initialRooms, bookings);
+                millis = (System.nanoTime() - start) / 1_000_000;
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                ready = true;
+                refreshButton.setEnabled(true);
+                showFigures();
+                System.out.println("Analytics built from " + bookings.size() + " bookings in " + millis + " ms");
+            }
+        };
+        worker.execute();
+    }
+
+    private void showFigures() {
+        if (!ready) return;
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.parse(fromField.getText().trim());
+            to = LocalDate.parse(toField.getText().trim());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Invalid date format. Please use yyyy-mm-dd.");
+            return;
+        }
+        if (!to.isAfter(from)) {
+            JOptionPane.showMessageDialog(this, "Start date must be before the end date");
+            return;
+        }
+
+        RevenueAnalytics.Granularity granularity = (RevenueAnalytics.Granularity) granularityBox.getSelectedItem();
+        RoomType type = typeBox.getSelectedItem() instanceof RoomType selected ? selected : null;
+        periodModel.setRowCount(0);
+        for (RevenueAnalytics.Period period : analytics.query(from, to, granularity, type)) {
+            String label = granularity == RevenueAnalytics.Granularity.DAY
+                    ? period.getStart().toString()
+                    : period.getStart() + " to " + period.getEnd().minusDays(1);
+            periodModel.addRow(toRow(label, period));
+        }
+
+        typeModel.setRowCount(0);
+        for (Map.Entry<RoomType, RevenueAnalytics.Period> entry : analytics.byRoomType(from, to).entrySet()) {
+            typeModel.addRow(toRow(entry.getKey().name(), entry.getValue()));
+        }
+
+        loadNationalities(from, to);
+
+        RevenueAnalytics.Period total = analytics.total(from, to, type);
+        summaryLabel.setText(String.format(" %s to %s: revenue %s, occupancy %.1f%%, ADR %s, RevPAR %s  (%,d bookings counted)",
+                from, to.minusDays(1), money(total.getRevenueCents()), total.getOccupancyPercent(),
+                money(total.getAdrCents()), money(total.getRevParCents()), analytics.getBookingCount()));
+    }
+
+    private void loadNationalities(LocalDate from, LocalDate to) {
+        SwingWorker<List<StatsDAO.NationalityStats>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<StatsDAO.NationalityStats> doInBackground() throws Exception {
+                return statsDAO.byNationality(from, to.minusDays(1).withDayOfMonth(1).plusMonths(1));
+            }
+
+            @Override
+            protected void done() {
+                nationalityModel.setRowCount(0);
+                try {
+                    for (StatsDAO.NationalityStats stats : get()) {
+                        nationalityModel.addRow(new Object[]{stats.getNationality(), stats.getBookings(),
+                                stats.getRoomNights(), String.format("%,.2f", stats.getRevenue())});
+                    }
+                } catch (Exception e) {
+                    // Offline: the in-memory figures above are still shown
+                    System.err.println("Could not read nationality stats: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void refreshFromDatabase() {
+        refreshButton.setEnabled(false);
+        long since = syncWatermark;
+        List<Room> currentRooms = rooms;
+        SwingWorker<Long, Void> worker = new SwingWorker<>() {
+            private List<Room> mergedRooms;
+            private int changed;
+
+            @Override
+            protected Long doInBackground() throws Exception {
+                ChangeSet<Room> roomChanges = roomDAO.findChangedSince(since);
+                ChangeSet<Booking> bookingChanges = bookingDAO.findChangedSince(since);
+                mergedRooms = HotelManager.mergeChanges(currentRooms, roomChanges.getUpserts(),
+                        roomChanges.getDeletedKeys(), Room::getRoomNumber);
+                analytics.setRooms(mergedRooms);
+                analytics.applyBookingChanges(bookingChanges.getUpserts(), bookingChanges.getDeletedKeys());
+                changed = bookingChanges.getUpserts().size() + bookingChanges.getDeletedKeys().size();
+                // Both change sets read up to their own watermark; the lower one is safe for the next refresh
+                return Math.min(roomChanges.getWatermark(), bookingChanges.getWatermark());
+            }
+
+            @Override
+            protected void done() {
+                refreshButton.setEnabled(true);
+                try {
+                    syncWatermark = get();
+                    rooms = mergedRooms;
+                    showFigures();
+                    System.out.println("Analytics refreshed with " + changed + " changed bookings");
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(AnalyticsPanel.this, "Error refreshing: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private static Object[] toRow(String label, RevenueAnalytics.Period period) {
+        return new Object[]{
+                label,
+                money(period.getRevenueCents()),
+                period.getRoomNightsSold(),
+                period.getRoomNightsAvailable(),
+                String.format("%.1f", period.getOccupancyPercent()),
+                money(period.getAdrCents()),
+                money(period.getRevParCents())
+        };
+    }
+
+    private static String money(long cents) {
+        return String.format("%,.2f", cents / 100.0);
+    }
+}
@@ -1,9 +1,16 @@
 package ui;
 
+import db.BulkTransitionResult;
+import db.ChangeSet;
+import db.DatabaseConnection;
 import db.GuestDAO;
+import db.QueryHandle;
+import db.ReportDAO;
 import logic.Booking;
 import logic.BookingStatus;
+import logic.HotelManager;
 import db.BookingDAO;
+import utils.ReportExporter;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -13,24 +20,33 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class BookingsPanel extends HotelDataPanel {
     private JTable table;
     private DefaultTableModel tableModel;
     private TableRowSorter<DefaultTableModel> sorter;
     private List<Booking> bookings;
+    private long syncWatermark;     // change version the table is in sync with
+    private boolean showingAll = true; // false while a search result is displayed
     private BookingDAO bookingDAO;
     private GuestDAO guestDAO;
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private JButton checkInButton;
     private JButton checkOutButton;
 
-    public BookingsPanel(List<Booking> bookings, BookingDAO bookingDAO, GuestDAO guestDAO) {
+    public BookingsPanel(List<Booking> bookings, BookingDAO bookingDAO, GuestDAO guestDAO, long syncWatermark) {
         super("Bookings");
         this.bookings = bookings;
+        this.syncWatermark = syncWatermark;
         this.bookingDAO = bookingDAO;
         this.guestDAO = new GuestDAO();
         initComponents();
@@ -39,6 +55,7 @@ public class BookingsPanel extends HotelDataPanel {
         refreshButton.addActionListener(e -> refreshFromDatabase());
         setupSearchMenu();
         setupCheckButtons();
+        setupExportButton();
     }
 
     private void setupSearchMenu() {
@@ -66,27 +83,8 @@ public class BookingsPanel extends HotelDataPanel {
 
         try {
             int guestId = Integer.parseInt(input.trim());
-            SwingWorker<List<Booking>, Void> worker = new SwingWorker<>() {
-                @Override
-                protected List<Booking> doInBackground() throws Exception {
-                    return bookingDAO.findByGuest(guestId);
-                }
-                @Override
-                protected void done() {
-                    try {
-                        bookings = get();
-                        populateTable();
-                        if (bookings.isEmpty()) {
-                            JOptionPane.showMessageDialog(BookingsPanel.this,
-                                    "No bookings found for guest ID " + guestId);
-                        }
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(BookingsPanel.this,
-                                "Search error: " + ex.getMessage());
-                    }
-                }
-            };
-            worker.execute();
+            runStreamingSearch((query, sink) -> bookingDAO.streamByGuest(guestId, query, sink),
+                    "No bookings found for guest ID " + guestId);
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Invalid guest ID. Please enter a number.");
         }
@@ -115,28 +113,8 @@ public class BookingsPanel extends HotelDataPanel {
                 return;
             }
 
-            SwingWorker<List<Booking>, Void> worker = new SwingWorker<>() {
-                @Override
-                protected List<Booking> doInBackground() {
-                    return bookingDAO.findByDateRange(start, end);
-                }
-
-                @Override
-                protected void done() {
-                    try {
-                        bookings = get();
-                        populateTable();
-                        if (bookings.isEmpty()) {
-                            JOptionPane.showMessageDialog(BookingsPanel.this,
-                                    "No bookings present between " + start + " and " + end);
-                        }
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(BookingsPanel.this,
-                                "Search error: " + ex.getMessage());
-                    }
-                }
-            };
-            worker.execute();
+            runStreamingSearch((query, sink) -> bookingDAO.streamByDateRange(start, end, query, sink),
+                    "No bookings present between " + start + " and " + end);
 
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this,
@@ -144,43 +122,40 @@ public class BookingsPanel extends HotelDataPanel {
         }
     }
 
-    private void populateTable() {
+    // Streams a search into the table: rows are appended in batches while the query is still running
+    private void runStreamingSearch(BookingSearch search, String emptyMessage) {
+        QueryHandle query = newSearchQuery();
+        bookings = new ArrayList<>();
+        showingAll = false;
         tableModel.setRowCount(0);
-        for (Booking b : bookings) {
-            tableModel.addRow(new Object[]{
-                    b.getBookingId(),
-                    b.getGuest().getFullName(),
-                    b.getRoom().getRoomNumber(),
-                    b.getCheckInDate().format(DATE_FORMAT),
-                    b.getCheckOutDate().format(DATE_FORMAT),
-                    b.getNumberOfGuests(),
-                    b.getTotalPrice(),
-                    b.getStatus().getDbValue(),
-                    b.isPaid() ? "Yes" : "No"
-            });
-        }
-    }
+        showLoadedCount(0, false);
 
-    private void searchByStatus() {
-        BookingStatus[] statuses = BookingStatus.values();
-        BookingStatus selected = (BookingStatus) JOptionPane.showInputDialog(this,
-                "Select status:", "Search by Status",
-                JOptionPane.QUESTION_MESSAGE, null, statuses, statuses[0]);
-        if (selected == null) return;
+        SwingWorker<Integer, Booking> worker = new SwingWorker<>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return search.run(query, booking -> publish(booking));
+            }
 
-        SwingWorker<List<Booking>, Void> worker = new SwingWorker<>() {
+            // Called on the EDT with all rows published since the last call
             @Override
-            protected List<Booking> doInBackground() throws Exception {
-                return bookingDAO.findByStatus(selected);
+            protected void process(List<Booking> chunk) {
+                if (!isCurrentSearch(this)) return;
+                for (Booking b : chunk) {
+                    bookings.add(b);
+                    addRow(b);
+                }
+                showLoadedCount(bookings.size(), isDone());
             }
+
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
-                    bookings = get();
-                    populateTable();
-                    if (bookings.isEmpty()) {
-                        JOptionPane.showMessageDialog(BookingsPanel.this,
-                                "No bookings with status " + selected.getDbValue());
+                    // The last chunk may still be queued for process(), so use the row count from the DAO
+                    int total = get();
+                    showLoadedCount(total, true);
+                    if (total == 0) {
+                        JOptionPane.showMessageDialog(BookingsPanel.this, emptyMessage);
                     }
                 } catch (Exception ex) {
                     JOptionPane.showMessageDialog(BookingsPanel.this,
@@ -188,20 +163,75 @@ public class BookingsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
+    }
+
+    @FunctionalInterface
+    private interface BookingSearch {
+        int run(QueryHandle query, Consumer<Booking> sink) throws SQLException;
+    }
+
+    private void populateTable() {
+        tableModel.setRowCount(0);
+        for (Booking b : bookings) {
+            addRow(b);
+        }
+        showLoadedCount(bookings.size(), true);
+    }
+
+    private void addRow(Booking b) {
+        tableModel.addRow(new Object[]{
+                b.getBookingId(),
+                b.getGuest().getFullName(),
+                b.getRoom().getRoomNumber(),
+                b.getCheckInDate().format(DATE_FORMAT),
+                b.getCheckOutDate().format(DATE_FORMAT),
+                b.getNumberOfGuests(),
+                b.getTotalPrice(),
+                b.getStatus().getDbValue(),
+                b.isPaid() ? "Yes" : "No"
+        });
+    }
+
+    private void searchByStatus() {
+        BookingStatus[] statuses = BookingStatus.values();
+        BookingStatus selected = (BookingStatus) JOptionPane.showInputDialog(this,
+                "Select status:", "Search by Status",
+                JOptionPane.QUESTION_MESSAGE, null, statuses, statuses[0]);
+        if (selected == null) return;
+
+        runStreamingSearch((query, sink) -> bookingDAO.streamByStatus(selected, query, sink),
+                "No bookings with status " + selected.getDbValue());
     }
 
     private void refreshFromDatabase() {
+        // When the full list is shown, only the rows changed since the last sync are fetched and merged.
+        // After a search the full list is reloaded.
+        cancelCurrentSearch();
+        boolean deltaSync = showingAll;
+        List<Booking> current = bookings;
+        long since = syncWatermark;
         SwingWorker<List<Booking>, Void> worker = new SwingWorker<>() {
+            private long watermark;
+
             @Override
             protected List<Booking> doInBackground() throws Exception {
+                if (deltaSync) {
+                    ChangeSet<Booking> changes = bookingDAO.findChangedSince(since);
+                    watermark = changes.getWatermark();
+                    return HotelManager.mergeChanges(current, changes.getUpserts(), changes.getDeletedKeys(), Booking::getBookingId);
+                }
+                watermark = DatabaseConnection.currentChangeVersion();
                 return bookingDAO.getAllBookings();
             }
 
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     bookings = get();
+                    syncWatermark = watermark;
+                    showingAll = true;
                     populateTable();
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(BookingsPanel.this,
@@ -209,7 +239,7 @@ public class BookingsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void setupFilter() {
@@ -267,42 +297,48 @@ public class BookingsPanel extends HotelDataPanel {
         });
     }
 
+    // Multiple rows can be selected (e.g. a tour group); each button is enabled if at least one selected booking qualifies
     private void updateButtonState() {
-        int selectedRow = table.getSelectedRow();
-        if (selectedRow == -1 || bookings.isEmpty()) {
-            checkInButton.setEnabled(false);
-            checkOutButton.setEnabled(false);
-            return;
+        List<Booking> selected = getSelectedBookings();
+        checkInButton.setEnabled(selected.stream().anyMatch(b -> b.getStatus() == BookingStatus.CONFIRMED));
+        checkOutButton.setEnabled(selected.stream().anyMatch(b -> b.getStatus() == BookingStatus.CHECKED_IN));
+    }
+
+    private List<Booking> getSelectedBookings() {
+        List<Booking> selected = new ArrayList<>();
+        for (int viewRow : table.getSelectedRows()) {
+            int modelRow = table.convertRowIndexToModel(viewRow);
+            if (modelRow >= 0 && modelRow < bookings.size()) {
+                selected.add(bookings.get(modelRow));
+            }
         }
-        int modelRow = table.convertRowIndexToModel(selectedRow);
-        Booking booking = bookings.get(modelRow);
-        checkInButton.setEnabled(booking.getStatus() == BookingStatus.CONFIRMED);
-        checkOutButton.setEnabled(booking.getStatus() == BookingStatus.CHECKED_IN);
+        return selected;
     }
 
     private void performCheckIn() {
-        int selectedRow = table.getSelectedRow();
-        if (selectedRow == -1) return;
-        int modelRow = table.convertRowIndexToModel(selectedRow);
-        Booking booking = bookings.get(modelRow);
-
-        int confirm = JOptionPane.showConfirmDialog(this,
-                "Check in guest " + booking.getGuest().getFullName() + "?",
+        List<Booking> selected = getSelectedBookings().stream()
+                .filter(b -> b.getStatus() == BookingStatus.CONFIRMED)
+                .toList();
+        if (selected.isEmpty()) return;
+
+        String prompt = selected.size() == 1
+                ? "Check in guest " + selected.get(0).getGuest().getFullName() + "?"
+                : "Check in " + selected.size() + " bookings?";
+        int confirm = JOptionPane.showConfirmDialog(this, prompt,
                 "Confirm Check In", JOptionPane.YES_NO_OPTION);
         if (confirm != JOptionPane.YES_OPTION) return;
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+        SwingWorker<BulkTransitionResult, Void> worker = new SwingWorker<>() {
             @Override
-            protected Void doInBackground() throws Exception {
-                bookingDAO.checkIn(booking.getBookingId());
-                return null;
+            protected BulkTransitionResult doInBackground() throws Exception {
+                return bookingDAO.checkInAll(selected);
             }
             @Override
             protected void done() {
                 try {
-                    get(); // check for exceptions
+                    BulkTransitionResult result = get();
                     refreshFromDatabase();
-                    JOptionPane.showMessageDialog(BookingsPanel.this, "Check-in successful.");
+                    JOptionPane.showMessageDialog(BookingsPanel.this, formatTransitionResult("Check-in", result));
                 } catch (Exception ex) {
                     JOptionPane.showMessageDialog(BookingsPanel.this,
                             "Check-in failed: " + ex.getMessage());
@@ -312,29 +348,88 @@ public class BookingsPanel extends HotelDataPanel {
         worker.execute();
     }
 
-    private void performCheckOut() {
-        int selectedRow = table.getSelectedRow();
-        if (selectedRow == -1) return;
-        int modelRow = table.convertRowIndexToModel(selectedRow);
-        Booking booking = bookings.get(modelRow);
+    private void setupExportButton() {
+        JButton exportButton = new JButton("Export Reports");
+        rightPanel.add(exportButton);
+        exportButton.addActionListener(e -> exportReports());
+    }
+
+    // Arrivals, departures, in-house, revenue and a year of bookings, streamed from the database to xlsx or CSV
+    private void exportReports() {
+        JTextField dayField = new JTextField(LocalDate.now().format(DATE_FORMAT), 10);
+        JCheckBox csvBox = new JCheckBox("Gzip'd CSV files instead of one workbook");
+        JPanel panel = new JPanel(new GridLayout(2, 2));
+        panel.add(new JLabel("Business date (yyyy-mm-dd):"));
+        panel.add(dayField);
+        panel.add(csvBox);
 
-        int confirm = JOptionPane.showConfirmDialog(this,
-                "Check out guest " + booking.getGuest().getFullName() + "?",
+        int result = JOptionPane.showConfirmDialog(this, panel, "Export Reports", JOptionPane.OK_CANCEL_OPTION);
+        if (result != JOptionPane.OK_OPTION) return;
+
+        LocalDate day;
+        try {
+            day = LocalDate.parse(dayField.getText().trim());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Invalid date format. Please use yyyy-mm-dd.");
+            return;
+        }
+
+        boolean csv = csvBox.isSelected();
+        JFileChooser chooser = new JFileChooser();
+        if (csv) {
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        } else {
+            chooser.setSelectedFile(new File("reports-" + day + ".xlsx"));
+        }
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        Path target = chooser.getSelectedFile().toPath();
+
+        SwingWorker<Map<String, Integer>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Map<String, Integer> doInBackground() throws Exception {
+                List<ReportExporter.Report> reports = new ReportDAO().dailyReports(day);
+                return csv ? ReportExporter.writeCsvGz(target, reports) : ReportExporter.writeXlsx(target, reports);
+            }
+            @Override
+            protected void done() {
+                try {
+                    StringBuilder message = new StringBuilder("Exported to " + target + ":");
+                    for (Map.Entry<String, Integer> entry : get().entrySet()) {
+                        message.append("\n").append(entry.getKey()).append(": ").append(entry.getValue()).append(" rows");
+                    }
+                    JOptionPane.showMessageDialog(BookingsPanel.this, message.toString());
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(BookingsPanel.this, "Export failed: " + ex.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void performCheckOut() {
+        List<Booking> selected = getSelectedBookings().stream()
+                .filter(b -> b.getStatus() == BookingStatus.CHECKED_IN)
+                .toList();
+        if (selected.isEmpty()) return;
+
+        String prompt = selected.size() == 1
+                ? "Check out guest " + selected.get(0).getGuest().getFullName() + "?"
+                : "Check out " + selected.size() + " bookings?";
+        int confirm = JOptionPane.showConfirmDialog(this, prompt,
                 "Confirm Check Out", JOptionPane.YES_NO_OPTION);
         if (confirm != JOptionPane.YES_OPTION) return;
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+        SwingWorker<BulkTransitionResult, Void> worker = new SwingWorker<>() {
             @Override
-            protected Void doInBackground() throws Exception {
-                bookingDAO.checkOut(booking.getBookingId());
-                return null;
+            protected BulkTransitionResult doInBackground() throws Exception {
+                return bookingDAO.checkOutAll(selected);
             }
             @Override
             protected void done() {
                 try {
-                    get();
+                    BulkTransitionResult result = get();
                     refreshFromDatabase();
-                    JOptionPane.showMessageDialog(BookingsPanel.this, "Check-out successful.");
+                    JOptionPane.showMessageDialog(BookingsPanel.this, formatTransitionResult("Check-out", result));
                 } catch (Exception ex) {
                     JOptionPane.showMessageDialog(BookingsPanel.this,
                             "Check-out failed: " + ex.getMessage());
@@ -344,6 +439,17 @@ public class BookingsPanel extends HotelDataPanel {
         worker.execute();
     }
 
+    private String formatTransitionResult(String action, BulkTransitionResult result) {
+        if (result.allSucceeded()) {
+            return result.getSucceeded().size() == 1
+                    ? action + " successful."
+                    : action + " successful for " + result.getSucceeded().size() + " bookings.";
+        }
+        StringBuilder sb = new StringBuilder(action + " done for " + result.getSucceeded().size() + " bookings.\nFailed:");
+        result.getFailures().forEach((id, reason) -> sb.append("\n  Booking ").append(id).append(": ").append(reason));
+        return sb.toString();
+    }
+
     @Override
     protected void initComponents() {
         tableModel = new DefaultTableModel(new String[]{
@@ -366,7 +472,7 @@ public class BookingsPanel extends HotelDataPanel {
             }
         };
         table = new JTable(tableModel);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         table.setAutoCreateRowSorter(true);
 
         table.getColumnModel().getColumn(6).setCellRenderer(new DefaultTableCellRenderer() {
@@ -1,7 +1,16 @@
 package ui;
 
+import logic.Booking;
+import logic.BookingColumns;
 import logic.Guest;
+import logic.HotelManager;
+import db.AsyncBookingDAO;
+import db.AsyncGuestDAO;
+import db.BookingDAO;
+import db.ChangeSet;
+import db.DatabaseConnection;
 import db.GuestDAO;
+import db.QueryHandle;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -9,7 +18,9 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 public class GuestsPanel extends HotelDataPanel {
@@ -17,12 +28,20 @@ public class GuestsPanel extends HotelDataPanel {
     private DefaultTableModel tableModel;
     private TableRowSorter<DefaultTableModel> sorter;
     private List<Guest> guests;
+    private long syncWatermark;     // change version the table is in sync with
+    private boolean showingAll = true; // false while a search result is displayed
     private GuestDAO guestDAO;
+    private AsyncGuestDAO asyncGuestDAO;
+    private AsyncBookingDAO asyncBookingDAO;
+    private int selectedGuestId = -1;
 
-    public GuestsPanel(List<Guest> guests, GuestDAO dao) {
+    public GuestsPanel(List<Guest> guests, GuestDAO dao, long syncWatermark) {
         super("Guests");
         this.guests = guests;
+        this.syncWatermark = syncWatermark;
         this.guestDAO = dao;
+        this.asyncGuestDAO = new AsyncGuestDAO(dao);
+        this.asyncBookingDAO = new AsyncBookingDAO(new BookingDAO());
         initComponents();
         populateTable();
         setupFilter();
@@ -52,17 +71,35 @@ public class GuestsPanel extends HotelDataPanel {
         String name = JOptionPane.showInputDialog(this, "Enter name to search:", "Search by Name", JOptionPane.QUESTION_MESSAGE);
         if (name == null || name.trim().isEmpty()) return;
 
-        SwingWorker<List<Guest>, Void> worker = new SwingWorker<>() {
+        // Rows are appended in batches while the query is still running
+        QueryHandle query = newSearchQuery();
+        guests = new ArrayList<>();
+        showingAll = false;
+        tableModel.setRowCount(0);
+        showLoadedCount(0, false);
+
+        SwingWorker<Integer, Guest> worker = new SwingWorker<>() {
             @Override
-            protected List<Guest> doInBackground() {
-                return guestDAO.searchByName(name.trim());
+            protected Integer doInBackground() throws Exception {
+                return guestDAO.streamByName(name.trim(), query, guest -> publish(guest));
+            }
+            @Override
+            protected void process(List<Guest> chunk) {
+                if (!isCurrentSearch(this)) return;
+                for (Guest g : chunk) {
+                    guests.add(g);
+                    addRow(g);
+                }
+                showLoadedCount(guests.size(), isDone());
             }
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
-                    guests = get();
-                    populateTable();
-                    if (guests.isEmpty()) {
+                    // The last chunk may still be queued for process(), so use the row count from the DAO
+                    int total = get();
+                    showLoadedCount(total, true);
+                    if (total == 0) {
                         JOptionPane.showMessageDialog(GuestsPanel.this, "No guests found with that name.");
                     }
                 } catch (Exception ex) {
@@ -70,13 +107,15 @@ public class GuestsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void searchByEmail() {
         String email = JOptionPane.showInputDialog(this, "Enter email address:", "Search by Email", JOptionPane.QUESTION_MESSAGE);
         if (email == null || email.trim().isEmpty()) return;
 
+        cancelCurrentSearch();
+
         SwingWorker<Guest, Void> worker = new SwingWorker<>() {
             @Override
             protected Guest doInBackground() {
@@ -84,10 +123,12 @@ public class GuestsPanel extends HotelDataPanel {
             }
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     Guest g = get();
                     if (g != null) {
                         guests = List.of(g);
+                        showingAll = false;
                         populateTable();
                     } else {
                         JOptionPane.showMessageDialog(GuestsPanel.this, "No guest found with that email.");
@@ -97,10 +138,11 @@ public class GuestsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void searchVIP() {
+        cancelCurrentSearch();
         SwingWorker<List<Guest>, Void> worker = new SwingWorker<>() {
             @Override
             protected List<Guest> doInBackground() {
@@ -108,8 +150,10 @@ public class GuestsPanel extends HotelDataPanel {
             }
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     guests = get();
+                    showingAll = false;
                     populateTable();
                     if (guests.isEmpty()) {
                         JOptionPane.showMessageDialog(GuestsPanel.this, "No VIP guests found.");
@@ -119,43 +163,66 @@ public class GuestsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void populateTable() {
         tableModel.setRowCount(0);
         for (Guest g : guests) {
-            tableModel.addRow(new Object[]{
-                    g.getId(),
-                    g.getFullName(),
-                    g.getEmail(),
-                    g.getPhone(),
-                    g.getNationality(),
-                    g.getLoyaltyPoints(),
-                    g.isVIP() ? "VIP" : ""
-            });
+            addRow(g);
         }
+        showLoadedCount(guests.size(), true);
+    }
+
+    private void addRow(Guest g) {
+        tableModel.addRow(new Object[]{
+                g.getId(),
+                g.getFullName(),
+                g.getEmail(),
+                g.getPhone(),
+                g.getNationality(),
+                g.getLoyaltyPoints(),
+                g.isVIP() ? "VIP" : ""
+        });
     }
 
     private void refreshFromDatabase() {
         // SwingWorker to avoid blocking EDT
+        // When the full list is shown, only the rows changed since the last sync are fetched and merged.
+        // After a search the full list is reloaded.
+        cancelCurrentSearch();
+        boolean deltaSync = showingAll;
+        List<Guest> current = guests;
+        long since = syncWatermark;
         SwingWorker<List<Guest>, Void> worker = new SwingWorker<>() {
+            private long watermark;
+
             @Override
             protected List<Guest> doInBackground() throws Exception {
+                if (deltaSync) {
+                    ChangeSet<Guest> changes = guestDAO.findChangedSince(since);
+                    watermark = changes.getWatermark();
+                    return HotelManager.mergeChanges(current, changes.getUpserts(), changes.getDeletedKeys(), Guest::getId);
+                }
+                watermark = DatabaseConnection.currentChangeVersion();
                 return guestDAO.getAllGuests();
             }
+
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     guests = get();
+                    syncWatermark = watermark;
+                    showingAll = true;
                     populateTable();
-                } catch (Exception ex) {
+                } catch (Exception e) {
                     JOptionPane.showMessageDialog(GuestsPanel.this,
-                            "Error refreshing: " + ex.getMessage());
+                            "Error refreshing: " + e.getMessage());
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void setupFilter() {
@@ -219,7 +286,9 @@ public class GuestsPanel extends HotelDataPanel {
                     int modelRow = table.convertRowIndexToModel(selectedRow);
                     if (modelRow >= 0 && modelRow < guests.size()) {
                         Guest g = guests.get(modelRow);
+                        selectedGuestId = g.getId();
                         showDetails(formatGuestDetails(g));
+                        loadGuestOverview(g.getId());
                     }
                 }
             }
@@ -244,6 +313,61 @@ public class GuestsPanel extends HotelDataPanel {
         add(split, BorderLayout.CENTER);
     }
 
+    // Fetches the guest row, their bookings (joined with room details) and their archived stays at the
+    // same time, so the details pane waits for the slowest of the three instead of all in turn.
+    private void loadGuestOverview(int guestId) {
+        CompletableFuture<Guest> guestFuture = asyncGuestDAO.getGuest(guestId);
+        CompletableFuture<List<Booking>> bookingsFuture = asyncBookingDAO.findByGuest(guestId);
+        // A missing or unreadable archive should not hide the live bookings
+        CompletableFuture<BookingColumns> archivedFuture = asyncBookingDAO.findArchivedByGuest(guestId)
+                .exceptionally(error -> null);
+
+        CompletableFuture<String> overview = guestFuture.thenCombine(bookingsFuture, (guest, history) -> {
+            if (guest != null) {
+                guest.setBookingHistory(history);
+            }
+            return guest;
+        }).thenCombine(archivedFuture, (guest, archived) -> guest == null ? null
+                : formatGuestDetails(guest) + formatBookingHistory(guest.getBookingHistory()) + formatArchivedStays(archived));
+
+        SwingFutures.onEdt(overview, details -> {
+            // Ignore results for a guest that is no longer selected
+            if (details != null && guestId == selectedGuestId) {
+                showDetails(details);
+            }
+        }, error -> {
+            if (guestId == selectedGuestId) {
+                detailArea.append("\n\nCould not load bookings: " + error.getMessage());
+            }
+        });
+    }
+
+    private String formatBookingHistory(List<Booking> history) {
+        StringBuilder sb = new StringBuilder("\n\nBooking history:");
+        for (Booking b : history) {
+            sb.append(String.format("\n  #%d  Room %d (%s)  %s to %s  %s",
+                    b.getBookingId(), b.getRoom().getRoomNumber(), b.getRoom().getRoomType(),
+                    b.getCheckInDate(), b.getCheckOutDate(), b.getStatus().getDbValue()));
+        }
+        return sb.toString();
+    }
+
+    private String formatArchivedStays(BookingColumns archived) {
+        if (archived == null) {
+            return "\n\nArchived stays: archive not available";
+        }
+        if (archived.size() == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("\n\nArchived stays:");
+        for (int row = 0; row < archived.size(); row++) {
+            sb.append(String.format("\n  #%d  Room %d  %s to %s  %s",
+                    archived.getBookingId(row), archived.getRoomNumber(row),
+                    archived.getCheckInDate(row), archived.getCheckOutDate(row), archived.getStatus(row).getDbValue()));
+        }
+        return sb.toString();
+    }
+
     private String formatGuestDetails(Guest g) {
         return String.format("ID: %d\nName: %s %s\nEmail: %s\nPhone: %s\nNationality: %s\nLoyalty: %d\nVIP: %s\nBookings: %d",
                 g.getId(), g.getFirstName(), g.getLastName(),
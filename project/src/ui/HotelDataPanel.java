@@ -1,5 +1,7 @@
 package ui;
 
+import db.QueryHandle;
+
 import javax.swing.*;
 import java.awt.*;
 
@@ -10,6 +12,9 @@ public abstract class HotelDataPanel extends JPanel {
     protected JTextField searchField;   //  quick filter
     protected JTextArea detailArea;
     protected JPanel rightPanel;
+    protected JLabel loadedLabel;       // rows loaded so far by a streaming search
+    private SwingWorker<?, ?> currentSearch;   // the only worker allowed to render its result
+    private QueryHandle currentQuery;
 
     public HotelDataPanel(String title) {
         setLayout(new BorderLayout());
@@ -34,6 +39,9 @@ public abstract class HotelDataPanel extends JPanel {
         topPanel.add(rightPanel, BorderLayout.EAST);
         add(topPanel, BorderLayout.NORTH);
 
+        loadedLabel = new JLabel(" ");
+        add(loadedLabel, BorderLayout.SOUTH);
+
         detailArea = new JTextArea();
         detailArea.setEditable(false);
         detailArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
@@ -49,6 +57,41 @@ public abstract class HotelDataPanel extends JPanel {
         });
     }
 
+    /**
+     * Cancels the search that is still running, both its SwingWorker and its SQL statement,
+     * and returns the handle to pass to the DAO for the next one.
+     */
+    protected QueryHandle newSearchQuery() {
+        cancelCurrentSearch();
+        currentQuery = new QueryHandle();
+        return currentQuery;
+    }
+
+    // Starts a worker as the panel's current search; any earlier one is cancelled first
+    protected void runSearch(SwingWorker<?, ?> worker) {
+        if (currentSearch != null && currentSearch != worker) {
+            currentSearch.cancel(true);
+        }
+        currentSearch = worker;
+        worker.execute();
+    }
+
+    // A worker's done() should only touch the table if it is still the latest search
+    protected boolean isCurrentSearch(SwingWorker<?, ?> worker) {
+        return worker == currentSearch && !worker.isCancelled();
+    }
+
+    protected void cancelCurrentSearch() {
+        if (currentQuery != null) {
+            currentQuery.cancel();
+            currentQuery = null;
+        }
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+            currentSearch = null;
+        }
+    }
+
     protected abstract void initComponents();
 
     protected JSplitPane createMainWithDetails(JComponent mainComponent) {
@@ -60,6 +103,10 @@ public abstract class HotelDataPanel extends JPanel {
         return split;
     }
 
+    protected void showLoadedCount(int rows, boolean finished) {
+        loadedLabel.setText(finished ? rows + " rows" : "Loading... " + rows + " rows");
+    }
+
     protected void showDetails(String text) {
         detailArea.setText(text);
     }
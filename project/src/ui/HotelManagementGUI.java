@@ -2,13 +2,21 @@ package ui;
 import db.*;
 import logic.Booking;
 import logic.Guest;
+import logic.HotelManager;
 import logic.Room;
+import utils.DataSnapshot;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 public class HotelManagementGUI extends JFrame {
+    private static final Path SNAPSHOT_FILE = Path.of("data", "snapshot.bin");
+
     private GuestDAO guestDAO;
     private RoomDAO roomDAO;
     private BookingDAO bookingDAO;
@@ -23,20 +31,85 @@ public class HotelManagementGUI extends JFrame {
         roomDAO = new RoomDAO();
         bookingDAO = new BookingDAO();
 
-        // Load initial data
-        List<Guest> guests = guestDAO.getAllGuests();
-        List<Room> rooms = roomDAO.getAllRooms();
-        List<Booking> bookings = bookingDAO.getAllBookings();
+        // Load initial data. The change version is read first, so later delta refreshes
+        // pick up anything written while the lists were loading.
+        long startTime = System.nanoTime();
+        DataSnapshot snapshot = DataSnapshot.read(SNAPSHOT_FILE);
+        if (snapshot != null && snapshot.getWatermark() == DataSnapshot.NO_WATERMARK) {
+            snapshot = null;   // an Excel import, not a copy of the database
+        }
+        long watermark;
+        UUID epoch;
+        try {
+            epoch = DatabaseConnection.currentEpoch();
+            watermark = DatabaseConnection.currentChangeVersion();
+        } catch (SQLException e) {
+            if (snapshot == null) {
+                throw e;
+            }
+            // Offline: show the last snapshot; anything that needs the database reports its own error
+            System.err.println("Database unavailable, showing the local snapshot: " + e.getMessage());
+            setTitle(getTitle() + " (offline, read-only data from " +
+                    new Date(snapshot.getWrittenAt()) + ")");
+            addTabs(snapshot.getGuests(), snapshot.getRooms(), snapshot.getBookings(), snapshot.getWatermark());
+            return;
+        }
+
+        List<Guest> guests;
+        List<Room> rooms;
+        List<Booking> bookings;
+        // Another epoch, or a watermark ahead of the database, means the snapshot belongs to a database that was
+        // since cleared or recreated: its rows may be gone without tombstones, and ids may have been reused
+        if (snapshot != null && epoch != null && epoch.equals(snapshot.getDatabaseEpoch())
+                && snapshot.getWatermark() <= watermark) {
+            // Only the rows changed since the snapshot are fetched
+            ChangeSet<Guest> guestChanges = guestDAO.findChangedSince(snapshot.getWatermark());
+            ChangeSet<Room> roomChanges = roomDAO.findChangedSince(snapshot.getWatermark());
+            ChangeSet<Booking> bookingChanges = bookingDAO.findChangedSince(snapshot.getWatermark());
+            guests = HotelManager.mergeChanges(snapshot.getGuests(), guestChanges.getUpserts(),
+                    guestChanges.getDeletedKeys(), Guest::getId);
+            rooms = HotelManager.mergeChanges(snapshot.getRooms(), roomChanges.getUpserts(),
+                    roomChanges.getDeletedKeys(), Room::getRoomNumber);
+            bookings = HotelManager.mergeChanges(snapshot.getBookings(), bookingChanges.getUpserts(),
+                    bookingChanges.getDeletedKeys(), Booking::getBookingId);
+            System.out.println("Loaded from snapshot plus " + (guestChanges.getUpserts().size() +
+                    roomChanges.getUpserts().size() + bookingChanges.getUpserts().size()) + " changed rows in " +
+                    (System.nanoTime() - startTime) / 1000000.0 + " ms");
+        } else {
+            guests = guestDAO.getAllGuests();
+            rooms = roomDAO.getAllRooms();
+            bookings = bookingDAO.getAllBookings();
+            System.out.println("Loaded from the database in " + (System.nanoTime() - startTime) / 1000000.0 + " ms");
+        }
+        addTabs(guests, rooms, bookings, watermark);
+        saveSnapshotInBackground(new DataSnapshot(rooms, guests, bookings, watermark, epoch));
+    }
+
+    private void addTabs(List<Guest> guests, List<Room> rooms, List<Booking> bookings, long watermark) {
 
         JTabbedPane tabbedPane = new JTabbedPane();
-        tabbedPane.addTab("Guests", new GuestsPanel(guests, guestDAO));
-        tabbedPane.addTab("Rooms", new RoomsPanel(rooms, roomDAO));
-        tabbedPane.addTab("Bookings", new BookingsPanel(bookings, bookingDAO, guestDAO));
+        tabbedPane.addTab("Guests", new GuestsPanel(guests, guestDAO, watermark));
+        tabbedPane.addTab("Rooms", new RoomsPanel(rooms, roomDAO, watermark));
+        tabbedPane.addTab("Bookings", new BookingsPanel(bookings, bookingDAO, guestDAO, watermark));
+        tabbedPane.addTab("Dashboard", new AnalyticsPanel(rooms, bookings, roomDAO, bookingDAO, watermark));
         tabbedPane.addTab("Performance", new PerformancePanel());
 
         add(tabbedPane);
     }
 
+    // Startup does not wait for the write; a failed write only means the next start loads everything again
+    private static void saveSnapshotInBackground(DataSnapshot snapshot) {
+        Thread thread = new Thread(() -> {
+            try {
+                snapshot.write(SNAPSHOT_FILE);
+            } catch (IOException e) {
+                System.err.println("Could not write snapshot: " + e.getMessage());
+            }
+        }, "snapshot-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             try {
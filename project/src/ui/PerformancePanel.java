@@ -1,14 +1,20 @@
 package ui;
 
+import db.BookingArchiveBenchmark;
+import db.OverlapQueryBenchmark;
 import logic.*;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class PerformancePanel extends JPanel {
     private HotelManager manager;
@@ -22,6 +28,14 @@ public class PerformancePanel extends JPanel {
     private JButton filterRoomsStatusButton;
     private JButton filterBookingsStatusButton;
     private JButton filterBookingsDateButton;
+    private JButton engineStressButton;
+    private JButton assignmentButton;
+    private JButton parallelFilterButton;
+    private JButton combinedFilterButton;
+    private JButton sortBenchmarkButton;
+    private JButton columnarButton;
+    private JButton archiveButton;
+    private JButton overlapButton;
 
     public PerformancePanel() {
         manager = new HotelManager();
@@ -38,6 +52,14 @@ public class PerformancePanel extends JPanel {
         filterRoomsStatusButton = new JButton("Filter Rooms Status CLEAN");
         filterBookingsStatusButton = new JButton("Filter Bookings CONFIRMED");
         filterBookingsDateButton = new JButton("Filter Bookings Next 7 Days");
+        engineStressButton = new JButton("Booking Engine Stress Test");
+        assignmentButton = new JButton("Optimize Room Assignment");
+        parallelFilterButton = new JButton("Filters: Sequential vs Parallel");
+        combinedFilterButton = new JButton("Combined Filter vs Chained");
+        sortBenchmarkButton = new JButton("Sort Strategies 10k-10M");
+        columnarButton = new JButton("Columnar vs Objects (1M)");
+        archiveButton = new JButton("Booking Archive (5M)");
+        overlapButton = new JButton("Overlap Queries: B-tree vs GiST (1M)");
 
         buttonPanel.add(loadButton);
         buttonPanel.add(binarySearchButton);
@@ -48,6 +70,14 @@ public class PerformancePanel extends JPanel {
         buttonPanel.add(filterRoomsStatusButton);
         buttonPanel.add(filterBookingsStatusButton);
         buttonPanel.add(filterBookingsDateButton);
+        buttonPanel.add(engineStressButton);
+        buttonPanel.add(assignmentButton);
+        buttonPanel.add(parallelFilterButton);
+        buttonPanel.add(combinedFilterButton);
+        buttonPanel.add(sortBenchmarkButton);
+        buttonPanel.add(columnarButton);
+        buttonPanel.add(archiveButton);
+        buttonPanel.add(overlapButton);
 
         // Result area
         resultArea = new JTextArea(15, 50);
@@ -68,6 +98,14 @@ public class PerformancePanel extends JPanel {
         filterRoomsStatusButton.addActionListener(e -> runFilterRoomsByStatus());
         filterBookingsStatusButton.addActionListener(e -> runFilterBookingsByStatus());
         filterBookingsDateButton.addActionListener(e -> runFilterBookingsByDate());
+        engineStressButton.addActionListener(e -> runEngineStress());
+        assignmentButton.addActionListener(e -> runRoomAssignment());
+        parallelFilterButton.addActionListener(e -> runParallelFilterComparison());
+        combinedFilterButton.addActionListener(e -> runCombinedFilterComparison());
+        sortBenchmarkButton.addActionListener(e -> runSortBenchmark());
+        columnarButton.addActionListener(e -> runColumnarBenchmark());
+        archiveButton.addActionListener(e -> runArchiveBenchmark());
+        overlapButton.addActionListener(e -> runOverlapBenchmark());
     }
 
     private void loadData() {
@@ -84,7 +122,7 @@ public class PerformancePanel extends JPanel {
             @Override
             protected Void doInBackground() {
                 resultArea.append("Loading data...\n");
-                manager.loadData(roomsFile, guestsFile, bookingsFile);
+                manager.loadData(roomsFile, guestsFile, bookingsFile, Path.of("data", "excel-snapshot.bin"));
                 return null;
             }
             @Override
@@ -226,4 +264,169 @@ public class PerformancePanel extends JPanel {
         };
         worker.execute();
     }
+
+    private void runEngineStress() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                // Few rooms and a short horizon, so threads collide on the same rooms a lot
+                String report = ReservationEngineStress.run(50, 90, 200_000);
+                resultArea.append(report);
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    // Plans only; the loaded spreadsheet data is not written back
+    private void runRoomAssignment() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                RoomAssignmentOptimizer optimizer = new RoomAssignmentOptimizer();
+                LocalDate today = LocalDate.now();
+                for (RoomType type : RoomType.values()) {
+                    long start = System.nanoTime();
+                    RoomAssignmentOptimizer.AssignmentPlan plan =
+                            optimizer.plan(type, manager.getRooms(), manager.getBookings(), today);
+                    long end = System.nanoTime();
+                    double ms = (end - start) / 1_000_000.0;
+                    resultArea.append(String.format("%s (%.3f ms)\n", plan, ms));
+                }
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    // The spreadsheet data is small, so the loaded bookings are repeated to reach a historical-sized list
+    private List<Booking> scaledBookings(int minSize) {
+        List<Booking> loaded = manager.getBookings();
+        List<Booking> scaled = new ArrayList<>(Math.max(minSize, loaded.size()));
+        while (!loaded.isEmpty() && scaled.size() < minSize) {
+            scaled.addAll(loaded);
+        }
+        return scaled;
+    }
+
+    private void runParallelFilterComparison() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                List<Booking> bookings = scaledBookings(1_000_000);
+                if (bookings.isEmpty()) {
+                    resultArea.append("Load data first.\n");
+                    return null;
+                }
+                LocalDate today = LocalDate.now();
+                Predicate<Booking> confirmed = HotelManager.bookingHasStatus(BookingStatus.CONFIRMED);
+                Predicate<Booking> nextWeek = HotelManager.bookingChecksInBetween(today, today.plusDays(7));
+
+                resultArea.append(String.format("Sequential vs parallel on %d bookings (%d cores, threshold %s):\n",
+                        bookings.size(), Runtime.getRuntime().availableProcessors(),
+                        ParallelFilter.getThreshold() == Integer.MAX_VALUE ? "off" : String.valueOf(ParallelFilter.getThreshold())));
+                compareFilter("  status CONFIRMED", bookings, confirmed);
+                compareFilter("  check-in next 7 days", bookings, nextWeek);
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    private void compareFilter(String label, List<Booking> bookings, Predicate<Booking> predicate) {
+        long start = System.nanoTime();
+        int sequential = ParallelFilter.filterSequential(bookings, predicate).size();
+        double sequentialMs = (System.nanoTime() - start) / 1_000_000.0;
+        start = System.nanoTime();
+        int parallel = ParallelFilter.filterParallel(bookings, predicate).size();
+        double parallelMs = (System.nanoTime() - start) / 1_000_000.0;
+        resultArea.append(String.format("%s: sequential %d (%.3f ms), parallel %d (%.3f ms), x%.2f\n",
+                label, sequential, sequentialMs, parallel, parallelMs, sequentialMs / parallelMs));
+    }
+
+    private void runCombinedFilterComparison() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                List<Booking> bookings = scaledBookings(1_000_000);
+                if (bookings.isEmpty()) {
+                    resultArea.append("Load data first.\n");
+                    return null;
+                }
+                LocalDate today = LocalDate.now();
+                Predicate<Booking> confirmed = HotelManager.bookingHasStatus(BookingStatus.CONFIRMED);
+                Predicate<Booking> nextMonth = HotelManager.bookingChecksInBetween(today, today.plusDays(30));
+
+                long start = System.nanoTime();
+                List<Booking> chained = ParallelFilter.filter(ParallelFilter.filter(bookings, confirmed), nextMonth);
+                double chainedMs = (System.nanoTime() - start) / 1_000_000.0;
+                start = System.nanoTime();
+                List<Booking> combined = ParallelFilter.filter(bookings, ParallelFilter.allOf(List.of(confirmed, nextMonth)));
+                double combinedMs = (System.nanoTime() - start) / 1_000_000.0;
+                resultArea.append(String.format("Confirmed + next 30 days on %d bookings: chained %d (%.3f ms), one pass %d (%.3f ms)\n",
+                        bookings.size(), chained.size(), chainedMs, combined.size(), combinedMs));
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    // Also records the fastest strategy per size, which HotelManager.sortRoomsByPrice() then uses
+    private void runSortBenchmark() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                resultArea.append("Benchmarking sort strategies...\n");
+                String report = RoomSorting.benchmark(manager.getRooms(),
+                        new int[]{10_000, 100_000, 1_000_000, 10_000_000});
+                resultArea.append(report);
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    private void runColumnarBenchmark() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                resultArea.append("Generating 1,000,000 bookings...\n");
+                resultArea.append(ColumnarBenchmark.run(1_000_000));
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    private void runArchiveBenchmark() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                resultArea.append("Writing 5,000,000 archived stays...\n");
+                try {
+                    resultArea.append(BookingArchiveBenchmark.run(5_000_000));
+                } catch (IOException e) {
+                    resultArea.append("Archive benchmark failed: " + e.getMessage() + "\n");
+                }
+                return null;
+            }
+        };
+        worker.execute();
+    }
+
+    private void runOverlapBenchmark() {
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                resultArea.append("Loading 1,000,000 stays into a temporary table...\n");
+                try {
+                    resultArea.append(OverlapQueryBenchmark.run(1_000_000));
+                } catch (SQLException e) {
+                    resultArea.append("Overlap benchmark failed: " + e.getMessage() + "\n");
+                }
+                return null;
+            }
+        };
+        worker.execute();
+    }
 }
@@ -1,10 +1,15 @@
 package ui;
 
 import logic.Guest;
+import logic.HotelManager;
 import logic.Room;
+import logic.RoomSorting;
 import logic.RoomStatus;
 import logic.RoomType;
+import db.ChangeSet;
+import db.DatabaseConnection;
 import db.RoomDAO;
+import db.QueryHandle;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -20,11 +25,14 @@ public class RoomsPanel extends HotelDataPanel {
     private DefaultTableModel tableModel;
     private TableRowSorter<DefaultTableModel> sorter;
     private List<Room> rooms;
+    private long syncWatermark;     // change version the table is in sync with
+    private boolean showingAll = true; // false while a search result is displayed
     private RoomDAO roomDAO;
 
-    public RoomsPanel(List<Room> rooms, RoomDAO roomDAO) {
+    public RoomsPanel(List<Room> rooms, RoomDAO roomDAO, long syncWatermark) {
         super("Rooms");
         this.rooms = rooms;
+        this.syncWatermark = syncWatermark;
         this.roomDAO = roomDAO;
         initComponents();
         populateTable();
@@ -58,6 +66,8 @@ public class RoomsPanel extends HotelDataPanel {
                 JOptionPane.QUESTION_MESSAGE, null, types, types[0]);
         if (selected == null) return;
 
+        cancelCurrentSearch();
+
         SwingWorker<List<Room>, Void> worker = new SwingWorker<>() {
             @Override
             protected List<Room> doInBackground() {
@@ -65,8 +75,10 @@ public class RoomsPanel extends HotelDataPanel {
             }
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     rooms = get();
+                    showingAll = false;
                     populateTable();
                     if (rooms.isEmpty()) {
                         JOptionPane.showMessageDialog(RoomsPanel.this, "No rooms of type " + selected + " found.");
@@ -76,7 +88,7 @@ public class RoomsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void searchByPriceRange() {
@@ -104,6 +116,8 @@ public class RoomsPanel extends HotelDataPanel {
                     return;
                 }
 
+                cancelCurrentSearch();
+
                 SwingWorker<List<Room>, Void> worker = new SwingWorker<>() {
                     @Override
                     protected List<Room> doInBackground() {
@@ -111,8 +125,10 @@ public class RoomsPanel extends HotelDataPanel {
                     }
                     @Override
                     protected void done() {
+                        if (!isCurrentSearch(this)) return;
                         try {
                             rooms = get();
+                            showingAll = false;
                             populateTable();
                             if (rooms.isEmpty()) {
                                 JOptionPane.showMessageDialog(RoomsPanel.this,
@@ -124,7 +140,7 @@ public class RoomsPanel extends HotelDataPanel {
                         }
                     }
                 };
-                worker.execute();
+                runSearch(worker);
 
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this,
@@ -158,15 +174,19 @@ public class RoomsPanel extends HotelDataPanel {
                     return;
                 }
 
+                QueryHandle query = newSearchQuery();
+
                 SwingWorker<List<Room>, Void> worker = new SwingWorker<>() {
                     @Override
                     protected List<Room> doInBackground() {
-                        return roomDAO.findAvailableRooms(checkIn, checkOut);
+                        return roomDAO.findAvailableRooms(checkIn, checkOut, query);
                     }
                     @Override
                     protected void done() {
+                        if (!isCurrentSearch(this)) return;
                         try {
                             rooms = get();
+                            showingAll = false;
                             populateTable();
                             if (rooms.isEmpty()) {
                                 JOptionPane.showMessageDialog(RoomsPanel.this,
@@ -178,7 +198,7 @@ public class RoomsPanel extends HotelDataPanel {
                         }
                     }
                 };
-                worker.execute();
+                runSearch(worker);
 
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this,
@@ -201,19 +221,37 @@ public class RoomsPanel extends HotelDataPanel {
                     r.getStatus().name()
             });
         }
+        showLoadedCount(rooms.size(), true);
     }
 
     private void refreshFromDatabase() {
+        // When the full list is shown, only the rows changed since the last sync are fetched and merged.
+        // After a search the full list is reloaded.
+        cancelCurrentSearch();
+        boolean deltaSync = showingAll;
+        List<Room> current = rooms;
+        long since = syncWatermark;
         SwingWorker<List<Room>, Void> worker = new SwingWorker<>() {
+            private long watermark;
+
             @Override
             protected List<Room> doInBackground() throws Exception {
+                if (deltaSync) {
+                    ChangeSet<Room> changes = roomDAO.findChangedSince(since);
+                    watermark = changes.getWatermark();
+                    return HotelManager.mergeChanges(current, changes.getUpserts(), changes.getDeletedKeys(), Room::getRoomNumber);
+                }
+                watermark = DatabaseConnection.currentChangeVersion();
                 return roomDAO.getAllRooms();
             }
 
             @Override
             protected void done() {
+                if (!isCurrentSearch(this)) return;
                 try {
                     rooms = get();
+                    syncWatermark = watermark;
+                    showingAll = true;
                     populateTable();
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(RoomsPanel.this,
@@ -221,11 +259,17 @@ public class RoomsPanel extends HotelDataPanel {
                 }
             }
         };
-        worker.execute();
+        runSearch(worker);
     }
 
     private void setupFilter() {
         sorter = new TableRowSorter<>(tableModel);
+        // Type sorts in enum order; clicking a header keeps the other two keys as tie-breakers
+        sorter.setComparator(1, RoomSorting.roomTypeCellOrder());
+        sorter.setSortKeys(List.of(
+                new RowSorter.SortKey(1, SortOrder.ASCENDING),
+                new RowSorter.SortKey(2, SortOrder.ASCENDING),
+                new RowSorter.SortKey(0, SortOrder.ASCENDING)));
         table.setRowSorter(sorter);
 
         searchField.getDocument().addDocumentListener(new DocumentListener() {
@@ -0,0 +1,40 @@
+package ui;
+
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+// Helpers for handing CompletableFuture results from the async DAOs back to the Swing event thread.
+public final class SwingFutures {
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private SwingFutures() {}
+
+    /**
+     * Calls onSuccess or onError on the EDT once the future completes.
+     * Cancelled futures are ignored, since nobody is waiting for their result any more.
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenCompleteAsync((value, error) -> {
+            if (error == null) {
+                onSuccess.accept(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (!(cause instanceof CancellationException)) {
+                onError.accept(cause);
+            }
+        }, EDT);
+    }
+
+    // CompletableFuture wraps failures of dependent stages in CompletionException
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,326 @@
+package utils;
+
+import logic.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Local binary copy of rooms, guests and bookings, so startup does not have to parse the xlsx files
+ * or query every table again. Besides the data it records where it came from: the database epoch and
+ * change version it was in sync with (reconciled with findChangedSince on the next start, as long as the
+ * epoch is unchanged), or a checksum of the xlsx files it was imported from (reused only while the files
+ * are unchanged).
+ * Bookings refer to rooms and guests by key, so every Room and Guest is stored once, and on reading each
+ * booking is linked to the listed room and guest. The file is read in one go and checked against a CRC of
+ * its contents; a snapshot that is missing, damaged or written for other enum constants is ignored,
+ * and the caller loads from the source instead.
+ */
+public class DataSnapshot {
+    public static final long NO_WATERMARK = -1;
+    public static final long NO_CHECKSUM = 0;
+
+    private static final int MAGIC = 0x48534E31; // "HSN1"
+    private static final int FORMAT_VERSION = 2;
+    // magic, version, schema hash, watermark, database epoch, checksum, written at, payload CRC
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 16 + 8 + 8 + 8;
+
+    private final List<Room> rooms;
+    private final List<Guest> guests;
+    private final List<Booking> bookings;
+    private final long watermark;
+    private final UUID databaseEpoch;
+    private final long sourceChecksum;
+    private final long writtenAt;
+
+    // A copy of an Excel import
+    public DataSnapshot(List<Room> rooms, List<Guest> guests, List<Booking> bookings,
+                        long watermark, long sourceChecksum) {
+        this(rooms, guests, bookings, watermark, null, sourceChecksum, System.currentTimeMillis());
+    }
+
+    // A copy of the database as of the watermark, in the given epoch
+    public DataSnapshot(List<Room> rooms, List<Guest> guests, List<Booking> bookings,
+                        long watermark, UUID databaseEpoch) {
+        this(rooms, guests, bookings, watermark, databaseEpoch, NO_CHECKSUM, System.currentTimeMillis());
+    }
+
+    private DataSnapshot(List<Room> rooms, List<Guest> guests, List<Booking> bookings,
+                         long watermark, UUID databaseEpoch, long sourceChecksum, long writtenAt) {
+        this.rooms = rooms;
+        this.guests = guests;
+        this.bookings = bookings;
+        this.watermark = watermark;
+        this.databaseEpoch = databaseEpoch;
+        this.sourceChecksum = sourceChecksum;
+        this.writtenAt = writtenAt;
+    }
+
+    public List<Room> getRooms() { return rooms; }
+    public List<Guest> getGuests() { return guests; }
+    public List<Booking> getBookings() { return bookings; }
+    // Database change version the data was in sync with, or NO_WATERMARK if it came from files
+    public long getWatermark() { return watermark; }
+    // Epoch of the database the data was copied from, or null if it came from files
+    public UUID getDatabaseEpoch() { return databaseEpoch; }
+    public long getSourceChecksum() { return sourceChecksum; }
+    public long getWrittenAt() { return writtenAt; }
+
+    // CRC32 over the contents of the files, for telling whether an Excel import is still current
+    public static long checksumOf(String... files) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        for (String file : files) {
+            try (InputStream in = Files.newInputStream(Path.of(file))) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+        // Never NO_CHECKSUM, so a database snapshot cannot match a set of files
+        return crc.getValue() + 1;
+    }
+
+    // Written to a temporary file first and then moved into place, so a reader never sees half a snapshot
+    public void write(Path file) throws IOException {
+        Writer out = new Writer();
+        out.putInt(rooms.size());
+        for (Room room : rooms) {
+            out.putInt(room.getRoomNumber());
+            out.putByte(room.getRoomType().ordinal());
+            out.putDouble(room.getRoomPricePerNight());
+            out.putInt(room.getMaxOccupancy());
+            out.putByte(room.hasBalcony() ? 1 : 0);
+            out.putByte(room.isAvailable() ? 1 : 0);
+            out.putByte(room.getStatus().ordinal());
+            out.putInt(room.getAmenities().size());
+            for (String amenity : room.getAmenities()) {
+                out.putString(amenity);
+            }
+        }
+        out.putInt(guests.size());
+        for (Guest guest : guests) {
+            out.putInt(guest.getId());
+            out.putString(guest.getFirstName());
+            out.putString(guest.getLastName());
+            out.putString(guest.getEmail());
+            out.putString(guest.getPhone());
+            out.putInt(guest.getLoyaltyPoints());
+            out.putString(guest.getNationality());
+        }
+        out.putInt(bookings.size());
+        for (Booking booking : bookings) {
+            out.putInt(booking.getBookingId());
+            out.putInt(booking.getGuest().getId());
+            out.putInt(booking.getRoom().getRoomNumber());
+            out.putInt((int) booking.getCheckInDate().toEpochDay());
+            out.putInt((int) booking.getCheckOutDate().toEpochDay());
+            out.putInt(booking.getNumberOfGuests());
+            out.putDouble(booking.getTotalPrice());
+            out.putByte(booking.getStatus().ordinal());
+            out.putByte(booking.isPaid() ? 1 : 0);
+            out.putString(booking.getPaymentMethod());
+            out.putInt(booking.getVersion());
+            UUID requestKey = booking.getRequestKey();
+            out.putByte(requestKey != null ? 1 : 0);
+            if (requestKey != null) {
+                out.putLong(requestKey.getMostSignificantBits());
+                out.putLong(requestKey.getLeastSignificantBits());
+            }
+        }
+
+        ByteBuffer payload = out.finish();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(schemaHash()).putLong(watermark)
+                .putLong(databaseEpoch != null ? databaseEpoch.getMostSignificantBits() : 0)
+                .putLong(databaseEpoch != null ? databaseEpoch.getLeastSignificantBits() : 0)
+                .putLong(sourceChecksum).putLong(writtenAt).putLong(crc.getValue()).flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null if there is no usable snapshot; the reason is logged
+    public static DataSnapshot read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        // A bulk read rather than a mapping: a mapped file cannot be replaced on Windows until the mapping is
+        // garbage collected, and the snapshot is usually rewritten right after it is read
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("file ended early");
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                System.err.println("Ignoring snapshot " + file + ": not a snapshot or an older format");
+                return null;
+            }
+            if (buffer.getInt() != schemaHash()) {
+                System.err.println("Ignoring snapshot " + file + ": written for different room or booking types");
+                return null;
+            }
+            long watermark = buffer.getLong();
+            UUID databaseEpoch = new UUID(buffer.getLong(), buffer.getLong());
+            if (databaseEpoch.getMostSignificantBits() == 0 && databaseEpoch.getLeastSignificantBits() == 0) {
+                databaseEpoch = null;
+            }
+            long sourceChecksum = buffer.getLong();
+            long writtenAt = buffer.getLong();
+            long expectedCrc = buffer.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                System.err.println("Ignoring snapshot " + file + ": checksum mismatch");
+                return null;
+            }
+
+            DataSnapshot snapshot = decode(buffer, watermark, databaseEpoch, sourceChecksum, writtenAt);
+            System.out.println("Snapshot read in " + (System.nanoTime() - start) / 1000000.0 + " ms: " +
+                    snapshot.rooms.size() + " rooms, " + snapshot.guests.size() + " guests, " +
+                    snapshot.bookings.size() + " bookings");
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static DataSnapshot decode(ByteBuffer in, long watermark, UUID databaseEpoch, long sourceChecksum,
+                                       long writtenAt) {
+        RoomType[] roomTypes = RoomType.values();
+        RoomStatus[] roomStatuses = RoomStatus.values();
+        BookingStatus[] bookingStatuses = BookingStatus.values();
+
+        int roomCount = in.getInt();
+        List<Room> rooms = new ArrayList<>(roomCount);
+        Map<Integer, Room> roomsByNumber = new HashMap<>(roomCount * 2);
+        for (int i = 0; i < roomCount; i++) {
+            Room room = new Room(in.getInt(), roomTypes[in.get()], in.getDouble(), in.getInt(), in.get() != 0, in.get() != 0);
+            room.setStatus(roomStatuses[in.get()]);
+            int amenities = in.getInt();
+            for (int a = 0; a < amenities; a++) {
+                room.addAmenity(getString(in));
+            }
+            rooms.add(room);
+            roomsByNumber.put(room.getRoomNumber(), room);
+        }
+
+        int guestCount = in.getInt();
+        List<Guest> guests = new ArrayList<>(guestCount);
+        Map<Integer, Guest> guestsById = new HashMap<>(guestCount * 2);
+        for (int i = 0; i < guestCount; i++) {
+            Guest guest = new Guest(in.getInt(), getString(in), getString(in), getString(in), getString(in),
+                    in.getInt(), getString(in));
+            guests.add(guest);
+            guestsById.put(guest.getId(), guest);
+        }
+
+        int bookingCount = in.getInt();
+        List<Booking> bookings = new ArrayList<>(bookingCount);
+        for (int i = 0; i < bookingCount; i++) {
+            int bookingId = in.getInt();
+            // Keys missing from the lists get the same placeholders ExcelImporter uses for bookings
+            Guest guest = guestsById.computeIfAbsent(in.getInt(), id -> new Guest(id, "", "", "", "", 0, ""));
+            Room room = roomsByNumber.computeIfAbsent(in.getInt(), number -> new Room(number, RoomType.SINGLE, 0.0, 1, false, true));
+            Booking booking = new Booking(bookingId, guest, room,
+                    LocalDate.ofEpochDay(in.getInt()), LocalDate.ofEpochDay(in.getInt()), in.getInt());
+            booking.setTotalPrice(in.getDouble());
+            booking.setStatus(bookingStatuses[in.get()]);
+            booking.setIsPaid(in.get() != 0);
+            booking.setPaymentMethod(getString(in));
+            booking.setVersion(in.getInt());
+            if (in.get() != 0) {
+                booking.setRequestKey(new UUID(in.getLong(), in.getLong()));
+            }
+            bookings.add(booking);
+        }
+        // The Booking constructor adds each booking to its guest's history; the loaders this replaces
+        // return guests without one, so the listed guests are left the same way
+        for (Guest guest : guests) {
+            guest.setBookingHistory(new ArrayList<>());
+        }
+        return new DataSnapshot(rooms, guests, bookings, watermark, databaseEpoch, sourceChecksum, writtenAt);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Enum values are stored as ordinals, so a snapshot is only valid for the constants it was written with
+    private static int schemaHash() {
+        return Objects.hash(Arrays.toString(RoomType.values()), Arrays.toString(RoomStatus.values()),
+                Arrays.toString(BookingStatus.values()));
+    }
+
+    // Growable little-endian buffer
+    private static class Writer {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        void putByte(int value) { ensure(1); buffer.put((byte) value); }
+        void putInt(int value) { ensure(4); buffer.putInt(value); }
+        void putLong(long value) { ensure(8); buffer.putLong(value); }
+        void putDouble(double value) { ensure(8); buffer.putDouble(value); }
+
+        // Length-prefixed UTF-8; null is stored as length -1
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        ByteBuffer finish() {
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package utils;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes reports straight from a database cursor to xlsx or gzip'd CSV, so the heap used does not grow
+ * with the number of rows. The xlsx side goes through SXSSFWorkbook, which keeps only the last ROW_WINDOW
+ * rows of each sheet in memory and flushes older ones to compressed temp files. Reports are independent,
+ * so each one is generated on its own thread, with its own cursor.
+ */
+public final class ReportExporter {
+    // Rows of a sheet kept in memory before SXSSF flushes them to disk
+    private static final int ROW_WINDOW = 100;
+    private static final int MAX_THREADS = 4;
+    private static final int CSV_BUFFER = 1 << 16;
+
+    // Streams the rows of a report into the sink; values are String, Number, Boolean, LocalDate or null
+    @FunctionalInterface
+    public interface RowSource {
+        int stream(Consumer<Object[]> sink) throws Exception;
+    }
+
+    public static final class Report {
+        private final String name;
+        private final String[] columns;
+        private final RowSource source;
+
+        public Report(String name, String[] columns, RowSource source) {
+            this.name = name;
+            this.columns = columns;
+            this.source = source;
+        }
+
+        public String getName() { return name; }
+        public String[] getColumns() { return columns; }
+    }
+
+    private ReportExporter() {}
+
+    /**
+     * Writes every report to its own sheet of one workbook and returns the row count per report.
+     * The sheets and styles are created up front; the threads then only add rows to their own sheet.
+     */
+    public static Map<String, Integer> writeXlsx(Path file, List<Report> reports) throws IOException {
+        long start = System.nanoTime();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font bold = workbook.createFont();
+            bold.setBold(true);
+            headerStyle.setFont(bold);
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+
+            List<SXSSFSheet> sheets = new ArrayList<>();
+            for (Report report : reports) {
+                SXSSFSheet sheet = workbook.createSheet(report.name);
+                Row header = sheet.createRow(0);
+                for (int c = 0; c < report.columns.length; c++) {
+                    Cell cell = header.createCell(c);
+                    cell.setCellValue(report.columns[c]);
+                    cell.setCellStyle(headerStyle);
+                }
+                sheet.createFreezePane(0, 1);
+                sheets.add(sheet);
+            }
+
+            Map<String, Integer> counts = runAll(reports, i -> {
+                SXSSFSheet sheet = sheets.get(i);
+                int[] next = {1};
+                return reports.get(i).source.stream(values -> {
+                    Row row = sheet.createRow(next[0]++);
+                    for (int c = 0; c < values.length; c++) {
+                        setCell(row.createCell(c), values[c], dateStyle);
+                    }
+                });
+            });
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                workbook.write(out);
+            }
+            Files.move(temp, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Report export to " + file + " took: " + (System.nanoTime() - start) / 1000000.0 + " ms");
+            return counts;
+        } finally {
+            // The temp files SXSSF flushed rows to are only removed here
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Writes every report to &lt;name&gt;.csv.gz in the directory and returns the row count per report.
+     * Dates are written as yyyy-mm-dd; fields are quoted only when they need to be.
+     */
+    public static Map<String, Integer> writeCsvGz(Path directory, List<Report> reports) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        Map<String, Integer> counts = runAll(reports, i -> {
+            Report report = reports.get(i);
+            Path file = directory.resolve(fileName(report.name) + ".csv.gz");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file), CSV_BUFFER), StandardCharsets.UTF_8), CSV_BUFFER)) {
+                writeCsvLine(out, report.columns);
+                return report.source.stream(values -> {
+                    try {
+                        writeCsvLine(out, values);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        });
+        System.out.println("CSV export to " + directory + " took: " + (System.nanoTime() - start) / 1000000.0 + " ms");
+        return counts;
+    }
+
+    @FunctionalInterface
+    private interface ReportTask {
+        int run(int index) throws Exception;
+    }
+
+    // Runs one task per report, in parallel, and fails with the first error once all of them have stopped
+    private static Map<String, Integer> runAll(List<Report> reports, ReportTask task) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(reports.size(), MAX_THREADS)), r -> {
+            Thread thread = new Thread(r, "report-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < reports.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> task.run(index)));
+            }
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            IOException failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    counts.put(reports.get(i).name, futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IOException("Report " + reports.get(i).name + " failed: " + e.getCause().getMessage(), e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Report export was interrupted");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return counts;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void setCell(Cell cell, Object value, CellStyle dateStyle) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number number) {
+            cell.setCellValue(number.doubleValue());
+        } else if (value instanceof Boolean flag) {
+            cell.setCellValue(flag);
+        } else if (value instanceof LocalDate date) {
+            cell.setCellValue(date);
+            cell.setCellStyle(dateStyle);
+        } else {
+            cell.setCellValue(value.toString());
+        }
+    }
+
+    private static void writeCsvLine(Writer out, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            String text = value.toString();
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(text.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(text);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private static String fileName(String reportName) {
+        return reportName.toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+    }
+}
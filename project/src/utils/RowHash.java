@@ -0,0 +1,37 @@
+package utils;
+
+/**
+ * 64-bit FNV-1a hash over the text of a row's fields, for telling whether a spreadsheet row changed
+ * since it was last imported. Fields are separated, and null differs from an empty string,
+ * so ("ab", "c") and ("a", "bc") hash differently.
+ */
+public final class RowHash {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final char SEPARATOR = '\u001F';
+    private static final char NULL = '\u0000';
+
+    private RowHash() {}
+
+    public static long of(Object... fields) {
+        long hash = OFFSET_BASIS;
+        for (Object field : fields) {
+            if (field == null) {
+                hash = mix(hash, NULL);
+            } else {
+                String text = field.toString();
+                for (int i = 0; i < text.length(); i++) {
+                    hash = mix(hash, text.charAt(i));
+                }
+            }
+            hash = mix(hash, SEPARATOR);
+        }
+        return hash;
+    }
+
+    // Both bytes of the char, low byte first
+    private static long mix(long hash, char c) {
+        hash = (hash ^ (c & 0xFF)) * PRIME;
+        return (hash ^ (c >>> 8)) * PRIME;
+    }
+}